@@ -3,6 +3,7 @@ package com.arun.temporal.worker;
 import com.arun.temporal.worker.activities.BulkActivities;
 import com.arun.temporal.worker.worker.TemporalWorkerFactory;
 import com.arun.temporal.worker.workflow.BulkWorkflowImpl;
+import com.arun.temporal.worker.workflow.ChunkGroupWorkflowImpl;
 import io.micronaut.context.event.ApplicationEventListener;
 import io.micronaut.runtime.Micronaut;
 import io.micronaut.runtime.event.ApplicationStartupEvent;
@@ -26,7 +27,7 @@ public class TemporalWorkerApplication implements ApplicationEventListener<Appli
     @EventListener
     @Override
     public void onApplicationEvent(ApplicationStartupEvent event) {
-        temporalWorkerFactory.startWorkerFactory(workflowClient, BulkWorkflowImpl.class, bulkActivities);
+        temporalWorkerFactory.startWorkerFactory(workflowClient, new Class<?>[]{BulkWorkflowImpl.class, ChunkGroupWorkflowImpl.class}, bulkActivities);
     }
 
     public static void main(String[] args) {
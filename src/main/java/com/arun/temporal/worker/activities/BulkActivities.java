@@ -23,6 +23,9 @@ public interface BulkActivities {
     @ActivityMethod
     ChunkProcessingResult processChunk(ProcessChunkRequest processChunkRequest);
 
+    @ActivityMethod
+    ComposeUploadResponse composeUpload(ComposeUploadRequest composeUploadRequest);
+
     @ActivityMethod
     void finalizeFileUpload(CompleteMultipartUploadRequest completeMultipartUploadRequest);
 
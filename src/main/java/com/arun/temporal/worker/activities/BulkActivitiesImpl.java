@@ -10,8 +10,11 @@ import com.arun.temporal.worker.configuration.RequestConfiguration;
 import com.arun.temporal.worker.exception.BulkProcessorException;
 import com.arun.temporal.worker.s3.S3CsvConverterAndAggregator;
 import com.arun.temporal.worker.service.S3Service;
+import com.arun.temporal.worker.throttle.SubmitRateController;
 import com.arun.temporal.worker.worker.WorkerStatus;
 import io.micronaut.context.annotation.Value;
+import io.temporal.activity.Activity;
+import io.temporal.activity.ActivityExecutionContext;
 import io.temporal.failure.ApplicationFailure;
 import jakarta.inject.Singleton;
 import org.slf4j.Logger;
@@ -20,14 +23,17 @@ import reactor.core.publisher.Mono;
 import software.amazon.awssdk.services.s3.model.CompletedPart;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongBiFunction;
+import java.util.stream.IntStream;
 
 import static com.arun.temporal.worker.constant.Constants.*;
 import static com.arun.temporal.worker.util.FileChunkReader.*;
@@ -37,6 +43,8 @@ import static com.arun.temporal.worker.util.Util.*;
 public class BulkActivitiesImpl implements BulkActivities {
 
     private static final Logger logger = LoggerFactory.getLogger(BulkActivitiesImpl.class);
+    private static final int SAMPLE_BYTES = 1024 * 1024;
+    private static final long COMPRESSED_TAIL_PART_SIZE = 256 * 1024L;
     private final S3Service s3Service;
     private final RequestConfiguration requestConfiguration;
     private final ReportUtil reportUtil;
@@ -45,20 +53,58 @@ public class BulkActivitiesImpl implements BulkActivities {
     private final WorkerStatus workerStatus;
     private final RedisService redisService;
     private final KafkaEventProducer kafkaEventProducer;
+    private final SubmitRateController submitRateController;
+    private final ChunkCompletionEngine chunkCompletionEngine;
 
     @Value("${bulk.processor.min.chunk.size:5242880}")
     private long minChunkSize;
 
+    @Value("${bulk.processor.max.chunk.size:268435456}")
+    private long maxChunkSize;
+
     @Value("${bulk.processor.min.lines.per.chunk:50000}")
     private int minLinesPerChunk;
 
     @Value("${bulk.processor.max.chunk:4}")
     private int maxParallelChunk;
 
+    @Value("${bulk.processor.max.submit.chunk:2}")
+    int maxParallelSubmissions;
+
+    @Value("${bulk.processor.history.max.events:10000}")
+    int maxHistoryLength;
+
+    @Value("${bulk.processor.shard.max:1}")
+    int maxShards;
+
+    @Value("${bulk.processor.shard.size:1073741824}")
+    long shardSize;
+
     @Value("${bulk.processor.sample.lines:100}")
     private int sampleLines;
 
-    public BulkActivitiesImpl(S3Service s3Service, RequestConfiguration requestConfiguration, ReportUtil reportUtil, AwsConfiguration awsConfiguration, S3CsvConverterAndAggregator s3CsvConverterAndAggregator, WorkerStatus workerStatus, RedisService redisService, KafkaEventProducer kafkaEventProducer) {
+    @Value("${bulk.processor.sample.regions:8}")
+    private int sampleRegions;
+
+    @Value("${bulk.processor.sample.region.size:65536}")
+    private int sampleRegionSize;
+
+    @Value("${bulk.processor.boundary.probe.size:65536}")
+    private int boundaryProbeSize;
+
+    @Value("${bulk.processor.upload.direct:false}")
+    boolean directUpload;
+
+    @Value("${bulk.processor.upload.copy.part.size:5368709120}")
+    long copyPartSize = MAX_UPLOAD_PART_SIZE;
+
+    @Value("${bulk.processor.max.inflight.batches:16}")
+    private int maxInFlightBatches;
+
+    @Value("${bulk.processor.completion.async:false}")
+    boolean asyncCompletion;
+
+    public BulkActivitiesImpl(S3Service s3Service, RequestConfiguration requestConfiguration, ReportUtil reportUtil, AwsConfiguration awsConfiguration, S3CsvConverterAndAggregator s3CsvConverterAndAggregator, WorkerStatus workerStatus, RedisService redisService, KafkaEventProducer kafkaEventProducer, SubmitRateController submitRateController, ChunkCompletionEngine chunkCompletionEngine) {
         this.s3Service = s3Service;
         this.requestConfiguration = requestConfiguration;
         this.reportUtil = reportUtil;
@@ -67,11 +113,13 @@ public class BulkActivitiesImpl implements BulkActivities {
         this.workerStatus = workerStatus;
         this.redisService = redisService;
         this.kafkaEventProducer = kafkaEventProducer;
+        this.submitRateController = submitRateController;
+        this.chunkCompletionEngine = chunkCompletionEngine;
     }
 
     @Override
     public MaxParallelChunkResponse getMaxParallelChunks() {
-        return new MaxParallelChunkResponse(maxParallelChunk);
+        return new MaxParallelChunkResponse(maxParallelChunk, directUpload, maxParallelSubmissions, maxHistoryLength, maxShards, shardSize);
     }
 
     @Override
@@ -107,7 +155,8 @@ public class BulkActivitiesImpl implements BulkActivities {
         try {
             return s3Service.getInputFileSize(bucketName, splitChunkRequest.key())
                     .thenCompose(fileSize -> estimateLineSize(sampleLines, splitChunkRequest.key(), fileSize, splitChunkRequest.delimiter())
-                            .thenApply(fileDetail -> getFileChunkList(minChunkSize, minLinesPerChunk, fileDetail)))
+                            .thenCompose(fileDetail -> sampleLineSizes(bucketName, splitChunkRequest.key(), fileDetail))
+                            .thenCompose(fileDetail -> resolveChunkBoundaries(bucketName, splitChunkRequest.key(), fileDetail)))
                     .join();
         } catch (Exception ex) {
             if (ex.getCause() instanceof NoSuchKeyException) {
@@ -134,7 +183,7 @@ public class BulkActivitiesImpl implements BulkActivities {
         setValueInMDCContext(bulkApiRequest.getWorkspaceId(), bulkApiRequest.getEmailId(), bulkApiRequest.getEmailId(), getCurrentQueryId(bulkApiRequest.getApiType(), bulkApiRequest.getFileName(), bulkApiRequest.getOutputFileId()), bulkApiRequest.getOutputFileId());
         logger.info("submitFileChunk {}", fileChunk.chunkNumber());
         try {
-            return submitChunk(fileChunk, bulkApiRequest).join();
+            return submitChunk(fileChunk, bulkApiRequest, Activity.getExecutionContext()).join();
         } catch (Exception ex) {
             if (ex.getCause() instanceof NoSuchKeyException) {
                 logger.error("Input File not found in S3 for file Name: {} file id: {}", bulkApiRequest.getFileName(), bulkApiRequest.getFileId(), ex);
@@ -159,7 +208,13 @@ public class BulkActivitiesImpl implements BulkActivities {
         workerStatus.startActivity();
         String queryId = getCurrentQueryId(processChunkRequest.bulkApiRequest().getApiType(), processChunkRequest.bulkApiRequest().getFileName(), processChunkRequest.bulkApiRequest().getOutputFileId());
         try {
-            return s3CsvConverterAndAggregator.startUploadingProcess(processChunkRequest.chunkNumber(), queryId, processChunkRequest.totalBatch(), processChunkRequest.bulkApiRequest(), processChunkRequest.uploadId());
+            if (asyncCompletion) {
+                ActivityExecutionContext context = Activity.getExecutionContext();
+                chunkCompletionEngine.track(context.getTaskToken(), processChunkRequest, queryId);
+                context.doNotCompleteOnReturn();
+                return null;
+            }
+            return s3CsvConverterAndAggregator.startUploadingProcess(processChunkRequest, queryId);
         } catch (Exception e) {
             logger.error("Error in processing chunk for chunk No : {} file Name: {} file id: {}", processChunkRequest.chunkNumber(), processChunkRequest.bulkApiRequest().getFileName(), processChunkRequest.bulkApiRequest().getFileId(), e);
             throw ApplicationFailure.newFailure(
@@ -172,15 +227,45 @@ public class BulkActivitiesImpl implements BulkActivities {
 
     }
 
+    @Override
+    public ComposeUploadResponse composeUpload(ComposeUploadRequest composeUploadRequest) {
+        workerStatus.startActivity();
+        String bucketName = S3Util.getBucketKey(awsConfiguration.getEnv(), awsConfiguration.getRegion(), BULK_API);
+        String sourceKey = composeUploadRequest.sourceKey();
+        try {
+            return resolveParts(bucketName, sourceKey, composeUploadRequest.sourceUploadId(), composeUploadRequest.sourceParts())
+                    .thenCompose(parts -> s3Service.completeMultiPartUpload(bucketName, sourceKey, composeUploadRequest.sourceUploadId(), parts))
+                    .thenCompose(ignore -> deleteStagedParts(bucketName, composeUploadRequest.sourceParts()))
+                    .thenCompose(ignore -> s3Service.getInputFileSize(bucketName, sourceKey))
+                    .thenCompose(size -> s3Service.uploadPartCopies(bucketName, composeUploadRequest.uploadKey(), composeUploadRequest.uploadId(),
+                            composeUploadRequest.firstPartNumber(), composeUploadRequest.maxParts(), sourceKey, size, copyPartSize))
+                    .thenCompose(copied -> s3Service.deleteChunkData(bucketName, sourceKey).thenApply(ignore -> copied))
+                    .thenApply(copied -> new ComposeUploadResponse(copied.stream().map(part -> new PartDetail(part.partNumber(), part.eTag())).toList()))
+                    .join();
+        } catch (Exception e) {
+            logger.error("Error in composing {} into key {} by upload id {}", sourceKey, composeUploadRequest.uploadKey(), composeUploadRequest.uploadId(), e);
+            throw ApplicationFailure.newFailure(
+                    "Error in compose upload",
+                    "composeUploadException"
+            );
+        } finally {
+            workerStatus.endActivity();
+        }
+    }
+
     @Override
     public void finalizeFileUpload(CompleteMultipartUploadRequest completeMultipartUploadRequest) {
         workerStatus.startActivity();
         String bucketName = S3Util.getBucketKey(awsConfiguration.getEnv(), awsConfiguration.getRegion(), BULK_API);
-        List<CompletedPart> parts = new ArrayList<>(completeMultipartUploadRequest.parts().stream().map(part -> CompletedPart.builder().partNumber(part.partNumber()).eTag(part.eTag()).build()).toList());
+        String fileKey = completeMultipartUploadRequest.fileKey();
+        String uploadId = completeMultipartUploadRequest.uploadId();
         try {
-            s3Service.completeMultiPartUpload(bucketName, completeMultipartUploadRequest.fileKey(), completeMultipartUploadRequest.uploadId(), parts).join();
+            resolveParts(bucketName, fileKey, uploadId, completeMultipartUploadRequest.parts())
+                    .thenCompose(parts -> s3Service.completeMultiPartUpload(bucketName, fileKey, uploadId, parts))
+                    .thenCompose(ignore -> deleteStagedParts(bucketName, completeMultipartUploadRequest.parts()))
+                    .join();
         } catch (Exception e) {
-            logger.error("Error in finalize File Upload on key {} by upload id {}", completeMultipartUploadRequest.fileKey(), completeMultipartUploadRequest.uploadId(), e);
+            logger.error("Error in finalize File Upload on key {} by upload id {}", fileKey, uploadId, e);
             throw ApplicationFailure.newFailure(
                     "Error in complete file upload",
                     "finalizeFileUploadException"
@@ -209,10 +294,13 @@ public class BulkActivitiesImpl implements BulkActivities {
 
     private CompletableFuture<FileMetadata> estimateLineSize(int sampleLines, String key, long fileSize, String delimiter) {
         String bucketName = S3Util.getBucketKey(awsConfiguration.getEnv(), awsConfiguration.getRegion(), BULK_API);
-        return s3Service.getInputStream(bucketName, key, 0L, Math.min(1024 * 1024L, fileSize))
+        return s3Service.getInputStream(bucketName, key, 0L, Math.min(SAMPLE_BYTES, fileSize))
                 .thenApply(responseStream -> {
-                    try {
-                        FileMetadata metadata = getFileMetadata(sampleLines, fileSize, delimiter, responseStream);
+                    try (InputStream stream = responseStream) {
+                        byte[] head = stream.readAllBytes();
+                        InputCompression compression = CompressionUtil.detect(head);
+                        byte[] sample = CompressionUtil.decodeSample(head, compression, SAMPLE_BYTES);
+                        FileMetadata metadata = getFileMetadata(sampleLines, fileSize, delimiter, new ByteArrayInputStream(sample), compression);
                         AddressReader.validateHeaders(metadata.headers());
                         return metadata;
                     } catch (IOException e) {
@@ -221,18 +309,122 @@ public class BulkActivitiesImpl implements BulkActivities {
                 });
     }
 
-    private CompletableFuture<ChunkSubmitResult> submitChunk(FileChunk fileChunk, BulkApiRequest input) {
-        AtomicInteger batchCount = new AtomicInteger();
-        AtomicInteger totalRecordCount = new AtomicInteger(0);
-        FileMetadata fileMetadata = fileChunk.metadata();
-        long adjustedStart = fileChunk.startOffset() - 1;
-        long adjustEnd = Math.min(fileChunk.endOffset() + (2L * fileMetadata.avgLineSize()), fileMetadata.fileSize());
+    /**
+     * Reads {@code sampleRegions} evenly spaced regions of the data concurrently and records their line-size
+     * distribution, so chunks can be sized by the line width where they start. Only uncompressed input larger than
+     * the head sample is sampled this way.
+     */
+    private CompletableFuture<FileMetadata> sampleLineSizes(String bucketName, String key, FileMetadata metadata) {
+        long fileSize = metadata.fileSize();
+        if (metadata.compression() != InputCompression.NONE || sampleRegions < 2 || fileSize <= SAMPLE_BYTES) {
+            return CompletableFuture.completedFuture(metadata);
+        }
+        long dataSize = fileSize - metadata.headerLength();
+        List<Long> regionOffsets = IntStream.range(0, sampleRegions)
+                .mapToObj(region -> metadata.headerLength() + dataSize * region / sampleRegions)
+                .toList();
+        List<CompletableFuture<int[]>> regionLineSizes = regionOffsets.stream()
+                .map(offset -> s3Service.getObjectRange(bucketName, key, offset - 1, Math.min(offset + sampleRegionSize, fileSize) - 1)
+                        .thenApply(region -> FileChunkReader.sampleLineSizes(region.asByteArrayUnsafe())))
+                .toList();
+        return CompletableFuture.allOf(regionLineSizes.toArray(CompletableFuture[]::new))
+                .thenApply(ignore -> {
+                    SamplingStatistics statistics = buildSamplingStatistics(regionOffsets, regionLineSizes.stream().map(CompletableFuture::join).toList());
+                    if (statistics == null) {
+                        return metadata;
+                    }
+                    logger.info("Sampled line sizes for {}: {}", key, statistics);
+                    return metadata.withSamplingStatistics(statistics);
+                });
+    }
+
+    private CompletableFuture<FileChunkListResponse> resolveChunkBoundaries(String bucketName, String key, FileMetadata metadata) {
+        return switch (metadata.compression()) {
+            case NONE -> alignCutPoints(bucketName, key, metadata, 1, 0, FileChunkReader::findLineStart);
+            case BGZF -> alignCutPoints(bucketName, key, metadata, 0, CompressionUtil.BGZF_HEADER_SIZE - 1, CompressionUtil::findBgzfBlockStart);
+            case ZSTD -> alignToZstdFrames(bucketName, key, metadata);
+            case GZIP -> CompletableFuture.completedFuture(buildChunkList(List.of(), metadata));
+        };
+    }
+
+    /**
+     * Moves every cut point to the next boundary found by {@code finder}, probing from {@code lookBehind} bytes before
+     * the cut point. A probe without a boundary is retried after it with twice the size, overlapping it by
+     * {@code overlap} bytes so a boundary marker split across two probes is still found.
+     */
+    private CompletableFuture<FileChunkListResponse> alignCutPoints(String bucketName, String key, FileMetadata metadata, int lookBehind, int overlap, ToLongBiFunction<byte[], Long> finder) {
+        List<CompletableFuture<Long>> boundaries = getChunkCutPoints(minChunkSize, maxChunkSize, minLinesPerChunk, metadata).stream()
+                .map(cutPoint -> findNextBoundary(bucketName, key, cutPoint - lookBehind, metadata.fileSize(), boundaryProbeSize, overlap, finder))
+                .toList();
+        return CompletableFuture.allOf(boundaries.toArray(CompletableFuture[]::new))
+                .thenApply(ignore -> buildChunkList(boundaries.stream().map(CompletableFuture::join).toList(), metadata));
+    }
+
+    private CompletableFuture<Long> findNextBoundary(String bucketName, String key, long probeStart, long fileSize, int probeSize, int overlap, ToLongBiFunction<byte[], Long> finder) {
+        long probeEnd = Math.min(probeStart + probeSize, fileSize) - 1;
+        return s3Service.getObjectRange(bucketName, key, probeStart, probeEnd)
+                .thenCompose(probe -> {
+                    long boundary = finder.applyAsLong(probe.asByteArrayUnsafe(), probeStart);
+                    if (boundary >= 0) {
+                        return CompletableFuture.completedFuture(boundary);
+                    }
+                    if (probeEnd >= fileSize - 1) {
+                        return CompletableFuture.completedFuture(fileSize);
+                    }
+                    return findNextBoundary(bucketName, key, probeEnd + 1 - overlap, fileSize, probeSize * 2, overlap, finder);
+                });
+    }
+
+    /**
+     * Seekable zstd objects end with a seek table listing every frame, so cut points move to exact frame starts.
+     * Without a seek table the object is read as one chunk.
+     */
+    private CompletableFuture<FileChunkListResponse> alignToZstdFrames(String bucketName, String key, FileMetadata metadata) {
+        long fileSize = metadata.fileSize();
+        if (fileSize <= CompressionUtil.SEEK_TABLE_FOOTER_SIZE) {
+            return CompletableFuture.completedFuture(buildChunkList(List.of(), metadata));
+        }
+        return s3Service.getObjectRange(bucketName, key, fileSize - CompressionUtil.SEEK_TABLE_FOOTER_SIZE, fileSize - 1)
+                .thenCompose(footerBytes -> {
+                    CompressionUtil.SeekTableFooter footer = CompressionUtil.readSeekTableFooter(footerBytes.asByteArrayUnsafe());
+                    if (!CompressionUtil.hasSeekTable(fileSize, footer)) {
+                        logger.info("No seek table in zstd input {}, reading it as a single chunk", key);
+                        return CompletableFuture.completedFuture(buildChunkList(List.of(), metadata));
+                    }
+                    long tableStart = CompressionUtil.seekTableStart(fileSize, footer);
+                    return s3Service.getObjectRange(bucketName, key, tableStart, tableStart + footer.tableSize() - 1)
+                            .thenApply(entries -> buildChunkList(CompressionUtil.alignToFrames(
+                                    getChunkCutPoints(minChunkSize, maxChunkSize, minLinesPerChunk, metadata),
+                                    CompressionUtil.frameOffsets(entries.asByteArrayUnsafe(), footer), fileSize), metadata));
+                });
+    }
+
+    private CompletableFuture<ChunkSubmitResult> submitChunk(FileChunk fileChunk, BulkApiRequest input, ActivityExecutionContext context) {
+        boolean compressed = fileChunk.metadata().compression() != InputCompression.NONE;
+        ChunkSubmitCheckpoint checkpoint = context.getHeartbeatDetails(ChunkSubmitCheckpoint.class)
+                .orElse(new ChunkSubmitCheckpoint(compressed ? 0 : fileChunk.startOffset(), 0, 0));
+        if (checkpoint.committedOffset() > fileChunk.startOffset()) {
+            logger.info("Resuming chunk {} from offset {} after {} batches", fileChunk.chunkNumber(), checkpoint.committedOffset(), checkpoint.batchCount());
+        }
+        AtomicInteger batchCount = new AtomicInteger(checkpoint.batchCount());
+        AtomicInteger totalRecordCount = new AtomicInteger(checkpoint.recordCount());
+        if (!compressed && checkpoint.committedOffset() > fileChunk.endOffset()) {
+            String queryId = getCurrentQueryId(input.getApiType(), input.getFileName(), input.getOutputFileId());
+            return redisService.saveBatchTotal(queryId, fileChunk.chunkNumber(), batchCount.get())
+                    .then(Mono.defer(() -> redisService.expireBatches(queryId, fileChunk.chunkNumber())))
+                    .toFuture()
+                    .thenApply(saved -> new ChunkSubmitResult(batchCount.get(), totalRecordCount.get()));
+        }
         String bucketName = S3Util.getBucketKey(awsConfiguration.getEnv(), awsConfiguration.getRegion(), BULK_API);
         String fileInputObjectKey = S3Util.getFileInputObjectKey(S3Util.generateFileNameWithId(input.getFileName(), input.getFileId()), input.getWorkspaceId(), input.getEmailId());
-        return s3Service.getInputStream(bucketName, fileInputObjectKey, adjustedStart, adjustEnd)
+        CompletableFuture<InputStream> chunkStream = compressed
+                ? openCompressedChunk(bucketName, fileInputObjectKey, fileChunk, checkpoint.committedOffset())
+                : s3Service.getPrefetchedInputStream(bucketName, fileInputObjectKey, checkpoint.committedOffset(), fileChunk.endOffset());
+        long endOffset = compressed ? Long.MAX_VALUE : fileChunk.endOffset();
+        return chunkStream
                 .thenApply(inputStream -> Mono.using(
                         () -> inputStream,
-                        inStream -> processAddress(fileChunk, input, batchCount, inputStream, totalRecordCount),
+                        inStream -> processAddress(fileChunk, input, checkpoint, endOffset, batchCount, inputStream, totalRecordCount, context),
                         inStream -> {
                             try {
                                 inStream.close();
@@ -245,30 +437,120 @@ public class BulkActivitiesImpl implements BulkActivities {
                 .thenApply(s -> new ChunkSubmitResult(batchCount.get(), totalRecordCount.get()));
     }
 
-    private Mono<List<Boolean>> processAddress(FileChunk fileChunk, BulkApiRequest input, AtomicInteger batchCount, InputStream s3ChunkStream, AtomicInteger totalRecordCount) {
-        AtomicLong currentPosition = new AtomicLong(fileChunk.startOffset() - 1);
+    /**
+     * Decompresses the chunk's own blocks/frames and, for its last line, the data after them. Positions of a
+     * compressed chunk count decompressed bytes from the chunk start, so a resumed attempt skips
+     * {@code committedOffset} decompressed bytes.
+     */
+    private CompletableFuture<InputStream> openCompressedChunk(String bucketName, String key, FileChunk fileChunk, long committedOffset) {
+        FileMetadata metadata = fileChunk.metadata();
+        return s3Service.getPrefetchedInputStream(bucketName, key, fileChunk.startOffset(), fileChunk.endOffset())
+                .thenApply(own -> {
+                    try {
+                        InputStream stream = new CompressedChunkInputStream(CompressionUtil.decoder(own, metadata.compression()), () -> {
+                            if (fileChunk.endOffset() + 1 >= metadata.fileSize()) {
+                                return InputStream.nullInputStream();
+                            }
+                            return CompressionUtil.decoder(s3Service.getRangeInputStream(bucketName, key, fileChunk.endOffset() + 1,
+                                    metadata.fileSize() - 1, COMPRESSED_TAIL_PART_SIZE, 1), metadata.compression());
+                        });
+                        stream.skipNBytes(committedOffset);
+                        return stream;
+                    } catch (IOException e) {
+                        throw new BulkProcessorException("Error While Opening Compressed Chunk", e);
+                    }
+                });
+    }
+
+    /**
+     * Batches are submitted concurrently but their results are consumed in source order, so each heartbeat only
+     * checkpoints offsets whose batches, and all batches before them, have been acknowledged and saved. Batches are
+     * released at the pace of the {@link SubmitRateController}, with at most {@code maxInFlightBatches} of them
+     * awaiting their acknowledgement; a failed send fails the attempt, which resumes from the last checkpoint. The
+     * batch count is then appended to the chunk's completed list for {@code processChunk}, which may already be
+     * running, and the TTL of the chunk's status keys is set once, after the chunk's last batch was saved.
+     */
+    private Mono<Void> processAddress(FileChunk fileChunk, BulkApiRequest input, ChunkSubmitCheckpoint checkpoint, long endOffset, AtomicInteger batchCount, InputStream s3ChunkStream, AtomicInteger totalRecordCount, ActivityExecutionContext context) {
+        AtomicLong currentPosition = new AtomicLong(checkpoint.committedOffset());
+        AtomicInteger committedBatches = new AtomicInteger(checkpoint.batchCount());
+        AtomicInteger committedRecords = new AtomicInteger(checkpoint.recordCount());
         String queryId = getCurrentQueryId(input.getApiType(), input.getFileName(), input.getOutputFileId());
-        String splitter = TAB_SEPARATOR.equals(input.getDelimiter()) ? input.getDelimiter() : "\\".concat(input.getDelimiter());
+        CsvFieldTokenizer tokenizer = new CsvFieldTokenizer(fileChunk.metadata().headers(), input.getDelimiter());
         int batchSize = requestConfiguration.getBatchSize();
-        return readDataFromInputStream(s3ChunkStream, currentPosition, fileChunk.endOffset())
-                .skip(1)
-                .map(line -> AddressReader.convertToRequest(fileChunk.metadata().headers(), line, splitter, totalRecordCount))
+        return readLinesFromInputStream(s3ChunkStream, currentPosition, endOffset,
+                line -> new PositionedRequest(AddressReader.convertToRequest(tokenizer, line, totalRecordCount), currentPosition.get()))
                 .buffer(batchSize)
-                .delayUntil(lines -> {
-                    int currentBatch = batchCount.incrementAndGet();
-                    if (currentBatch % 10 == 0) {
-                        return Mono.delay(Duration.ofMillis(500));
-                    }
-                    return Mono.empty();
+                .index((index, lines) -> new NumberedBatch(checkpoint.batchCount() + index.intValue() + 1, lines))
+                .delayUntil(batch -> {
+                    batchCount.set(batch.number());
+                    return submitRateController.acquire();
                 })
-                .flatMap(lines -> submitRequest(queryId, lines, getBatchId(fileChunk.chunkNumber(), batchCount.get())))
-                .collectList();
+                .flatMapSequential(batch -> submitRequest(queryId, fileChunk.chunkNumber(), batch.number(), batch.lines().stream().map(PositionedRequest::request).toList())
+                        .thenReturn(batch.lines()), maxInFlightBatches)
+                .doOnNext(lines -> context.heartbeat(new ChunkSubmitCheckpoint(lines.getLast().endPosition(),
+                        committedBatches.incrementAndGet(), committedRecords.addAndGet(lines.size()))))
+                .then(Mono.defer(() -> redisService.saveBatchTotal(queryId, fileChunk.chunkNumber(), batchCount.get())))
+                .then(Mono.defer(() -> redisService.expireBatches(queryId, fileChunk.chunkNumber())))
+                .then();
+    }
+
+    private record PositionedRequest(InputRequest request, long endPosition) {
+    }
+
+    private record NumberedBatch(int number, List<PositionedRequest> lines) {
+    }
+
+    private Mono<Boolean> submitRequest(String queryId, int chunkId, int batchNumber, List<InputRequest> addresses) {
+        String queryBatchId = queryId + "-" + getBatchId(chunkId, batchNumber);
+        KafkaEvent event = new KafkaEvent(queryId, queryBatchId, addresses.size(), addresses, getChunkCompletedKey(queryId, chunkId));
+        return kafkaEventProducer.sendKafkaEvent(event)
+                .flatMap(metadata -> redisService.saveBatch(queryId, chunkId, batchNumber, "SUBMITTED"));
+    }
+
+    /**
+     * The parts to complete the upload with, in part number order. Staged parts are copied into the upload; a run of
+     * consecutive staged parts that is smaller than {@code MIN_UPLOAD_PART_SIZE} together is merged into the part
+     * number of its first one with the staged part after it, so only the last part of the upload can be smaller.
+     */
+    CompletableFuture<List<CompletedPart>> resolveParts(String bucketName, String key, String uploadId, List<PartDetail> parts) {
+        List<CompletableFuture<CompletedPart>> resolved = new ArrayList<>(parts.size());
+        List<PartDetail> run = new ArrayList<>();
+        long runSize = 0;
+        for (PartDetail part : parts.stream().sorted(Comparator.comparingInt(PartDetail::partNumber)).toList()) {
+            if (part.sourceKey() == null) {
+                if (!run.isEmpty()) {
+                    throw new BulkProcessorException("Staged parts from part " + run.getFirst().partNumber() + " are only " + runSize + " bytes before part " + part.partNumber());
+                }
+                resolved.add(CompletableFuture.completedFuture(CompletedPart.builder().partNumber(part.partNumber()).eTag(part.eTag()).build()));
+                continue;
+            }
+            run.add(part);
+            runSize += part.size();
+            if (runSize >= MIN_UPLOAD_PART_SIZE) {
+                resolved.add(copyStagedParts(bucketName, key, uploadId, run));
+                run = new ArrayList<>();
+                runSize = 0;
+            }
+        }
+        if (!run.isEmpty()) {
+            resolved.add(copyStagedParts(bucketName, key, uploadId, run));
+        }
+        return CompletableFuture.allOf(resolved.toArray(CompletableFuture[]::new))
+                .thenApply(ignore -> new ArrayList<>(resolved.stream().map(CompletableFuture::join).toList()));
+    }
+
+    private CompletableFuture<CompletedPart> copyStagedParts(String bucketName, String key, String uploadId, List<PartDetail> run) {
+        int partNumber = run.getFirst().partNumber();
+        CompletableFuture<String> eTag = run.size() == 1
+                ? s3Service.uploadChunkFilePart(bucketName, key, uploadId, partNumber, run.getFirst().sourceKey())
+                : s3Service.uploadMergedPart(bucketName, key, uploadId, partNumber, run.stream().map(PartDetail::sourceKey).toList());
+        return eTag.thenApply(tag -> CompletedPart.builder().partNumber(partNumber).eTag(tag).build());
     }
 
-    private Mono<Boolean> submitRequest(String queryId, List<InputRequest> addresses, String batchId) {
-        String queryBatchId = queryId+ "-" + batchId;
-        KafkaEvent event = new KafkaEvent(queryId, queryBatchId, addresses.size(), addresses);
-        kafkaEventProducer.sendKafkaEvent(event);
-        return redisService.saveBatch(queryId, queryBatchId, "SUBMITTED");
+    private CompletableFuture<Void> deleteStagedParts(String bucketName, List<PartDetail> parts) {
+        return CompletableFuture.allOf(parts.stream()
+                .filter(part -> part.sourceKey() != null)
+                .map(part -> s3Service.deleteChunkData(bucketName, part.sourceKey()))
+                .toArray(CompletableFuture[]::new));
     }
 }
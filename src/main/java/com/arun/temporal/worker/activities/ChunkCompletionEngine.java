@@ -0,0 +1,125 @@
+package com.arun.temporal.worker.activities;
+
+import com.arun.temporal.worker.model.activity.ChunkProcessingResult;
+import com.arun.temporal.worker.model.activity.ProcessChunkRequest;
+import com.arun.temporal.worker.s3.S3CsvConverterAndAggregator;
+import com.arun.temporal.worker.worker.WorkerStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micronaut.core.annotation.Nullable;
+import io.temporal.client.ActivityCompletionClient;
+import io.temporal.client.ActivityCompletionException;
+import io.temporal.client.WorkflowClient;
+import io.temporal.failure.ApplicationFailure;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Completes {@code processChunk} activities that returned with {@code doNotCompleteOnReturn()}. The chunk is
+ * aggregated by {@link S3CsvConverterAndAggregator#aggregateChunkAsync}, and the activity is heartbeated, completed
+ * or failed by its task token through the {@link ActivityCompletionClient}, so a tracked chunk holds neither an
+ * activity slot nor a thread. A heartbeat rejected because the activity was cancelled or timed out stops the
+ * aggregation. The number of tracked chunks is published as the {@code bulk.chunk.async.tracked} gauge.
+ */
+@Singleton
+public class ChunkCompletionEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkCompletionEngine.class);
+    static final String TRACKED_GAUGE = "bulk.chunk.async.tracked";
+    private static final Duration HEARTBEAT_INTERVAL = Duration.ofMinutes(1);
+
+    private final S3CsvConverterAndAggregator aggregator;
+    private final ActivityCompletionClient completionClient;
+    private final WorkerStatus workerStatus;
+    private final ScheduledExecutorService heartbeats;
+    private final AtomicInteger tracked = new AtomicInteger();
+
+    @Inject
+    public ChunkCompletionEngine(S3CsvConverterAndAggregator aggregator, WorkflowClient workflowClient, WorkerStatus workerStatus,
+                                 @Nullable MeterRegistry meterRegistry) {
+        this(aggregator, workflowClient.newActivityCompletionClient(), workerStatus);
+        Gauge.builder(TRACKED_GAUGE, tracked, AtomicInteger::get)
+                .description("processChunk activities completed asynchronously that are still aggregating")
+                .register(meterRegistry != null ? meterRegistry : Metrics.globalRegistry);
+    }
+
+    ChunkCompletionEngine(S3CsvConverterAndAggregator aggregator, ActivityCompletionClient completionClient, WorkerStatus workerStatus) {
+        this.aggregator = aggregator;
+        this.completionClient = completionClient;
+        this.workerStatus = workerStatus;
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chunk-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void close() {
+        heartbeats.shutdownNow();
+    }
+
+    /**
+     * Starts aggregating the chunk of the activity identified by {@code taskToken} and completes the activity once the
+     * chunk is uploaded. Failures while opening the chunk are thrown to the caller, so the activity fails the same way
+     * it would if it ran to completion on its own thread.
+     */
+    public void track(byte[] taskToken, ProcessChunkRequest request, String queryId) {
+        CompletableFuture<ChunkProcessingResult> result = aggregator.aggregateChunkAsync(request, queryId);
+        workerStatus.startActivity();
+        tracked.incrementAndGet();
+        ScheduledFuture<?> heartbeat = heartbeats.scheduleAtFixedRate(() -> heartbeat(taskToken, request, result),
+                HEARTBEAT_INTERVAL.toMillis(), HEARTBEAT_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+        result.whenComplete((aggregated, throwable) -> {
+            heartbeat.cancel(false);
+            tracked.decrementAndGet();
+            workerStatus.endActivity();
+            complete(taskToken, request, aggregated, throwable);
+        });
+    }
+
+    public int trackedChunks() {
+        return tracked.get();
+    }
+
+    private void heartbeat(byte[] taskToken, ProcessChunkRequest request, CompletableFuture<ChunkProcessingResult> result) {
+        try {
+            completionClient.heartbeat(taskToken, "uploading");
+        } catch (ActivityCompletionException e) {
+            logger.warn("Stopping aggregation of chunk {}, its activity can no longer be completed", request.chunkNumber(), e);
+            result.cancel(false);
+        }
+    }
+
+    private void complete(byte[] taskToken, ProcessChunkRequest request, ChunkProcessingResult aggregated, Throwable throwable) {
+        try {
+            if (throwable == null) {
+                completionClient.complete(taskToken, aggregated);
+            } else if (throwable instanceof CancellationException) {
+                completionClient.reportCancellation(taskToken, null);
+            } else {
+                logger.error("Error in processing chunk for chunk No : {} file Name: {} file id: {}", request.chunkNumber(),
+                        request.bulkApiRequest().getFileName(), request.bulkApiRequest().getFileId(), throwable);
+                completionClient.completeExceptionally(taskToken, ApplicationFailure.newFailure(
+                        "Error in processing chunk",
+                        "ProcessChunkException"
+                ));
+            }
+        } catch (ActivityCompletionException e) {
+            logger.warn("Could not report the outcome of chunk {} to its activity", request.chunkNumber(), e);
+        }
+    }
+}
@@ -15,4 +15,10 @@ public interface S3ClientConfiguration extends Named {
 
     @Min(1)
     int getConnectionAcquisitionTimeout();
+
+    @Min(1048576)
+    long getPrefetchPartSize();
+
+    @Min(1)
+    int getPrefetchWindow();
 }
@@ -14,6 +14,12 @@ public interface Constants {
     String BULK_RESULT = "bulk-result";
     String REPORT_HEADER = "with_report";
     int MAX_ACTIVITY_RUN_TIME_OUT = 40;
+    int MAX_UPLOAD_PARTS = 10000;
+    int MIN_UPLOAD_PART_SIZE = 5 * 1024 * 1024;
+    long MAX_UPLOAD_PART_SIZE = 5L * 1024 * 1024 * 1024;
+    int UNKNOWN_TOTAL_BATCHES = -1;
+    String BATCH_TOTAL_PREFIX = "total:";
+    String AGGREGATION_QUEUE_SUFFIX = "-aggregation";
 
     static String getOutputCsvHeaders(String separator) {
         return String.join(separator,
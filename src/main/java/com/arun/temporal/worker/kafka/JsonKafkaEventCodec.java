@@ -0,0 +1,36 @@
+package com.arun.temporal.worker.kafka;
+
+import com.arun.temporal.worker.exception.BulkProcessorException;
+import com.arun.temporal.worker.model.KafkaEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micronaut.context.annotation.Requires;
+import jakarta.inject.Singleton;
+
+import static com.arun.temporal.worker.kafka.KafkaEventProducer.KAFKA_OBJECT_MAPPER;
+
+/**
+ * Schema version 1: the event as UTF-8 JSON.
+ */
+@Singleton
+@Requires(property = "kafka-event.codec", value = "json", defaultValue = "json")
+public class JsonKafkaEventCodec implements KafkaEventCodec {
+
+    @Override
+    public byte[] encode(KafkaEvent event) {
+        try {
+            return KAFKA_OBJECT_MAPPER.writeValueAsBytes(event);
+        } catch (JsonProcessingException e) {
+            throw new BulkProcessorException("Error in serializing kafka event " + event.getBatchId(), e);
+        }
+    }
+
+    @Override
+    public String schemaVersion() {
+        return "1";
+    }
+
+    @Override
+    public String contentType() {
+        return "application/json";
+    }
+}
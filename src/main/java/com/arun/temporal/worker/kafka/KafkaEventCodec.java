@@ -0,0 +1,16 @@
+package com.arun.temporal.worker.kafka;
+
+import com.arun.temporal.worker.model.KafkaEvent;
+
+/**
+ * Serializes {@link KafkaEvent} record values. Consumers pick the decoder from the {@code schemaVersion} and
+ * {@code contentType} headers sent with every record.
+ */
+public interface KafkaEventCodec {
+
+    byte[] encode(KafkaEvent event);
+
+    String schemaVersion();
+
+    String contentType();
+}
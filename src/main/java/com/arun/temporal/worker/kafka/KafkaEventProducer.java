@@ -2,11 +2,12 @@ package com.arun.temporal.worker.kafka;
 
 import com.arun.temporal.worker.model.KafkaEvent;
 import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.header.internals.RecordHeader;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 import java.util.UUID;
@@ -18,24 +19,27 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 public class KafkaEventProducer {
 
     private final KafkaMsgClient kafkaMsgClient;
+    private final KafkaEventCodec kafkaEventCodec;
 
     public static final ObjectMapper KAFKA_OBJECT_MAPPER = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.ALWAYS);
 
-    public KafkaEventProducer(KafkaMsgClient kafkaMsgClient) {
+    public KafkaEventProducer(KafkaMsgClient kafkaMsgClient, KafkaEventCodec kafkaEventCodec) {
         this.kafkaMsgClient = kafkaMsgClient;
+        this.kafkaEventCodec = kafkaEventCodec;
     }
 
-    public void sendKafkaEvent(KafkaEvent kafkaEvent) {
+    /**
+     * Completes with the broker acknowledgement of the event, or with the serialization or producer error.
+     */
+    public Mono<RecordMetadata> sendKafkaEvent(KafkaEvent kafkaEvent) {
         List<RecordHeader> messageHeaders = List.of(
                 new RecordHeader("type", "kafkaEvent".getBytes(UTF_8)),
-                new RecordHeader("schemaVersion", "1".getBytes(UTF_8)),
+                new RecordHeader("schemaVersion", kafkaEventCodec.schemaVersion().getBytes(UTF_8)),
+                new RecordHeader("contentType", kafkaEventCodec.contentType().getBytes(UTF_8)),
                 new RecordHeader("messageId", UUID.randomUUID().toString().getBytes(UTF_8))
         );
-        try {
-            String event = KAFKA_OBJECT_MAPPER.writeValueAsString(kafkaEvent);
-            kafkaMsgClient.sendEvent(UUID.randomUUID().toString(), event, messageHeaders);
-        } catch (JsonProcessingException ex) {
-            log.error("Error pushing message to Kafka", ex);
-        }
+        return Mono.fromCallable(() -> kafkaEventCodec.encode(kafkaEvent))
+                .flatMap(value -> kafkaMsgClient.sendEvent(UUID.randomUUID().toString(), value, messageHeaders))
+                .doOnError(ex -> log.error("Error pushing batch {} to Kafka", kafkaEvent.getBatchId(), ex));
     }
 }
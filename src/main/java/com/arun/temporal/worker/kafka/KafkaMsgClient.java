@@ -5,7 +5,9 @@ import io.micronaut.configuration.kafka.annotation.KafkaKey;
 import io.micronaut.configuration.kafka.annotation.Topic;
 import io.micronaut.http.annotation.Header;
 import lombok.Generated;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.header.internals.RecordHeader;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 
@@ -13,5 +15,5 @@ import java.util.List;
 @Generated
 public interface KafkaMsgClient {
     @Topic("spark-events")
-    void sendEvent(@KafkaKey String key, String value, @Header List<RecordHeader> headers);
+    Mono<RecordMetadata> sendEvent(@KafkaKey String key, byte[] value, @Header List<RecordHeader> headers);
 }
\ No newline at end of file
@@ -0,0 +1,97 @@
+package com.arun.temporal.worker.kafka;
+
+import com.arun.temporal.worker.exception.BulkProcessorException;
+import com.arun.temporal.worker.model.InputRequest;
+import com.arun.temporal.worker.model.KafkaEvent;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import io.micronaut.context.annotation.Requires;
+import jakarta.inject.Singleton;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Schema version 2: the event in protobuf wire format, as described by {@code proto/kafka_event.proto}. The message is
+ * written directly from the model, sized up front so it is encoded into one exactly sized array. Null and empty
+ * strings are left out, as proto3 does for default values.
+ */
+@Singleton
+@Requires(property = "kafka-event.codec", value = "protobuf")
+public class ProtobufKafkaEventCodec implements KafkaEventCodec {
+
+    static final int EVENT_QUERY_ID = 1;
+    static final int EVENT_BATCH_ID = 2;
+    static final int EVENT_PAYLOAD_LENGTH = 3;
+    static final int EVENT_REQUESTS = 4;
+    static final int EVENT_COMPLETION_KEY = 5;
+    static final int REQUEST_INPUT1 = 1;
+    static final int REQUEST_INPUT2 = 2;
+    static final int REQUEST_INPUT3 = 3;
+
+    @Override
+    public byte[] encode(KafkaEvent event) {
+        List<InputRequest> requests = event.getRequests() == null ? List.of() : event.getRequests();
+        int[] requestSizes = new int[requests.size()];
+        int size = stringSize(EVENT_QUERY_ID, event.getQueryId()) + stringSize(EVENT_BATCH_ID, event.getBatchId())
+                + stringSize(EVENT_COMPLETION_KEY, event.getCompletionKey());
+        if (event.getPayloadLength() != 0) {
+            size += CodedOutputStream.computeInt32Size(EVENT_PAYLOAD_LENGTH, event.getPayloadLength());
+        }
+        for (int i = 0; i < requestSizes.length; i++) {
+            requestSizes[i] = requestSize(requests.get(i));
+            size += CodedOutputStream.computeTagSize(EVENT_REQUESTS) + CodedOutputStream.computeUInt32SizeNoTag(requestSizes[i]) + requestSizes[i];
+        }
+        byte[] encoded = new byte[size];
+        CodedOutputStream out = CodedOutputStream.newInstance(encoded);
+        try {
+            writeString(out, EVENT_QUERY_ID, event.getQueryId());
+            writeString(out, EVENT_BATCH_ID, event.getBatchId());
+            if (event.getPayloadLength() != 0) {
+                out.writeInt32(EVENT_PAYLOAD_LENGTH, event.getPayloadLength());
+            }
+            for (int i = 0; i < requestSizes.length; i++) {
+                InputRequest request = requests.get(i);
+                out.writeTag(EVENT_REQUESTS, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                out.writeUInt32NoTag(requestSizes[i]);
+                if (request != null) {
+                    writeString(out, REQUEST_INPUT1, request.getInput1());
+                    writeString(out, REQUEST_INPUT2, request.getInput2());
+                    writeString(out, REQUEST_INPUT3, request.getInput3());
+                }
+            }
+            writeString(out, EVENT_COMPLETION_KEY, event.getCompletionKey());
+            out.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new BulkProcessorException("Error in serializing kafka event " + event.getBatchId(), e);
+        }
+        return encoded;
+    }
+
+    @Override
+    public String schemaVersion() {
+        return "2";
+    }
+
+    @Override
+    public String contentType() {
+        return "application/x-protobuf";
+    }
+
+    private static int requestSize(InputRequest request) {
+        if (request == null) {
+            return 0;
+        }
+        return stringSize(REQUEST_INPUT1, request.getInput1()) + stringSize(REQUEST_INPUT2, request.getInput2()) + stringSize(REQUEST_INPUT3, request.getInput3());
+    }
+
+    private static int stringSize(int field, String value) {
+        return value == null || value.isEmpty() ? 0 : CodedOutputStream.computeStringSize(field, value);
+    }
+
+    private static void writeString(CodedOutputStream out, int field, String value) throws IOException {
+        if (value != null && !value.isEmpty()) {
+            out.writeString(field, value);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.arun.temporal.worker.model;
+
+import com.arun.temporal.worker.model.activity.FileChunk;
+import com.arun.temporal.worker.model.activity.FileMetadata;
+
+import java.util.List;
+
+/**
+ * Progress of a job handed to the next run when the workflow continues as new. Chunks are contiguous and share one
+ * {@link FileMetadata}, so the chunks still to process are kept as the start offset of each, numbered from
+ * {@code nextChunkNumber}, instead of as full {@link FileChunk}s.
+ */
+public record BulkWorkflowState(
+        String uploadId,
+        FileMetadata metadata,
+        int nextChunkNumber,
+        List<Long> remainingChunkStarts,
+        OutputPlanState outputPlan,
+        long totalRecordCount,
+        long successfulRecordCount,
+        ReportData reportData
+) {
+
+    public static BulkWorkflowState of(String uploadId, List<FileChunk> remainingChunks, OutputPlanState outputPlan,
+                                       long totalRecordCount, long successfulRecordCount, ReportData reportData) {
+        FileChunk first = remainingChunks.getFirst();
+        return new BulkWorkflowState(uploadId, first.metadata(), first.chunkNumber(),
+                remainingChunks.stream().map(FileChunk::startOffset).toList(), outputPlan, totalRecordCount, successfulRecordCount, reportData);
+    }
+
+    public List<FileChunk> remainingChunks() {
+        return FileChunk.contiguous(nextChunkNumber, remainingChunkStarts, metadata.fileSize() - 1, metadata);
+    }
+}
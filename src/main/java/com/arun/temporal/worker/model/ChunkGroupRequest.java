@@ -0,0 +1,49 @@
+package com.arun.temporal.worker.model;
+
+import com.arun.temporal.worker.model.activity.FileChunk;
+import com.arun.temporal.worker.model.activity.FileMetadata;
+
+import java.util.List;
+
+/**
+ * A contiguous shard of a job's chunks, processed by a child workflow. Chunks are kept as their start offsets,
+ * numbered from {@code firstChunkNumber}, with the last one ending at {@code endOffset}. {@code outputPlan} is the
+ * job's part allocation positioned at the shard's first chunk; {@code maxParallelChunks} and
+ * {@code maxParallelSubmissions} apply to this shard alone. Once its history holds {@code maxHistoryLength} events
+ * the child continues as new with the chunks left, carrying what it produced so far in {@code progress} (null for the
+ * first run).
+ */
+public record ChunkGroupRequest(
+        BulkApiRequest input,
+        String uploadId,
+        FileMetadata metadata,
+        int firstChunkNumber,
+        List<Long> chunkStarts,
+        long endOffset,
+        OutputPlanState outputPlan,
+        boolean directUpload,
+        int maxParallelChunks,
+        int maxParallelSubmissions,
+        int maxHistoryLength,
+        ChunkGroupResult progress
+) {
+
+    public static ChunkGroupRequest of(BulkApiRequest input, String uploadId, List<FileChunk> chunks, OutputPlanState outputPlan,
+                                       boolean directUpload, int maxParallelChunks, int maxParallelSubmissions, int maxHistoryLength) {
+        FileChunk first = chunks.getFirst();
+        return new ChunkGroupRequest(input, uploadId, first.metadata(), first.chunkNumber(), chunks.stream().map(FileChunk::startOffset).toList(),
+                chunks.getLast().endOffset(), outputPlan, directUpload, maxParallelChunks, maxParallelSubmissions, maxHistoryLength, null);
+    }
+
+    /**
+     * The request of the next run of the same shard, starting at the first of {@code remainingChunks}.
+     */
+    public ChunkGroupRequest continueWith(List<FileChunk> remainingChunks, OutputPlanState remainingPlan, ChunkGroupResult progressSoFar) {
+        return new ChunkGroupRequest(input, uploadId, metadata, remainingChunks.getFirst().chunkNumber(), remainingChunks.stream().map(FileChunk::startOffset).toList(),
+                endOffset, remainingPlan, directUpload, maxParallelChunks, maxParallelSubmissions, maxHistoryLength, progressSoFar);
+    }
+
+    public List<FileChunk> chunks() {
+        return FileChunk.contiguous(firstChunkNumber, chunkStarts, endOffset, metadata);
+    }
+}
@@ -0,0 +1,20 @@
+package com.arun.temporal.worker.model;
+
+import com.arun.temporal.worker.model.activity.PartDetail;
+
+import java.util.List;
+
+/**
+ * What a shard's child workflow produced: the output parts of each of its chunks, which the parent workflow records
+ * in its own part allocation, and the shard's record counts and report totals.
+ */
+public record ChunkGroupResult(
+        List<ChunkParts> chunks,
+        long totalRecordCount,
+        long successfulRecordCount,
+        ReportData reportData
+) {
+
+    public record ChunkParts(int chunkNumber, List<PartDetail> parts) {
+    }
+}
@@ -18,4 +18,12 @@ public class KafkaEvent {
     String batchId;
     int payloadLength;
     List<InputRequest> requests;
+    /**
+     * Redis list the consumer appends {@code batchId} to once the batch is {@code COMPLETED}.
+     */
+    String completionKey;
+
+    public KafkaEvent(String queryId, String batchId, int payloadLength, List<InputRequest> requests) {
+        this(queryId, batchId, payloadLength, requests, null);
+    }
 }
@@ -0,0 +1,21 @@
+package com.arun.temporal.worker.model;
+
+import com.arun.temporal.worker.model.activity.PartDetail;
+
+import java.util.List;
+
+/**
+ * Output part allocation of a job carried across continue-as-new: the plan was made for {@code chunkCount} chunks,
+ * of which {@code nextChunkIndex} have been started. {@code groupParts} and {@code pendingChunks} hold, per group
+ * of chunks, the parts written so far and the chunks still to finish; the parts of a group are dropped once it is
+ * composed into the final upload, whose parts are in {@code finalParts}.
+ */
+public record OutputPlanState(
+        int chunkCount,
+        int nextChunkIndex,
+        List<String> groupUploadIds,
+        List<List<PartDetail>> groupParts,
+        List<Integer> pendingChunks,
+        List<PartDetail> finalParts
+) {
+}
@@ -1,6 +1,8 @@
 package com.arun.temporal.worker.model.activity;
 
 import com.arun.temporal.worker.model.ReportData;
+import com.arun.temporal.worker.s3.ChunkPartWriter;
+import com.arun.temporal.worker.s3.PartBufferPool;
 import lombok.Getter;
 import lombok.Setter;
 import software.amazon.awssdk.services.s3.model.CompletedPart;
@@ -8,12 +10,13 @@ import software.amazon.awssdk.services.s3.model.CompletedPart;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Getter
 @Setter
 public class ChunkDetail {
     ReportData reportData;
-    StringBuilder dataBuffer;
+    ChunkPartWriter partWriter;
     AtomicInteger totalRecordCount;
     String chunkUploadKey;
     String chunkUploadId;
@@ -21,16 +24,42 @@ public class ChunkDetail {
     List<CompletedPart> parts;
     String finalUploadId;
     String finalUploadKey;
+    final ReentrantLock bufferLock = new ReentrantLock();
+    /**
+     * Part staged as an object instead of being uploaded, so it can still be merged with a small chunk before it; 0
+     * for none.
+     */
+    int stagedPartNumber;
+    final List<PartDetail> stagedParts = new CopyOnWriteArrayList<>();
 
-    public ChunkDetail(String chunkUploadKey, String chunkUploadId, String finalUploadId, String finalUploadKey) {
+    public ChunkDetail(String chunkUploadKey, String chunkUploadId, String finalUploadId, String finalUploadKey, PartBufferPool partBufferPool) {
+        this(chunkUploadKey, chunkUploadId, finalUploadId, finalUploadKey, partBufferPool, 1, Integer.MAX_VALUE, 0);
+        this.stagedPartNumber = 0;
+    }
+
+    public ChunkDetail(String chunkUploadKey, String chunkUploadId, String finalUploadId, String finalUploadKey, PartBufferPool partBufferPool,
+                       int firstPartNumber, int lastPartNumber, int minPartSize) {
         this.reportData = new ReportData();
-        this.dataBuffer = new StringBuilder();
         this.totalRecordCount = new AtomicInteger(0);
         this.chunkUploadKey = chunkUploadKey;
         this.chunkUploadId = chunkUploadId;
-        this.partNo = new AtomicInteger(1);
+        this.partNo = new AtomicInteger(firstPartNumber);
+        this.partWriter = new ChunkPartWriter(partBufferPool, partNo, lastPartNumber, minPartSize);
+        this.stagedPartNumber = firstPartNumber;
         this.parts = new CopyOnWriteArrayList<>();
         this.finalUploadId = finalUploadId;
         this.finalUploadKey = finalUploadKey;
     }
+
+    /**
+     * Gives back the part buffers of a chunk that will not be finished; a no-op once its last parts were handed out.
+     */
+    public void close() {
+        bufferLock.lock();
+        try {
+            partWriter.abort();
+        } finally {
+            bufferLock.unlock();
+        }
+    }
 }
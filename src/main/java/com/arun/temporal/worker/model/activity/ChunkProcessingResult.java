@@ -3,12 +3,23 @@ package com.arun.temporal.worker.model.activity;
 import com.arun.temporal.worker.model.ReportData;
 import lombok.Builder;
 
+import java.util.List;
+
+/**
+ * {@code parts} are the parts of the output upload holding the chunk; {@code uploadTagId} is the ETag of the single
+ * copied part when the chunk went through a temporary object, {@code null} for direct uploads.
+ */
 @Builder
 public record ChunkProcessingResult(
         int id,
         int totalRecordCount,
         int totalBatchCount,
         ReportData reportData,
-        String uploadTagId
+        String uploadTagId,
+        List<PartDetail> parts
 ) {
+
+    public ChunkProcessingResult(int id, int totalRecordCount, int totalBatchCount, ReportData reportData, String uploadTagId) {
+        this(id, totalRecordCount, totalBatchCount, reportData, uploadTagId, List.of(new PartDetail(id, uploadTagId)));
+    }
 }
@@ -0,0 +1,8 @@
+package com.arun.temporal.worker.model.activity;
+
+/**
+ * Heartbeat details of {@code uploadChunk}: everything before {@code committedOffset} has been submitted as
+ * {@code batchCount} batches holding {@code recordCount} records.
+ */
+public record ChunkSubmitCheckpoint(long committedOffset, int batchCount, int recordCount) {
+}
@@ -0,0 +1,19 @@
+package com.arun.temporal.worker.model.activity;
+
+import java.util.List;
+
+/**
+ * Completes the intermediate upload {@code sourceUploadId} of {@code sourceKey} from {@code sourceParts} and copies
+ * the resulting object into parts {@code firstPartNumber} to {@code firstPartNumber + maxParts - 1} of
+ * {@code uploadId}.
+ */
+public record ComposeUploadRequest(
+        String sourceKey,
+        String sourceUploadId,
+        List<PartDetail> sourceParts,
+        String uploadKey,
+        String uploadId,
+        int firstPartNumber,
+        int maxParts
+) {
+}
@@ -0,0 +1,6 @@
+package com.arun.temporal.worker.model.activity;
+
+import java.util.List;
+
+public record ComposeUploadResponse(List<PartDetail> parts) {
+}
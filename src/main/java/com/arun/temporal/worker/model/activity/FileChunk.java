@@ -1,10 +1,29 @@
 package com.arun.temporal.worker.model.activity;
 
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * A line-aligned byte range of the input file. {@code startOffset} is the first byte of the first line in the
+ * chunk and {@code endOffset} is the last byte (inclusive) of its last line, terminator included.
+ */
 public record FileChunk(
         int chunkNumber,
         long startOffset,
         long endOffset,
         FileMetadata metadata
 ) {
+
+    /**
+     * Consecutive chunks numbered from {@code firstChunkNumber}, each running up to the start of the next and the
+     * last up to {@code endOffset}.
+     */
+    public static List<FileChunk> contiguous(int firstChunkNumber, List<Long> startOffsets, long endOffset, FileMetadata metadata) {
+        List<FileChunk> chunks = new ArrayList<>(startOffsets.size());
+        for (int i = 0; i < startOffsets.size(); i++) {
+            long chunkEnd = i + 1 < startOffsets.size() ? startOffsets.get(i + 1) - 1 : endOffset;
+            chunks.add(new FileChunk(firstChunkNumber + i, startOffsets.get(i), chunkEnd, metadata));
+        }
+        return chunks;
+    }
 }
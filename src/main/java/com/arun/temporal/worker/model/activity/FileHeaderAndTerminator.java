@@ -2,5 +2,6 @@ package com.arun.temporal.worker.model.activity;
 
 public record FileHeaderAndTerminator (
     String header,
-    int terminatorSize
+    int terminatorSize,
+    int headerLength
 ){}
@@ -1,9 +1,32 @@
 package com.arun.temporal.worker.model.activity;
 
+/**
+ * For compressed input {@code fileSize} is the stored (compressed) size, {@code headerLength} is 0 and chunk offsets
+ * are compressed offsets; line sizes and headers always describe the decompressed text. {@code samplingStatistics}
+ * is only set when regions beyond the head of the file were sampled.
+ */
 public record FileMetadata(
         int lineTerminatorSize,
         int avgLineSize,
         long fileSize,
-        String[] headers
+        String[] headers,
+        int headerLength,
+        InputCompression compression,
+        SamplingStatistics samplingStatistics
 ) {
+    public FileMetadata {
+        compression = compression == null ? InputCompression.NONE : compression;
+    }
+
+    public FileMetadata(int lineTerminatorSize, int avgLineSize, long fileSize, String[] headers, int headerLength) {
+        this(lineTerminatorSize, avgLineSize, fileSize, headers, headerLength, InputCompression.NONE, null);
+    }
+
+    public FileMetadata(int lineTerminatorSize, int avgLineSize, long fileSize, String[] headers, int headerLength, InputCompression compression) {
+        this(lineTerminatorSize, avgLineSize, fileSize, headers, headerLength, compression, null);
+    }
+
+    public FileMetadata withSamplingStatistics(SamplingStatistics statistics) {
+        return new FileMetadata(lineTerminatorSize, statistics.avgLineSize(), fileSize, headers, headerLength, compression, statistics);
+    }
 }
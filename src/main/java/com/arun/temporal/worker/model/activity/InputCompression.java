@@ -0,0 +1,12 @@
+package com.arun.temporal.worker.model.activity;
+
+/**
+ * Storage format of the input object. {@code BGZF} (blocked gzip) and seekable {@code ZSTD} can be split on block or
+ * frame boundaries; a plain gzip stream, or zstd without a seek table, is read as a single chunk.
+ */
+public enum InputCompression {
+    NONE,
+    GZIP,
+    BGZF,
+    ZSTD
+}
@@ -1,4 +1,17 @@
 package com.arun.temporal.worker.model.activity;
 
-public record MaxParallelChunkResponse(int maxParallelChunks) {
+/**
+ * Worker settings the workflow plans with. {@code maxParallelChunks} chunks are aggregated at a time, of which at
+ * most {@code maxParallelSubmissions} are still being submitted. {@code directUpload} makes chunks upload their
+ * parts straight into the job's output multipart upload, each in its own reserved part-number range, instead of into
+ * a temporary object that is then copied in. Once the workflow history holds {@code maxHistoryLength} events
+ * (0 for no limit) the workflow stops starting chunks and continues as new. A new job is spread over one child workflow
+ * per {@code shardSize} bytes of input, at most {@code maxShards} (1 to process every job in its own workflow).
+ */
+public record MaxParallelChunkResponse(int maxParallelChunks, boolean directUpload, int maxParallelSubmissions, int maxHistoryLength,
+                                       int maxShards, long shardSize) {
+
+    public MaxParallelChunkResponse(int maxParallelChunks) {
+        this(maxParallelChunks, false, maxParallelChunks, 0, 1, 0);
+    }
 }
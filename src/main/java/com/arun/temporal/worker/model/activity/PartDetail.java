@@ -1,4 +1,16 @@
 package com.arun.temporal.worker.model.activity;
 
-public record PartDetail(int partNumber, String eTag) {
+/**
+ * A part of a multipart upload. A part with a {@code sourceKey} was staged as an object of {@code size} bytes instead
+ * of being uploaded; it is copied, or merged with the staged parts after it, when the upload is completed.
+ */
+public record PartDetail(int partNumber, String eTag, String sourceKey, long size) {
+
+    public PartDetail(int partNumber, String eTag) {
+        this(partNumber, eTag, null, 0);
+    }
+
+    public static PartDetail staged(int partNumber, String sourceKey, long size) {
+        return new PartDetail(partNumber, null, sourceKey, size);
+    }
 }
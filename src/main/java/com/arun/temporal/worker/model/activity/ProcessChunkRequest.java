@@ -2,10 +2,29 @@ package com.arun.temporal.worker.model.activity;
 
 import com.arun.temporal.worker.model.BulkApiRequest;
 
+/**
+ * With {@code directUpload} the chunk's output is uploaded as parts {@code firstPartNumber} to
+ * {@code firstPartNumber + maxParts - 1} of {@code uploadId}; otherwise it is copied into as many parts of that range
+ * as it needs. {@code uploadKey} is the object {@code uploadId} belongs to, the job's output file when null.
+ * {@code totalBatch} is {@code UNKNOWN_TOTAL_BATCHES} when the chunk is still being submitted.
+ */
 public record ProcessChunkRequest(
         int chunkNumber,
         String uploadId,
         int totalBatch,
-        BulkApiRequest bulkApiRequest
+        BulkApiRequest bulkApiRequest,
+        int firstPartNumber,
+        int maxParts,
+        boolean directUpload,
+        String uploadKey
 ) {
+
+    public ProcessChunkRequest(int chunkNumber, String uploadId, int totalBatch, BulkApiRequest bulkApiRequest) {
+        this(chunkNumber, uploadId, totalBatch, bulkApiRequest, chunkNumber, 1, false);
+    }
+
+    public ProcessChunkRequest(int chunkNumber, String uploadId, int totalBatch, BulkApiRequest bulkApiRequest,
+                               int firstPartNumber, int maxParts, boolean directUpload) {
+        this(chunkNumber, uploadId, totalBatch, bulkApiRequest, firstPartNumber, maxParts, directUpload, null);
+    }
 }
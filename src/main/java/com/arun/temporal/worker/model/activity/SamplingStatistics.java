@@ -0,0 +1,30 @@
+package com.arun.temporal.worker.model.activity;
+
+import java.util.List;
+
+/**
+ * Line-size distribution sampled from several regions of the input. {@code regionOffsets} is ascending and
+ * {@code regionAvgLineSizes} holds the mean line size (terminator included) measured at each of them.
+ */
+public record SamplingStatistics(
+        int sampledRegions,
+        int sampledLines,
+        int minLineSize,
+        int medianLineSize,
+        int p90LineSize,
+        int maxLineSize,
+        int avgLineSize,
+        List<Long> regionOffsets,
+        List<Integer> regionAvgLineSizes
+) {
+    /**
+     * Mean line size of the last sampled region starting at or before {@code offset}.
+     */
+    public int avgLineSizeAt(long offset) {
+        int size = regionAvgLineSizes.isEmpty() ? avgLineSize : regionAvgLineSizes.get(0);
+        for (int i = 0; i < regionOffsets.size() && regionOffsets.get(i) <= offset; i++) {
+            size = regionAvgLineSizes.get(i);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,123 @@
+package com.arun.temporal.worker.redis;
+
+import io.lettuce.core.api.reactive.RedisReactiveCommands;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Nullable;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces hash field writes. Writes are collected for up to {@code window} or {@code maxEntries} entries and sent
+ * as one multi-field {@code HSET} per hash; every caller's {@link Mono} completes when the flush holding its write
+ * does. Flushes of different windows go out concurrently on the shared connection, so they are pipelined rather
+ * than waiting on each other's replies. Windows are only closed while a flush slot is free, so slow replies make
+ * windows fill up instead of failing the pipeline; should it still fail, every write waiting on it fails too.
+ */
+@Singleton
+public class BatchingRedisWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchingRedisWriter.class);
+    static final String FLUSH_LATENCY = "bulk.redis.flush.latency";
+    static final String FLUSH_SIZE = "bulk.redis.flush.size";
+    private static final int MAX_CONCURRENT_FLUSHES = 8;
+
+    private final RedisReactiveCommands<String, String> redisReactiveCommands;
+    private final Sinks.Many<PendingWrite> writes = Sinks.many().unicast().onBackpressureBuffer();
+    private final Set<PendingWrite> pending = ConcurrentHashMap.newKeySet();
+    private final Timer flushLatency;
+    private final DistributionSummary flushSize;
+    private final Disposable subscription;
+
+    public BatchingRedisWriter(RedisReactiveCommands<String, String> redisReactiveCommands,
+                               @Nullable MeterRegistry meterRegistry,
+                               @Value("${bulk.processor.redis.flush.max.entries:256}") int maxEntries,
+                               @Value("${bulk.processor.redis.flush.window:5ms}") Duration window) {
+        this.redisReactiveCommands = redisReactiveCommands;
+        MeterRegistry registry = meterRegistry != null ? meterRegistry : Metrics.globalRegistry;
+        this.flushLatency = Timer.builder(FLUSH_LATENCY)
+                .description("Time from sending a coalesced HSET to its reply")
+                .register(registry);
+        this.flushSize = DistributionSummary.builder(FLUSH_SIZE)
+                .description("Hash fields written per flush")
+                .baseUnit("entries")
+                .register(registry);
+        this.subscription = writes.asFlux()
+                .bufferTimeout(maxEntries, window, true)
+                .flatMap(this::flush, MAX_CONCURRENT_FLUSHES)
+                .subscribe(null, this::failPending);
+    }
+
+    /**
+     * Queues {@code field = value} for the hash {@code key}.
+     */
+    public Mono<Boolean> hset(String key, String field, String value) {
+        return Mono.defer(() -> {
+            PendingWrite write = new PendingWrite(key, field, value, Sinks.one());
+            pending.add(write);
+            try {
+                writes.emitNext(write, Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+            } catch (Sinks.EmissionException e) {
+                fail(write, e);
+            }
+            return write.result().asMono();
+        });
+    }
+
+    @PreDestroy
+    void close() {
+        writes.tryEmitComplete();
+        subscription.dispose();
+    }
+
+    private Mono<Void> flush(List<PendingWrite> batch) {
+        Map<String, Map<String, String>> byKey = new LinkedHashMap<>();
+        batch.forEach(write -> byKey.computeIfAbsent(write.key(), key -> new LinkedHashMap<>()).put(write.field(), write.value()));
+        flushSize.record(batch.size());
+        long start = System.nanoTime();
+        return Flux.fromIterable(byKey.entrySet())
+                .flatMap(hash -> redisReactiveCommands.hset(hash.getKey(), hash.getValue()))
+                .then()
+                .doOnSuccess(ignore -> {
+                    flushLatency.record(Duration.ofNanos(System.nanoTime() - start));
+                    batch.forEach(write -> {
+                        pending.remove(write);
+                        write.result().tryEmitValue(Boolean.TRUE);
+                    });
+                })
+                .onErrorResume(ex -> {
+                    logger.error("Error in flushing {} redis writes", batch.size(), ex);
+                    batch.forEach(write -> fail(write, ex));
+                    return Mono.empty();
+                });
+    }
+
+    private void failPending(Throwable ex) {
+        logger.error("Redis write pipeline stopped, failing {} pending writes", pending.size(), ex);
+        pending.forEach(write -> fail(write, ex));
+    }
+
+    private void fail(PendingWrite write, Throwable ex) {
+        pending.remove(write);
+        write.result().tryEmitError(ex);
+    }
+
+    private record PendingWrite(String key, String field, String value, Sinks.One<Boolean> result) {
+    }
+}
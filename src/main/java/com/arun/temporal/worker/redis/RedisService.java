@@ -1,10 +1,51 @@
 package com.arun.temporal.worker.redis;
 
-import io.lettuce.core.KeyValue;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+/**
+ * Batch statuses are kept per chunk: the hash {@code queryId:chunk} maps batch numbers to the status written by the
+ * worker, and the consumer appends the {@code batchId} of every completed batch to the list
+ * {@code queryId:chunk:completed}, so completions are read incrementally by list index. Once all batches of the chunk
+ * were submitted the worker appends their count to the same list, so the reader learns it in order with the
+ * completions.
+ * <p>
+ * Consumers that predate the completed list mark completions with {@code HSET queryId batchId COMPLETED} instead.
+ * While {@code bulk.processor.completion.legacy.hash} is switched on, that hash is read and watched as well, so chunks
+ * complete with either consumer during a migration.
+ */
 public interface RedisService {
-    Mono<Boolean> saveBatch(String queryId, String batchId, String status);
-    Flux<KeyValue<String, String>> getCompletedBatch(String queryId);
+    Mono<Boolean> saveBatch(String queryId, int chunkId, int batchNumber, String status);
+
+    /**
+     * Appends the chunk's batch count to its completed list, as a {@code Util.getBatchTotalEntry} entry.
+     */
+    Mono<Boolean> saveBatchTotal(String queryId, int chunkId, int totalBatches);
+
+    /**
+     * (Re)starts the expiry of the status keys of a chunk; called after its batches were saved and after they were
+     * aggregated.
+     */
+    Mono<Boolean> expireBatches(String queryId, int chunkId);
+
+    /**
+     * Entries appended to the chunk's completed list from index {@code cursor} on: batch ids, and the batch total
+     * once it was saved.
+     */
+    Flux<String> getCompletedBatches(String queryId, int chunkId, long cursor);
+
+    /**
+     * Batch ids of the chunk marked {@code COMPLETED} in the query's hash by a consumer that predates the completed
+     * list; every such batch on each call, so callers skip the ones they have seen. Empty while
+     * {@code bulk.processor.completion.legacy.hash} is off.
+     */
+    Flux<String> getLegacyCompletedBatches(String queryId, int chunkId);
+
+    /**
+     * Emits the keyspace event name (for example {@code rpush}) every time a batch of the chunk completes, for as long
+     * as it is subscribed. Requires keyspace notifications for lists ({@code notify-keyspace-events Kl}) on the
+     * server; without them the flux stays silent, so callers keep polling as a fallback. While the legacy hash is read
+     * it also emits the hash's events ({@code Kh}), which wake every chunk of the query.
+     */
+    Flux<String> subscribeBatchUpdates(String queryId, int chunkId);
 }
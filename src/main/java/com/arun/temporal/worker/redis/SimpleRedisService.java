@@ -2,29 +2,114 @@ package com.arun.temporal.worker.redis;
 
 import io.lettuce.core.KeyValue;
 import io.lettuce.core.api.reactive.RedisReactiveCommands;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.lettuce.core.pubsub.api.reactive.PatternMessage;
+import io.micronaut.context.annotation.Value;
 import jakarta.inject.Singleton;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.arun.temporal.worker.util.Util.getBatchTotalEntry;
+import static com.arun.temporal.worker.util.Util.getChunkCompletedKey;
+import static com.arun.temporal.worker.util.Util.getChunkStatusKey;
+
 @Singleton
 public class SimpleRedisService implements RedisService {
 
     private final RedisReactiveCommands<String, String> redisReactiveCommands;
+    private final BatchingRedisWriter batchingRedisWriter;
+    private final StatefulRedisPubSubConnection<String, String> pubSubConnection;
+    private final Map<String, Integer> patternSubscribers = new HashMap<>();
     private static final long TTL_SECONDS = 43200;
+    private static final String KEYSPACE_PATTERN = "__keyspace@*__:";
+    private static final String LEGACY_COMPLETED_STATUS = "COMPLETED";
+
+    /**
+     * Whether completions are also read from the query hash older consumers write. Off by default, since every poll
+     * then reads the whole hash; switch it on only while such consumers are still deployed.
+     */
+    @Value("${bulk.processor.completion.legacy.hash:false}")
+    boolean legacyCompletionHash;
 
-    public SimpleRedisService(RedisReactiveCommands<String, String> redisReactiveCommands) {
+    public SimpleRedisService(RedisReactiveCommands<String, String> redisReactiveCommands, BatchingRedisWriter batchingRedisWriter,
+                              StatefulRedisPubSubConnection<String, String> pubSubConnection) {
         this.redisReactiveCommands = redisReactiveCommands;
+        this.batchingRedisWriter = batchingRedisWriter;
+        this.pubSubConnection = pubSubConnection;
+    }
+
+    @Override
+    public Mono<Boolean> saveBatch(String queryId, int chunkId, int batchNumber, String status) {
+        return batchingRedisWriter.hset(getChunkStatusKey(queryId, chunkId), String.valueOf(batchNumber), status);
     }
 
     @Override
-    public Mono<Boolean> saveBatch(String queryId, String batchId, String status) {
-        return redisReactiveCommands.hset(queryId, batchId, status).then(redisReactiveCommands.expire(queryId, TTL_SECONDS));
+    public Mono<Boolean> saveBatchTotal(String queryId, int chunkId, int totalBatches) {
+        return redisReactiveCommands.rpush(getChunkCompletedKey(queryId, chunkId), getBatchTotalEntry(totalBatches))
+                .thenReturn(true);
     }
 
     @Override
-    public Flux<KeyValue<String, String>> getCompletedBatch(String queryId) {
-        return redisReactiveCommands.hgetall(queryId);
+    public Mono<Boolean> expireBatches(String queryId, int chunkId) {
+        Mono<Boolean> expired = redisReactiveCommands.expire(getChunkStatusKey(queryId, chunkId), TTL_SECONDS)
+                .then(redisReactiveCommands.expire(getChunkCompletedKey(queryId, chunkId), TTL_SECONDS));
+        return legacyCompletionHash ? expired.then(redisReactiveCommands.expire(queryId, TTL_SECONDS)) : expired;
     }
 
+    @Override
+    public Flux<String> getCompletedBatches(String queryId, int chunkId, long cursor) {
+        return redisReactiveCommands.lrange(getChunkCompletedKey(queryId, chunkId), cursor, -1);
+    }
+
+    @Override
+    public Flux<String> getLegacyCompletedBatches(String queryId, int chunkId) {
+        if (!legacyCompletionHash) {
+            return Flux.empty();
+        }
+        String chunkPrefix = queryId + "-" + chunkId + "_";
+        return redisReactiveCommands.hgetall(queryId)
+                .filter(field -> LEGACY_COMPLETED_STATUS.equals(field.getValue()) && field.getKey().startsWith(chunkPrefix))
+                .map(KeyValue::getKey);
+    }
 
+    @Override
+    public Flux<String> subscribeBatchUpdates(String queryId, int chunkId) {
+        Flux<String> updates = subscribeKey(getChunkCompletedKey(queryId, chunkId));
+        return legacyCompletionHash ? updates.mergeWith(subscribeKey(queryId)) : updates;
+    }
+
+    private Flux<String> subscribeKey(String key) {
+        String pattern = KEYSPACE_PATTERN + escapeGlob(key);
+        return Flux.using(
+                () -> subscribePattern(pattern),
+                subscribed -> pubSubConnection.reactive().observePatterns()
+                        .filter(message -> subscribed.equals(message.getPattern()))
+                        .map(PatternMessage::getMessage),
+                this::unsubscribePattern);
+    }
+
+    /**
+     * Pattern subscriptions are shared by every subscriber of the key on this connection, so they are reference
+     * counted. The commands are issued in order under the lock, so an unsubscribe can never overtake a later subscribe.
+     */
+    private synchronized String subscribePattern(String pattern) {
+        if (patternSubscribers.merge(pattern, 1, Integer::sum) == 1) {
+            pubSubConnection.async().psubscribe(pattern);
+        }
+        return pattern;
+    }
+
+    private static String escapeGlob(String key) {
+        return key.replaceAll("([*?\\[\\]\\\\])", "\\\\$1");
+    }
+
+    private synchronized void unsubscribePattern(String pattern) {
+        if (patternSubscribers.merge(pattern, -1, Integer::sum) == 0) {
+            patternSubscribers.remove(pattern);
+            pubSubConnection.async().punsubscribe(pattern);
+        }
+    }
 }
@@ -0,0 +1,165 @@
+package com.arun.temporal.worker.s3;
+
+import com.arun.temporal.worker.exception.BulkProcessorException;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cuts the CSV output of a chunk into upload parts of exactly {@link PartBufferPool#partSize()} bytes, written into
+ * pooled buffers. Every buffer that fills up becomes a numbered part that {@link #takeFilledParts()} hands out;
+ * {@link #finish()} hands out the last one. Parts own their buffers until they are given back to the pool.
+ * <p>
+ * With a {@code minPartSize} the last filled buffer is held back until the next one fills up, and a tail smaller than
+ * {@code minPartSize} is sent together with it as one part, so that none of the chunk's parts is below the S3 minimum
+ * when they are not the last parts of the upload. Part numbers past {@code lastPartNumber} are refused.
+ * <p>
+ * A chunk that fails or is cancelled calls {@link #abort()} to give back the buffers no part has taken yet.
+ * <p>
+ * Not thread-safe; writers of a chunk hold its buffer lock.
+ */
+public final class ChunkPartWriter extends OutputStream {
+
+    public record Part(int partNumber, List<ByteBuffer> data) {
+
+        public long size() {
+            return data.stream().mapToLong(ByteBuffer::remaining).sum();
+        }
+    }
+
+    private final PartBufferPool pool;
+    private final AtomicInteger partNo;
+    private final int lastPartNumber;
+    private final int minPartSize;
+    private final List<Part> filled = new ArrayList<>();
+    private ByteBuffer held;
+    private ByteBuffer current;
+    private long bytesWritten;
+    private boolean aborted;
+
+    public ChunkPartWriter(PartBufferPool pool, AtomicInteger partNo) {
+        this(pool, partNo, Integer.MAX_VALUE, 0);
+    }
+
+    public ChunkPartWriter(PartBufferPool pool, AtomicInteger partNo, int lastPartNumber, int minPartSize) {
+        this.pool = pool;
+        this.partNo = partNo;
+        this.lastPartNumber = lastPartNumber;
+        this.minPartSize = minPartSize;
+    }
+
+    @Override
+    public void write(int b) {
+        currentBuffer().put((byte) b);
+        bytesWritten++;
+        cutIfFull();
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        while (offset < end) {
+            ByteBuffer buffer = currentBuffer();
+            int count = Math.min(buffer.remaining(), end - offset);
+            buffer.put(bytes, offset, count);
+            offset += count;
+            bytesWritten += count;
+            cutIfFull();
+        }
+    }
+
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Parts filled since the last call, flipped for reading.
+     */
+    public List<Part> takeFilledParts() {
+        if (filled.isEmpty()) {
+            return List.of();
+        }
+        List<Part> parts = List.copyOf(filled);
+        filled.clear();
+        return parts;
+    }
+
+    /**
+     * The remaining data as the last part or parts, empty when nothing is left.
+     */
+    public List<Part> finish() {
+        ByteBuffer tail = current;
+        current = null;
+        if (tail != null && tail.position() == 0) {
+            pool.release(tail);
+            tail = null;
+        }
+        List<Part> last = new ArrayList<>(2);
+        if (held != null && tail != null && tail.position() < minPartSize) {
+            last.add(new Part(nextPartNumber(), List.of(held, tail.flip())));
+        } else {
+            if (held != null) {
+                last.add(new Part(nextPartNumber(), List.of(held)));
+            }
+            if (tail != null) {
+                last.add(new Part(nextPartNumber(), List.of(tail.flip())));
+            }
+        }
+        held = null;
+        return last;
+    }
+
+    /**
+     * Returns the buffers not handed out as parts to the pool and refuses further writes. Parts already handed out
+     * stay with their uploads.
+     */
+    public void abort() {
+        aborted = true;
+        if (current != null) {
+            pool.release(current);
+            current = null;
+        }
+        if (held != null) {
+            pool.release(held);
+            held = null;
+        }
+        filled.forEach(part -> part.data().forEach(pool::release));
+        filled.clear();
+    }
+
+    private ByteBuffer currentBuffer() {
+        if (aborted) {
+            throw new BulkProcessorException("Chunk output was aborted");
+        }
+        if (current == null) {
+            current = pool.acquire();
+        }
+        return current;
+    }
+
+    private void cutIfFull() {
+        if (current.hasRemaining()) {
+            return;
+        }
+        if (minPartSize > 0) {
+            if (held != null) {
+                filled.add(new Part(nextPartNumber(), List.of(held)));
+            }
+            held = current.flip();
+        } else {
+            filled.add(new Part(nextPartNumber(), List.of(current.flip())));
+        }
+        current = null;
+    }
+
+    private int nextPartNumber() {
+        int partNumber = partNo.getAndIncrement();
+        if (partNumber > lastPartNumber) {
+            throw new BulkProcessorException("Chunk output needs more than the parts up to " + lastPartNumber + " reserved for it");
+        }
+        return partNumber;
+    }
+}
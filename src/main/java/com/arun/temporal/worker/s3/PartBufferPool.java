@@ -0,0 +1,80 @@
+package com.arun.temporal.worker.s3;
+
+import com.arun.temporal.worker.throttle.MemoryBudget;
+import io.micronaut.context.annotation.Value;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recycles the fixed-size buffers multipart upload parts are assembled in. A buffer is taken when a chunk starts a
+ * new part and given back once the upload of that part has completed; up to {@code maxIdle} released buffers are kept
+ * for reuse, the rest are left to the collector. Buffers are direct when {@code direct} is set, which keeps the part
+ * data off the heap and lets the HTTP client write it without an intermediate copy. Buffers handed out are charged to
+ * the {@link MemoryBudget} until they are released.
+ */
+@Singleton
+public class PartBufferPool {
+
+    private final int partSize;
+    private final boolean direct;
+    private final int maxIdle;
+    private final MemoryBudget memoryBudget;
+    private final Queue<ByteBuffer> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    public PartBufferPool(int partSize, boolean direct, int maxIdle) {
+        this(partSize, direct, maxIdle, MemoryBudget.unbounded());
+    }
+
+    @Inject
+    public PartBufferPool(@Value("${bulk.processor.upload.part.size:10485760}") int partSize,
+                          @Value("${bulk.processor.upload.part.direct:false}") boolean direct,
+                          @Value("${bulk.processor.upload.part.max.idle:8}") int maxIdle,
+                          MemoryBudget memoryBudget) {
+        if (partSize < 1 || maxIdle < 0) {
+            throw new IllegalArgumentException("partSize must be positive and maxIdle not negative");
+        }
+        this.partSize = partSize;
+        this.direct = direct;
+        this.maxIdle = maxIdle;
+        this.memoryBudget = memoryBudget;
+    }
+
+    public int partSize() {
+        return partSize;
+    }
+
+    /**
+     * An empty buffer of {@link #partSize()} bytes.
+     */
+    public ByteBuffer acquire() {
+        memoryBudget.charge(partSize);
+        ByteBuffer buffer = idle.poll();
+        if (buffer != null) {
+            idleCount.decrementAndGet();
+            return buffer;
+        }
+        return direct ? ByteBuffer.allocateDirect(partSize) : ByteBuffer.allocate(partSize);
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != partSize) {
+            return;
+        }
+        memoryBudget.release(partSize);
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            return;
+        }
+        idle.offer(buffer.clear());
+    }
+
+    int idleBuffers() {
+        return idleCount.get();
+    }
+}
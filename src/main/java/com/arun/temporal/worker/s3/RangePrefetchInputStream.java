@@ -0,0 +1,162 @@
+package com.arun.temporal.worker.s3;
+
+import com.arun.temporal.worker.throttle.MemoryBudget;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Reads the byte range {@code [start, end]} of an object as consecutive sub-ranges of {@code partSize} bytes, holding
+ * up to {@code window} of them at once: the part being read counts, so {@code window - 1} are fetched ahead of it.
+ * Parts are consumed strictly in order; each consumed part frees its slot for the next one, so at most
+ * {@code window * partSize} bytes are buffered per stream.
+ * <p>
+ * Every buffered part, including the one being read, holds its size from the {@link MemoryBudget}. Read-ahead only
+ * takes what is free; the stream waits for the budget only when it has nothing left to read.
+ */
+public class RangePrefetchInputStream extends InputStream {
+
+    @FunctionalInterface
+    public interface RangeFetcher {
+        CompletableFuture<byte[]> fetch(long start, long end);
+    }
+
+    private final RangeFetcher fetcher;
+    private final long end;
+    private final long partSize;
+    private final int window;
+    private final MemoryBudget memoryBudget;
+    private final Deque<PendingPart> inFlight = new ArrayDeque<>();
+    private long nextPartStart;
+    private byte[] current = new byte[0];
+    private long currentReserved;
+    private int position;
+    private boolean closed;
+
+    private record PendingPart(CompletableFuture<byte[]> data, long size) {
+    }
+
+    public RangePrefetchInputStream(RangeFetcher fetcher, long start, long end, long partSize, int window) {
+        this(fetcher, start, end, partSize, window, MemoryBudget.unbounded());
+    }
+
+    public RangePrefetchInputStream(RangeFetcher fetcher, long start, long end, long partSize, int window, MemoryBudget memoryBudget) {
+        if (partSize < 1 || window < 1) {
+            throw new IllegalArgumentException("partSize and window must be positive");
+        }
+        this.fetcher = fetcher;
+        this.end = end;
+        this.partSize = partSize;
+        this.window = window;
+        this.memoryBudget = memoryBudget;
+        this.nextPartStart = start;
+        fillWindow();
+    }
+
+    /**
+     * Completes once the first part has arrived, or exceptionally with the error of that request.
+     */
+    public CompletableFuture<RangePrefetchInputStream> firstPart() {
+        PendingPart head = inFlight.peekFirst();
+        return head == null ? CompletableFuture.completedFuture(this) : head.data().thenApply(ignore -> this);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            long reserved = currentReserved;
+            for (PendingPart part : inFlight) {
+                part.data().cancel(true);
+                reserved += part.size();
+            }
+            inFlight.clear();
+            current = new byte[0];
+            currentReserved = 0;
+            position = 0;
+            memoryBudget.release(reserved);
+        }
+    }
+
+    private boolean ensureData() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (position >= current.length) {
+            memoryBudget.release(currentReserved);
+            current = new byte[0];
+            currentReserved = 0;
+            position = 0;
+            if (inFlight.isEmpty()) {
+                fillWindow();
+            }
+            PendingPart next = inFlight.pollFirst();
+            if (next == null) {
+                return false;
+            }
+            currentReserved = next.size();
+            current = await(next.data());
+            fillWindow();
+        }
+        return true;
+    }
+
+    private void fillWindow() {
+        while (inFlight.size() + (currentReserved > 0 ? 1 : 0) < window && nextPartStart <= end) {
+            long partEnd = Math.min(nextPartStart + partSize - 1, end);
+            long size = partEnd - nextPartStart + 1;
+            if (inFlight.isEmpty() && position >= current.length) {
+                memoryBudget.acquire(size);
+            } else if (!memoryBudget.tryAcquire(size)) {
+                return;
+            }
+            inFlight.addLast(new PendingPart(fetcher.fetch(nextPartStart, partEnd), size));
+            nextPartStart = partEnd + 1;
+        }
+    }
+
+    private byte[] await(CompletableFuture<byte[]> part) throws IOException {
+        try {
+            return part.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for range part", e);
+        } catch (ExecutionException | CompletionException | CancellationException e) {
+            close();
+            throw new IOException("Error in fetching range part", e.getCause() != null ? e.getCause() : e);
+        }
+    }
+}
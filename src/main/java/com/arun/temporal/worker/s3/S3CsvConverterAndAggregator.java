@@ -2,167 +2,361 @@ package com.arun.temporal.worker.s3;
 
 import com.arun.temporal.worker.redis.RedisService;
 import com.arun.temporal.worker.util.MDCLogging;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.arun.temporal.worker.configuration.AwsConfiguration;
 import com.arun.temporal.worker.constant.Constants;
 import com.arun.temporal.worker.exception.BulkProcessorException;
 import com.arun.temporal.worker.model.BulkApiRequest;
-import com.arun.temporal.worker.model.BulkResponse;
-import com.arun.temporal.worker.model.ReportData;
 import com.arun.temporal.worker.model.activity.ChunkDetail;
 import com.arun.temporal.worker.model.activity.ChunkProcessingResult;
+import com.arun.temporal.worker.model.activity.PartDetail;
+import com.arun.temporal.worker.model.activity.ProcessChunkRequest;
 import com.arun.temporal.worker.service.S3Service;
-import com.arun.temporal.worker.util.AddressReader;
+import com.arun.temporal.worker.throttle.MemoryBudget;
+import com.arun.temporal.worker.throttle.SubmitRateController;
+import com.arun.temporal.worker.util.BulkResponseCsvWriter;
 import com.arun.temporal.worker.util.S3Util;
-import io.lettuce.core.KeyValue;
+import io.micronaut.context.annotation.Value;
 import io.temporal.activity.Activity;
 import io.temporal.activity.ActivityExecutionContext;
+import jakarta.annotation.PreDestroy;
 import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
 import software.amazon.awssdk.core.ResponseBytes;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.arun.temporal.worker.constant.Constants.*;
+import static com.arun.temporal.worker.util.Util.getBatchNumber;
+import static com.arun.temporal.worker.util.Util.getBatchTotal;
 
 @Singleton
 public class S3CsvConverterAndAggregator {
     private static final Logger logger = LoggerFactory.getLogger(S3CsvConverterAndAggregator.class);
+    private static final long INITIAL_RESULT_SIZE_ESTIMATE = 1024 * 1024;
+    private static final Duration MEMORY_WAIT = Duration.ofSeconds(10);
     private final String sourceBucket;
     private final String destinationBucket;
     private final S3Service s3Service;
     Map<String, String> callerMdc;
-    private static final ExecutorService executorService = Executors.newFixedThreadPool(10);
-    public static final ReentrantLock lock = new ReentrantLock();
+    private final ForkJoinPool conversionPool;
+    private final ScheduledExecutorService completionScheduler;
     private final RedisService redisService;
+    private final SubmitRateController submitRateController;
+    private final PartBufferPool partBufferPool;
+    private final MemoryBudget memoryBudget;
+    private final AtomicLong resultSizeEstimate = new AtomicLong(INITIAL_RESULT_SIZE_ESTIMATE);
 
-    public S3CsvConverterAndAggregator(AwsConfiguration awsConfiguration, S3Service s3Service, RedisService redisService) {
+    @Value("${bulk.processor.completion.poll.interval:20s}")
+    private Duration completionPollInterval = Duration.ofSeconds(20);
+
+    @Value("${bulk.processor.completion.min.poll.interval:1s}")
+    private Duration completionMinPollInterval = Duration.ofSeconds(1);
+
+    @Value("${bulk.processor.upload.copy.part.size:5368709120}")
+    private long copyPartSize = MAX_UPLOAD_PART_SIZE;
+
+    public S3CsvConverterAndAggregator(AwsConfiguration awsConfiguration, S3Service s3Service, RedisService redisService, SubmitRateController submitRateController, PartBufferPool partBufferPool,
+                                       MemoryBudget memoryBudget) {
         this.s3Service = s3Service;
         this.destinationBucket = S3Util.getBucketKey(awsConfiguration.getEnv(), awsConfiguration.getRegion(), BULK_API);
         this.sourceBucket = S3Util.getBucketKey(awsConfiguration.getEnv(), awsConfiguration.getRegion(), BULK_RESULT);
         this.redisService = redisService;
+        this.submitRateController = submitRateController;
+        this.partBufferPool = partBufferPool;
+        this.memoryBudget = memoryBudget;
+        this.conversionPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        this.completionScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chunk-completion");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void close() {
+        conversionPool.shutdown();
+        completionScheduler.shutdownNow();
     }
 
     public ChunkProcessingResult startUploadingProcess(int chunkId, String queryId, int totalBatches, BulkApiRequest request, String uploadId) {
+        return startUploadingProcess(new ProcessChunkRequest(chunkId, uploadId, totalBatches, request), queryId);
+    }
+
+    public ChunkProcessingResult startUploadingProcess(ProcessChunkRequest chunkRequest, String queryId) {
+        return aggregateChunk(Activity.getExecutionContext(), chunkRequest, queryId);
+    }
+
+    /**
+     * Collects the completed batches of one chunk into upload parts: straight into the reserved part range of the
+     * output upload with {@code directUpload}, otherwise into a temporary object that is copied into that range. A
+     * direct chunk's first part is staged as an object, so that a chunk whose output stays below the S3 part minimum
+     * can be merged with the chunks after it when the upload is completed.
+     * Aggregation may start while the chunk is still being submitted: with a total of
+     * {@link com.arun.temporal.worker.constant.Constants#UNKNOWN_TOTAL_BATCHES} it runs until the batch total
+     * appended to the completed list has been reached. Completions older consumers left in the query hash count too;
+     * that hash is read whole on every poll, so the {@link BitSet} of seen batch numbers keeps a batch from being
+     * fetched twice, as it does for ids a consumer appended more than once. Chunks share nothing but the conversion
+     * pool, so concurrent activities only contend for CPU; each chunk's buffer has its own lock.
+     */
+    ChunkProcessingResult aggregateChunk(ActivityExecutionContext ctx, ProcessChunkRequest chunkRequest, String queryId) {
+        int chunkId = chunkRequest.chunkNumber();
+        int totalBatches = chunkRequest.totalBatch();
+        BulkApiRequest request = chunkRequest.bulkApiRequest();
         logger.info("start uploading chunk process  for chunk number {} total Batch in chunk {}", chunkId, totalBatches);
-        List<String> completedBatches = new ArrayList<>();
+        BitSet seenBatches = new BitSet(Math.max(totalBatches, 0) + 1);
+        int completedBatches = 0;
+        long cursor = 0;
         List<CompletableFuture<Boolean>> featureList = new ArrayList<>();
-        ActivityExecutionContext ctx = Activity.getExecutionContext();
-        String finalFileKey = S3Util.getCsvFileOutputObjectKey(S3Util.generateFileNameWithId(request.getFileName(), request.getFileId()), request.getOutputFileId(), request.getWorkspaceId(), request.getEmailId());
-        String jsonOutputFolderPath = String.format("%s%s/%s/%s", "KF_RSLT_", request.getWorkspaceId(), request.getApiType(), queryId);
+        String jsonOutputFolderPath = getJsonOutputFolderPath(request, queryId);
         long lastRunTime = 0L;
-        String tempFileKey = finalFileKey + "temp" + chunkId;
-        String chunkUploadId = s3Service.getUploadId(tempFileKey, destinationBucket).join();
-        ChunkDetail chunkDetail = new ChunkDetail(tempFileKey, chunkUploadId, uploadId, finalFileKey);
-        if (chunkId == 1) {
-            chunkDetail.getDataBuffer().append(Constants.getOutputCsvHeaders(request.getDelimiter()));
-        }
-        while (completedBatches.size() < totalBatches) {
-            List<String> newCompletedBatches = redisService.getCompletedBatch(queryId).filter(v -> v.getValue().equals("COMPLETED")).map(KeyValue::getKey).filter(batchId -> Integer.parseInt(batchId.substring(queryId.length()+1).split("_")[0]) == chunkId &&  !completedBatches.contains(batchId)).collectList().block();
-            lastRunTime = sendHeartbeatIfNeeded(ctx, lastRunTime);
-            if (newCompletedBatches == null || newCompletedBatches.isEmpty()) {
-                waitForNextIteration();
-            } else {
-                completedBatches.addAll(newCompletedBatches);
-                newCompletedBatches.forEach(batchId -> featureList.add(getS3ObjectConvertToLines(batchId, chunkDetail, jsonOutputFolderPath, request)));
+        ChunkDetail chunkDetail = openChunk(chunkRequest);
+        try {
+            Semaphore batchUpdates = new Semaphore(0);
+            Disposable updateSubscription = redisService.subscribeBatchUpdates(queryId, chunkId)
+                    .subscribe(event -> batchUpdates.release(),
+                            ex -> logger.warn("Batch update notifications unavailable for chunk {} of query {}, polling every {}", chunkId, queryId, completionPollInterval, ex));
+            try {
+                while (totalBatches == UNKNOWN_TOTAL_BATCHES || completedBatches < totalBatches) {
+                    long pollStart = System.nanoTime();
+                    List<String> appendedBatches = redisService.getCompletedBatches(queryId, chunkId, cursor).collectList().block();
+                    List<String> legacyBatches = redisService.getLegacyCompletedBatches(queryId, chunkId).collectList().block();
+                    lastRunTime = sendHeartbeatIfNeeded(ctx, lastRunTime);
+                    List<String> readBatches = new ArrayList<>();
+                    if (appendedBatches != null) {
+                        cursor += appendedBatches.size();
+                        readBatches.addAll(appendedBatches);
+                    }
+                    if (legacyBatches != null) {
+                        readBatches.addAll(legacyBatches);
+                    }
+                    int newlyCompleted = 0;
+                    for (String batchId : readBatches) {
+                        int batchTotal = getBatchTotal(batchId);
+                        if (batchTotal >= 0) {
+                            if (totalBatches == UNKNOWN_TOTAL_BATCHES) {
+                                totalBatches = batchTotal;
+                                logger.info("chunk {} submitted with {} batches", chunkId, totalBatches);
+                            }
+                            continue;
+                        }
+                        int batchNumber = getBatchNumber(batchId);
+                        if (!seenBatches.get(batchNumber)) {
+                            seenBatches.set(batchNumber);
+                            newlyCompleted++;
+                            long reserved = resultSizeEstimate.get();
+                            while (!memoryBudget.tryAcquire(reserved, MEMORY_WAIT)) {
+                                lastRunTime = sendHeartbeatIfNeeded(ctx, lastRunTime);
+                            }
+                            featureList.add(getS3ObjectConvertToLines(batchId, chunkDetail, jsonOutputFolderPath, request, reserved));
+                        }
+                    }
+                    completedBatches += newlyCompleted;
+                    submitRateController.recordCompletedBatches(newlyCompleted);
+                    if (newlyCompleted == 0 && (appendedBatches == null || appendedBatches.isEmpty())) {
+                        waitForNextIteration(batchUpdates, pollStart);
+                    }
+                }
+            } finally {
+                updateSubscription.dispose();
             }
+
+            while (true) {
+                try {
+                    CompletableFuture.allOf(featureList.toArray(CompletableFuture[]::new)).get(10L, TimeUnit.SECONDS);
+                    break;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.warn("get interrupted exception", e);
+                } catch (TimeoutException var14) {
+                    lastRunTime = sendHeartbeatIfNeeded(ctx, lastRunTime);
+                } catch (ExecutionException e) {
+                    throw new BulkProcessorException("Exception when aggregate the csv lines", e);
+                }
+            }
+
+            List<PartDetail> parts = processChunkUpload(featureList, chunkDetail, chunkRequest).join();
+            redisService.expireBatches(queryId, chunkId).block();
+            return chunkResult(chunkRequest, chunkDetail, completedBatches, parts);
+        } finally {
+            chunkDetail.close();
         }
+    }
 
-        while (true) {
-            try {
-                CompletableFuture.allOf(featureList.toArray(CompletableFuture[]::new)).get(10L, TimeUnit.SECONDS);
-                break;
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                logger.warn("get interrupted exception", e);
-            } catch (TimeoutException var14) {
-                lastRunTime = sendHeartbeatIfNeeded(ctx, lastRunTime);
-            } catch (ExecutionException e) {
-                throw new BulkProcessorException("Exception when aggregate the csv lines", e);
+    /**
+     * Aggregates one chunk like {@link #aggregateChunk} without holding a thread while its batches are outstanding.
+     * Reads of the completed list run on a shared scheduler thread when a keyspace notification arrives, or after
+     * {@code completionPollInterval} without one, and batches the memory budget cannot admit yet stay in the list for
+     * the next read. The returned future completes once the chunk's parts are uploaded; cancelling it stops the
+     * aggregation.
+     */
+    public CompletableFuture<ChunkProcessingResult> aggregateChunkAsync(ProcessChunkRequest chunkRequest, String queryId) {
+        logger.info("start async uploading chunk process for chunk number {} total Batch in chunk {}", chunkRequest.chunkNumber(), chunkRequest.totalBatch());
+        ChunkAggregation aggregation = new ChunkAggregation(chunkRequest, queryId, openChunk(chunkRequest));
+        completionScheduler.execute(aggregation::start);
+        return aggregation.result;
+    }
+
+    private ChunkDetail openChunk(ProcessChunkRequest chunkRequest) {
+        BulkApiRequest request = chunkRequest.bulkApiRequest();
+        String uploadId = chunkRequest.uploadId();
+        String finalFileKey = S3Util.getCsvFileOutputObjectKey(S3Util.generateFileNameWithId(request.getFileName(), request.getFileId()), request.getOutputFileId(), request.getWorkspaceId(), request.getEmailId());
+        String outputKey = chunkRequest.uploadKey() != null ? chunkRequest.uploadKey() : finalFileKey;
+        ChunkDetail chunkDetail;
+        if (chunkRequest.directUpload()) {
+            if (partBufferPool.partSize() < MIN_UPLOAD_PART_SIZE) {
+                throw new BulkProcessorException("Direct upload needs a part size of at least " + MIN_UPLOAD_PART_SIZE + " bytes");
             }
+            chunkDetail = new ChunkDetail(outputKey, uploadId, uploadId, outputKey, partBufferPool,
+                    chunkRequest.firstPartNumber(), chunkRequest.firstPartNumber() + chunkRequest.maxParts() - 1, MIN_UPLOAD_PART_SIZE);
+        } else {
+            String tempFileKey = finalFileKey + "temp" + chunkRequest.chunkNumber();
+            String chunkUploadId = s3Service.getUploadId(tempFileKey, destinationBucket).join();
+            chunkDetail = new ChunkDetail(tempFileKey, chunkUploadId, uploadId, outputKey, partBufferPool);
+        }
+        if (chunkRequest.chunkNumber() == 1) {
+            byte[] header = Constants.getOutputCsvHeaders(request.getDelimiter()).getBytes(StandardCharsets.UTF_8);
+            chunkDetail.getPartWriter().write(header, 0, header.length);
         }
+        return chunkDetail;
+    }
+
+    private static String getJsonOutputFolderPath(BulkApiRequest request, String queryId) {
+        return String.format("%s%s/%s/%s", "KF_RSLT_", request.getWorkspaceId(), request.getApiType(), queryId);
+    }
 
-        String tagId = processChunkUpload(featureList, chunkDetail, chunkId);
-        return new ChunkProcessingResult(chunkId, chunkDetail.getTotalRecordCount().get(), completedBatches.size(), chunkDetail.getReportData(), tagId);
+    private static ChunkProcessingResult chunkResult(ProcessChunkRequest chunkRequest, ChunkDetail chunkDetail, int completedBatches, List<PartDetail> parts) {
+        String tagId = chunkRequest.directUpload() ? null : parts.getFirst().eTag();
+        return new ChunkProcessingResult(chunkRequest.chunkNumber(), chunkDetail.getTotalRecordCount().get(), completedBatches, chunkDetail.getReportData(), tagId, parts);
     }
 
-    private String processChunkUpload(List<CompletableFuture<Boolean>> featureList, ChunkDetail chunkDetail, int chunkId) {
-        return CompletableFuture.allOf(featureList.toArray(CompletableFuture[]::new))
-                .thenCompose(ignore -> (!chunkDetail.getDataBuffer().isEmpty()) ? s3Service.uploadFilePart(destinationBucket, chunkDetail.getChunkUploadKey(), chunkDetail.getChunkUploadId(), chunkDetail.getPartNo().getAndIncrement(), chunkDetail.getDataBuffer(), chunkDetail.getParts()) : CompletableFuture.completedFuture(false))
+    private CompletableFuture<List<PartDetail>> processChunkUpload(List<CompletableFuture<Boolean>> featureList, ChunkDetail chunkDetail, ProcessChunkRequest chunkRequest) {
+        CompletableFuture<Void> uploaded = CompletableFuture.allOf(featureList.toArray(CompletableFuture[]::new))
+                .thenCompose(ignore -> CompletableFuture.allOf(chunkDetail.getPartWriter().finish().stream()
+                        .map(lastPart -> uploadPart(lastPart, destinationBucket, chunkDetail))
+                        .toArray(CompletableFuture[]::new)));
+        if (chunkRequest.directUpload()) {
+            return uploaded.thenApply(ignore -> Stream.concat(
+                            chunkDetail.getParts().stream().map(part -> new PartDetail(part.partNumber(), part.eTag())),
+                            chunkDetail.getStagedParts().stream())
+                    .sorted(Comparator.comparingInt(PartDetail::partNumber))
+                    .toList());
+        }
+        return uploaded
                 .thenCompose(ignore -> s3Service.completeMultiPartUpload(destinationBucket, chunkDetail.getChunkUploadKey(), chunkDetail.getChunkUploadId(), chunkDetail.getParts()))
-                .thenCompose(ignore -> s3Service.uploadChunkFilePart(destinationBucket, chunkDetail.getFinalUploadKey(), chunkDetail.getFinalUploadId(), chunkId, chunkDetail.getChunkUploadKey())
-                        .thenCompose(chunkTagId -> s3Service.deleteChunkData(destinationBucket, chunkDetail.getChunkUploadKey()).thenApply(ignore2 -> chunkTagId)))
-                .join();
+                .thenCompose(ignore -> s3Service.uploadPartCopies(destinationBucket, chunkDetail.getFinalUploadKey(), chunkDetail.getFinalUploadId(),
+                                chunkRequest.firstPartNumber(), chunkRequest.maxParts(), chunkDetail.getChunkUploadKey(), chunkDetail.getPartWriter().bytesWritten(), copyPartSize)
+                        .thenCompose(copied -> s3Service.deleteChunkData(destinationBucket, chunkDetail.getChunkUploadKey()).thenApply(ignore2 -> copied)))
+                .thenApply(copied -> copied.stream().map(part -> new PartDetail(part.partNumber(), part.eTag())).toList());
     }
 
-    private CompletableFuture<Boolean> getS3ObjectConvertToLines(String batchId, ChunkDetail chunkDetail, String jsonOutputFolderPath, BulkApiRequest request) {
+    /**
+     * Fetches and converts one batch result. {@code reserved} bytes of the memory budget were taken for it based on
+     * the size of the last result; the reservation is corrected to the actual size on arrival and held until the
+     * batch's rows are in upload parts.
+     */
+    private CompletableFuture<Boolean> getS3ObjectConvertToLines(String batchId, ChunkDetail chunkDetail, String jsonOutputFolderPath, BulkApiRequest request, long reserved) {
         String finalKey = S3Util.generateSFFileKey(jsonOutputFolderPath, batchId);
+        AtomicLong held = new AtomicLong(reserved);
         return s3Service.getOutputStream(sourceBucket, finalKey)
+                .thenApply(responseBytes -> {
+                    long size = responseBytes.asByteArrayUnsafe().length;
+                    if (size > reserved) {
+                        memoryBudget.charge(size - reserved);
+                    } else {
+                        memoryBudget.release(reserved - size);
+                    }
+                    held.set(size);
+                    resultSizeEstimate.set(Math.max(1, size));
+                    return responseBytes;
+                })
                 .thenApplyAsync(responseBytes -> {
                     if (responseBytes.response().contentLength() > 0L) {
-                        String csvData = generateCsvRowsString(generateBulkResponseObject(responseBytes), chunkDetail.getReportData(), chunkDetail.getTotalRecordCount(), batchId, request);
-                        return fillDataBufferAndUpload(csvData, destinationBucket, chunkDetail);
+                        return generateCsvRows(responseBytes, chunkDetail, batchId, request);
                     } else {
                         MDCLogging.setMDCContext(callerMdc);
                         logger.error("Issue for batchId {} with response bytes {}", batchId, responseBytes.asUtf8String());
-                        return CompletableFuture.completedFuture(false);
+                        return null;
                     }
-                }, executorService).join();
+                }, conversionPool)
+                .thenCompose(csvRows -> csvRows == null ? CompletableFuture.completedFuture(false) : fillDataBufferAndUpload(csvRows, destinationBucket, chunkDetail))
+                .whenComplete((uploaded, throwable) -> memoryBudget.release(held.get()));
     }
 
-    private String generateCsvRowsString(BulkResponse bulkResponse, ReportData reportData, AtomicInteger totalRecordCount, String currentBatchId, BulkApiRequest request) {
-        if (bulkResponse.getResponses() != null && !bulkResponse.getResponses().isEmpty()) {
-            totalRecordCount.addAndGet(bulkResponse.getResponses().size());
-            return bulkResponse.getResponses().stream().map(response -> AddressReader.getRowValueForOutputCsv(response, request.getDelimiter(), reportData)).collect(Collectors.joining("\n"));
-        } else {
+    /**
+     * Streams the batch result into CSV rows; {@code null} when it holds no responses.
+     */
+    private ByteArrayOutputStream generateCsvRows(ResponseBytes<GetObjectResponse> responseBytes, ChunkDetail chunkDetail, String currentBatchId, BulkApiRequest request) {
+        byte[] json = responseBytes.asByteArrayUnsafe();
+        ByteArrayOutputStream rows = new ByteArrayOutputStream(json.length / 2);
+        int rowCount = new BulkResponseCsvWriter(request.getDelimiter()).writeRows(json, 0, json.length, chunkDetail.getReportData(), rows);
+        if (rowCount == 0) {
             MDCLogging.setMDCContext(callerMdc);
-            logger.error("No responses object found. Instead found : {} for batchId : {}", bulkResponse, currentBatchId);
-            return EMPTY_STRING;
+            logger.error("No responses object found for batchId : {}", currentBatchId);
+            return null;
         }
+        chunkDetail.getTotalRecordCount().addAndGet(rowCount);
+        return rows;
     }
 
-    private BulkResponse generateBulkResponseObject(ResponseBytes<GetObjectResponse> responseBytes) {
+    /**
+     * Copies the batch's rows into the chunk's part buffers and uploads the parts they filled up.
+     */
+    private CompletableFuture<Boolean> fillDataBufferAndUpload(ByteArrayOutputStream csvRows, String destinationBucket, ChunkDetail chunkDetail) {
+        List<ChunkPartWriter.Part> filledParts;
+        ReentrantLock bufferLock = chunkDetail.getBufferLock();
+        bufferLock.lock();
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode jsonNode = objectMapper.readTree(responseBytes.asUtf8String());
-            return objectMapper.treeToValue(jsonNode, BulkResponse.class);
-        } catch (JsonProcessingException e) {
-            MDCLogging.setMDCContext(callerMdc);
+            csvRows.writeTo(chunkDetail.getPartWriter());
+            filledParts = chunkDetail.getPartWriter().takeFilledParts();
+        } catch (IOException e) {
             throw new BulkProcessorException(e.getMessage(), e);
+        } finally {
+            bufferLock.unlock();
         }
+        if (filledParts.isEmpty()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return CompletableFuture.allOf(filledParts.stream().map(part -> uploadPart(part, destinationBucket, chunkDetail)).toArray(CompletableFuture[]::new))
+                .thenApply(ignore -> true);
     }
 
-    private CompletableFuture<Boolean> fillDataBufferAndUpload(String csvData, String destinationBucket, ChunkDetail chunkDetail) {
-        lock.lock();
-        chunkDetail.getDataBuffer().append(csvData);
-        chunkDetail.getDataBuffer().append("\n");
-        long dataSize = chunkDetail.getDataBuffer().length();
-        if (dataSize > 10 * 1024 * 1024) {
-            StringBuilder finalData = new StringBuilder(chunkDetail.getDataBuffer());
-            chunkDetail.getDataBuffer().setLength(0);
-            int partNo = chunkDetail.getPartNo().getAndIncrement();
-            lock.unlock();
-            return s3Service.uploadFilePart(destinationBucket, chunkDetail.getChunkUploadKey(), chunkDetail.getChunkUploadId(), partNo, finalData, chunkDetail.getParts())
-                    .exceptionally(throwable -> {
-                        logger.error("Error on Upload the part chunk upload key {} part no {}", chunkDetail.getChunkUploadKey(), partNo, throwable);
-                        throw new BulkProcessorException("Error on Upload the part" + throwable.getMessage());
-                    });
+    /**
+     * Uploads a part of the chunk. The part staged for a direct upload is put as an object instead, to be copied or
+     * merged into the upload when it is completed.
+     */
+    private CompletableFuture<Boolean> uploadPart(ChunkPartWriter.Part part, String destinationBucket, ChunkDetail chunkDetail) {
+        CompletableFuture<Boolean> upload;
+        if (part.partNumber() == chunkDetail.getStagedPartNumber()) {
+            PartDetail staged = PartDetail.staged(part.partNumber(), chunkDetail.getChunkUploadKey() + "part" + part.partNumber(), part.size());
+            upload = s3Service.putObject(destinationBucket, staged.sourceKey(), part.data())
+                    .thenApply(put -> chunkDetail.getStagedParts().add(staged));
         } else {
-            lock.unlock();
-            return CompletableFuture.completedFuture(false);
+            upload = s3Service.uploadFilePart(destinationBucket, chunkDetail.getChunkUploadKey(), chunkDetail.getChunkUploadId(), part.partNumber(), part.data(), chunkDetail.getParts());
         }
+        return upload
+                .whenComplete((uploaded, throwable) -> part.data().forEach(partBufferPool::release))
+                .exceptionally(throwable -> {
+                    logger.error("Error on Upload the part chunk upload key {} part no {}", chunkDetail.getChunkUploadKey(), part.partNumber(), throwable);
+                    throw new BulkProcessorException("Error on Upload the part" + throwable.getMessage());
+                });
     }
 
     private long sendHeartbeatIfNeeded(ActivityExecutionContext ctx, long lastRunTime) {
@@ -173,12 +367,194 @@ public class S3CsvConverterAndAggregator {
         return lastRunTime;
     }
 
-    private void waitForNextIteration() {
+    /**
+     * Waits for a keyspace notification of the chunk's completed list, or for {@code completionPollInterval} when none
+     * arrives, but polls at most once per {@code completionMinPollInterval} so a burst of completions costs one read.
+     */
+    private void waitForNextIteration(Semaphore batchUpdates, long pollStart) {
         try {
-            Thread.sleep(Duration.ofSeconds(20));
+            batchUpdates.tryAcquire(completionPollInterval.toNanos(), TimeUnit.NANOSECONDS);
+            long remaining = completionMinPollInterval.toNanos() - (System.nanoTime() - pollStart);
+            if (remaining > 0) {
+                Thread.sleep(Duration.ofNanos(remaining));
+            }
+            batchUpdates.drainPermits();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             logger.warn("get interrupted exception", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * State of one chunk aggregated by {@link #aggregateChunkAsync}. Everything but the result runs on the completion
+     * scheduler thread, so the fields need no locking.
+     */
+    private final class ChunkAggregation {
+        private final ProcessChunkRequest chunkRequest;
+        private final String queryId;
+        private final ChunkDetail chunkDetail;
+        private final String jsonOutputFolderPath;
+        private final BitSet seenBatches = new BitSet();
+        private final List<CompletableFuture<Boolean>> featureList = new ArrayList<>();
+        private final CompletableFuture<ChunkProcessingResult> result = new CompletableFuture<>();
+        private int totalBatches;
+        private int completedBatches;
+        private long cursor;
+        private long lastReadStart;
+        private boolean reading;
+        private boolean readRequested;
+        private volatile ScheduledFuture<?> nextRead;
+        private volatile Disposable updateSubscription;
+
+        private ChunkAggregation(ProcessChunkRequest chunkRequest, String queryId, ChunkDetail chunkDetail) {
+            this.chunkRequest = chunkRequest;
+            this.queryId = queryId;
+            this.chunkDetail = chunkDetail;
+            this.jsonOutputFolderPath = getJsonOutputFolderPath(chunkRequest.bulkApiRequest(), queryId);
+            this.totalBatches = chunkRequest.totalBatch();
+            this.lastReadStart = System.nanoTime() - completionMinPollInterval.toNanos();
+            result.whenComplete((aggregated, throwable) -> {
+                stop();
+                chunkDetail.close();
+            });
+        }
+
+        private void start() {
+            int chunkId = chunkRequest.chunkNumber();
+            updateSubscription = redisService.subscribeBatchUpdates(queryId, chunkId)
+                    .subscribe(event -> completionScheduler.execute(this::requestRead),
+                            ex -> logger.warn("Batch update notifications unavailable for chunk {} of query {}, polling every {}", chunkId, queryId, completionPollInterval, ex));
+            if (result.isDone()) {
+                updateSubscription.dispose();
+            } else if (isComplete()) {
+                finish();
+            } else {
+                read();
+            }
+        }
+
+        /**
+         * Reads right away, or once {@code completionMinPollInterval} has passed since the last read started.
+         */
+        private void requestRead() {
+            if (result.isDone()) {
+                return;
+            }
+            if (reading) {
+                readRequested = true;
+                return;
+            }
+            scheduleRead(completionMinPollInterval.toNanos() - (System.nanoTime() - lastReadStart));
+        }
+
+        private void scheduleRead(long delayNanos) {
+            if (nextRead != null && !nextRead.isDone()) {
+                if (nextRead.getDelay(TimeUnit.NANOSECONDS) <= delayNanos) {
+                    return;
+                }
+                nextRead.cancel(false);
+            }
+            nextRead = completionScheduler.schedule(this::read, Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+        }
+
+        private void read() {
+            if (result.isDone() || reading) {
+                return;
+            }
+            reading = true;
+            readRequested = false;
+            lastReadStart = System.nanoTime();
+            int chunkId = chunkRequest.chunkNumber();
+            Mono.zip(redisService.getCompletedBatches(queryId, chunkId, cursor).collectList(),
+                            redisService.getLegacyCompletedBatches(queryId, chunkId).collectList())
+                    .toFuture()
+                    .whenCompleteAsync(this::onRead, completionScheduler);
+        }
+
+        private void onRead(Tuple2<List<String>, List<String>> batches, Throwable throwable) {
+            reading = false;
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+                return;
+            }
+            try {
+                boolean admittedAll = admit(batches.getT1(), true) && admit(batches.getT2(), false);
+                if (isComplete()) {
+                    finish();
+                } else if (!admittedAll || readRequested) {
+                    scheduleRead(completionMinPollInterval.toNanos());
+                } else {
+                    scheduleRead(completionPollInterval.toNanos());
+                }
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Starts fetching the newly completed batches the memory budget admits and, for entries of the completed list,
+         * moves the cursor past them. Returns {@code false} when it stopped at a batch the budget could not admit.
+         */
+        private boolean admit(List<String> appendedBatches, boolean fromCompletedList) {
+            int newlyCompleted = 0;
+            boolean admittedAll = true;
+            for (String batchId : appendedBatches) {
+                int batchTotal = getBatchTotal(batchId);
+                if (batchTotal >= 0) {
+                    if (totalBatches == UNKNOWN_TOTAL_BATCHES) {
+                        totalBatches = batchTotal;
+                        logger.info("chunk {} submitted with {} batches", chunkRequest.chunkNumber(), totalBatches);
+                    }
+                } else {
+                    int batchNumber = getBatchNumber(batchId);
+                    if (!seenBatches.get(batchNumber)) {
+                        long reserved = resultSizeEstimate.get();
+                        if (!memoryBudget.tryAcquire(reserved)) {
+                            admittedAll = false;
+                            break;
+                        }
+                        seenBatches.set(batchNumber);
+                        newlyCompleted++;
+                        featureList.add(getS3ObjectConvertToLines(batchId, chunkDetail, jsonOutputFolderPath, chunkRequest.bulkApiRequest(), reserved));
+                    }
+                }
+                if (fromCompletedList) {
+                    cursor++;
+                }
+            }
+            completedBatches += newlyCompleted;
+            submitRateController.recordCompletedBatches(newlyCompleted);
+            return admittedAll;
+        }
+
+        private boolean isComplete() {
+            return totalBatches != UNKNOWN_TOTAL_BATCHES && completedBatches >= totalBatches;
+        }
+
+        private void finish() {
+            stop();
+            int chunkId = chunkRequest.chunkNumber();
+            processChunkUpload(featureList, chunkDetail, chunkRequest)
+                    .thenCompose(parts -> redisService.expireBatches(queryId, chunkId).toFuture()
+                            .thenApply(ignore -> chunkResult(chunkRequest, chunkDetail, completedBatches, parts)))
+                    .whenComplete((aggregated, throwable) -> {
+                        if (throwable != null) {
+                            result.completeExceptionally(new BulkProcessorException("Exception when aggregate the csv lines", throwable));
+                        } else {
+                            result.complete(aggregated);
+                        }
+                    });
+        }
+
+        private void stop() {
+            Disposable subscription = updateSubscription;
+            if (subscription != null) {
+                subscription.dispose();
+            }
+            ScheduledFuture<?> scheduled = nextRead;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.arun.temporal.worker.service;
 
 
+import com.arun.temporal.worker.configuration.S3ClientConfiguration;
 import com.arun.temporal.worker.exception.BulkProcessorException;
+import com.arun.temporal.worker.s3.RangePrefetchInputStream;
+import com.arun.temporal.worker.throttle.MemoryBudget;
 import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,7 +16,7 @@ import software.amazon.awssdk.services.s3.model.*;
 
 import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
@@ -25,9 +28,13 @@ public class S3Service {
     private static final Logger logger = LoggerFactory.getLogger(S3Service.class);
 
     private final S3AsyncClient s3AsyncClient;
+    private final S3ClientConfiguration s3ClientConfiguration;
+    private final MemoryBudget memoryBudget;
 
-    public S3Service(S3AsyncClient s3AsyncClient) {
+    public S3Service(S3AsyncClient s3AsyncClient, S3ClientConfiguration s3ClientConfiguration, MemoryBudget memoryBudget) {
         this.s3AsyncClient = s3AsyncClient;
+        this.s3ClientConfiguration = s3ClientConfiguration;
+        this.memoryBudget = memoryBudget;
     }
 
     public CompletableFuture<Long> getInputFileSize(String bucketName, String key) {
@@ -77,6 +84,39 @@ public class S3Service {
         });
     }
 
+    /**
+     * Reads {@code [startPosition, endPosition]} through concurrent sub-range GETs of {@code s3-client.prefetch-part-size}
+     * bytes, at most {@code s3-client.prefetch-window} held including the one being read. The future completes once
+     * the first part is in.
+     */
+    public CompletableFuture<InputStream> getPrefetchedInputStream(String bucketName, String inputKey, long startPosition, long endPosition) {
+        RangePrefetchInputStream inputStream = getRangeInputStream(bucketName, inputKey, startPosition, endPosition,
+                s3ClientConfiguration.getPrefetchPartSize(), s3ClientConfiguration.getPrefetchWindow());
+        return inputStream.firstPart()
+                .<InputStream>thenApply(stream -> stream)
+                .whenComplete((stream, ex) -> {
+                    if (ex != null) {
+                        logger.error("Error in fetching S3 object for bucket: {}, key: {}, range: {}-{}", bucketName, inputKey, startPosition, endPosition);
+                        inputStream.close();
+                    }
+                });
+    }
+
+    public RangePrefetchInputStream getRangeInputStream(String bucketName, String inputKey, long startPosition, long endPosition, long partSize, int window) {
+        return new RangePrefetchInputStream(
+                (start, end) -> getObjectRange(bucketName, inputKey, start, end).thenApply(ResponseBytes::asByteArrayUnsafe),
+                startPosition, endPosition, partSize, window, memoryBudget);
+    }
+
+    public CompletableFuture<ResponseBytes<GetObjectResponse>> getObjectRange(String bucketName, String inputKey, long startPosition, long endPosition) {
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(inputKey)
+                .range("bytes=" + startPosition + "-" + endPosition)
+                .build();
+        return s3AsyncClient.getObject(request, AsyncResponseTransformer.toBytes());
+    }
+
     public CompletableFuture<ResponseBytes<GetObjectResponse>> getOutputStream(String bucketName, String inputKey) {
         GetObjectRequest request = GetObjectRequest.builder()
                 .bucket(bucketName)
@@ -85,20 +125,43 @@ public class S3Service {
         return s3AsyncClient.getObject(request, AsyncResponseTransformer.toBytes());
     }
 
-    public CompletableFuture<Boolean> uploadFilePart(String bucketName, String key, String uploadId, int partNumber, StringBuilder dataBuffer, List<CompletedPart> completedParts) {
+    /**
+     * Uploads the buffers, each up to its limit, as one part without copying them; they must not be touched until
+     * the returned future completes.
+     */
+    public CompletableFuture<Boolean> uploadFilePart(String bucketName, String key, String uploadId, int partNumber, List<ByteBuffer> data, List<CompletedPart> completedParts) {
         UploadPartRequest request = UploadPartRequest.builder()
                 .bucket(bucketName)
                 .key(key)
                 .uploadId(uploadId)
                 .partNumber(partNumber)
                 .build();
-        return s3AsyncClient.uploadPart(request, generateAsyncRequestBody(dataBuffer))
+        return s3AsyncClient.uploadPart(request, AsyncRequestBody.fromByteBuffersUnsafe(data.toArray(ByteBuffer[]::new)))
                 .thenApply(response -> {
                     completedParts.add(CompletedPart.builder().eTag(response.eTag()).partNumber(partNumber).build());
                     return true;
                 });
     }
 
+    /**
+     * Uploads the objects, read back in full, one after the other as one part. For staged parts that are too small to
+     * be copied into the upload on their own.
+     */
+    public CompletableFuture<String> uploadMergedPart(String bucketName, String key, String uploadId, int partNumber, List<String> sourceKeys) {
+        List<CompletableFuture<ResponseBytes<GetObjectResponse>>> sources = sourceKeys.stream().map(sourceKey -> getOutputStream(bucketName, sourceKey)).toList();
+        return CompletableFuture.allOf(sources.toArray(CompletableFuture[]::new))
+                .thenCompose(ignore -> {
+                    UploadPartRequest request = UploadPartRequest.builder()
+                            .bucket(bucketName)
+                            .key(key)
+                            .uploadId(uploadId)
+                            .partNumber(partNumber)
+                            .build();
+                    return s3AsyncClient.uploadPart(request, AsyncRequestBody.fromByteBuffersUnsafe(sources.stream()
+                            .map(source -> source.join().asByteBuffer()).toArray(ByteBuffer[]::new)));
+                })
+                .thenApply(UploadPartResponse::eTag);
+    }
 
     public CompletableFuture<String> uploadChunkFilePart(String bucketName, String key, String uploadId, int partNumber, String chunkFileKey) {
         UploadPartCopyRequest request = UploadPartCopyRequest.builder()
@@ -112,12 +175,61 @@ public class S3Service {
         return s3AsyncClient.uploadPartCopy(request).thenApply(res -> res.copyPartResult().eTag());
     }
 
+    /**
+     * Copies {@code sourceKey}, {@code sourceSize} bytes long, into consecutive parts of the upload starting at
+     * {@code firstPartNumber}: one part when it fits in {@code copyPartSize} bytes, otherwise one ranged copy per
+     * {@code copyPartSize} bytes. Fails when that takes more than {@code maxParts} parts.
+     */
+    public CompletableFuture<List<CompletedPart>> uploadPartCopies(String bucketName, String key, String uploadId, int firstPartNumber, int maxParts,
+                                                                   String sourceKey, long sourceSize, long copyPartSize) {
+        int partCount = (int) Math.max(1, Math.ceilDiv(sourceSize, copyPartSize));
+        if (partCount > maxParts) {
+            return CompletableFuture.failedFuture(new BulkProcessorException(
+                    sourceKey + " needs " + partCount + " parts of " + copyPartSize + " bytes but only " + maxParts + " are reserved for it"));
+        }
+        if (partCount == 1) {
+            return uploadChunkFilePart(bucketName, key, uploadId, firstPartNumber, sourceKey)
+                    .thenApply(eTag -> List.of(CompletedPart.builder().partNumber(firstPartNumber).eTag(eTag).build()));
+        }
+        List<CompletableFuture<CompletedPart>> copies = new ArrayList<>(partCount);
+        for (int i = 0; i < partCount; i++) {
+            int partNumber = firstPartNumber + i;
+            long start = i * copyPartSize;
+            long end = Math.min(sourceSize, start + copyPartSize) - 1;
+            UploadPartCopyRequest request = UploadPartCopyRequest.builder()
+                    .destinationBucket(bucketName)
+                    .destinationKey(key)
+                    .uploadId(uploadId)
+                    .partNumber(partNumber)
+                    .sourceBucket(bucketName)
+                    .sourceKey(sourceKey)
+                    .copySourceRange("bytes=" + start + "-" + end)
+                    .build();
+            copies.add(s3AsyncClient.uploadPartCopy(request)
+                    .thenApply(res -> CompletedPart.builder().partNumber(partNumber).eTag(res.copyPartResult().eTag()).build()));
+        }
+        return CompletableFuture.allOf(copies.toArray(CompletableFuture[]::new))
+                .thenApply(ignore -> copies.stream().map(CompletableFuture::join).toList());
+    }
+
     public CompletableFuture<Boolean> deleteChunkData(String bucketName, String key) {
         DeleteObjectRequest deleteObjectsRequest = DeleteObjectRequest.builder()
                 .bucket(bucketName).key(key).build();
         return s3AsyncClient.deleteObject(deleteObjectsRequest).thenApply(res -> true);
     }
 
+    /**
+     * Puts the buffers, each up to its limit, as one object without copying them; they must not be touched until the
+     * returned future completes.
+     */
+    public CompletableFuture<Boolean> putObject(String bucketName, String key, List<ByteBuffer> data) {
+        PutObjectRequest request = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+        return s3AsyncClient.putObject(request, AsyncRequestBody.fromByteBuffersUnsafe(data.toArray(ByteBuffer[]::new))).thenApply(response -> true);
+    }
+
     public CompletableFuture<Boolean> uploadReport(String bucketName, String key, String data) {
         PutObjectRequest putOb = PutObjectRequest.builder()
                 .bucket(bucketName)
@@ -126,8 +238,4 @@ public class S3Service {
                 .build();
         return s3AsyncClient.putObject(putOb, AsyncRequestBody.fromBytes(data.getBytes())).thenApply(response -> true);
     }
-
-    private AsyncRequestBody generateAsyncRequestBody(StringBuilder dataBuffer) {
-        return AsyncRequestBody.fromByteBuffer(ByteBuffer.wrap(dataBuffer.toString().getBytes(StandardCharsets.UTF_8)));
-    }
 }
@@ -0,0 +1,192 @@
+package com.arun.temporal.worker.throttle;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Nullable;
+import jakarta.annotation.PostConstruct;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Additive-increase / multiplicative-decrease pacing of batch submission. Every adjustment interval the rate is cut
+ * by {@code decreaseFactor} when the producer is congested (records queue longer than {@code queueTimeThresholdMs}
+ * or less than {@code bufferLowWater} of the buffer is free) or when it runs ahead of the rate batches reach
+ * {@code COMPLETED} by more than {@code completionHeadroom}; otherwise it grows by {@code increase}, up to that same
+ * completion ceiling. Batches are spaced {@code 1 / rate} apart across all chunks of the worker.
+ * <p>
+ * The completions come from the aggregations running on this worker, which since aggregations moved to their own
+ * task queue mostly belong to chunks other workers submitted. The ceiling is therefore an approximation of the
+ * cluster's completion rate, scaled by this worker's share of the aggregations, not a measure of how fast this
+ * worker's own batches complete. It holds while submissions and aggregations are spread evenly over the workers; a
+ * worker running few aggregations sees a low ceiling and relies on {@code increase} and the producer signals.
+ * Acknowledgements of this worker's own sends are not used instead, as they follow the rate they would bound.
+ */
+@Singleton
+public class AimdSubmitRateController implements SubmitRateController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AimdSubmitRateController.class);
+    static final String RATE_GAUGE = "bulk.submit.rate";
+
+    private final double minRate;
+    private final double maxRate;
+    private final double increase;
+    private final double decreaseFactor;
+    private final double queueTimeThresholdMs;
+    private final double bufferLowWater;
+    private final double completionHeadroom;
+    private final long adjustIntervalNanos;
+    private final long completionWindowNanos;
+    private final Supplier<ProducerLoad> producerLoad;
+    private final LongSupplier nanoClock;
+    private MeterRegistry meterRegistry;
+    private final Deque<long[]> completions = new ArrayDeque<>();
+    private long firstCompletion;
+    private volatile double rate;
+    private long nextSlot;
+    private long lastAdjustment;
+
+    @Inject
+    public AimdSubmitRateController(
+            @Nullable MeterRegistry meterRegistry,
+            @Value("${bulk.processor.rate.initial:20}") double initialRate,
+            @Value("${bulk.processor.rate.min:1}") double minRate,
+            @Value("${bulk.processor.rate.max:500}") double maxRate,
+            @Value("${bulk.processor.rate.increase:1}") double increase,
+            @Value("${bulk.processor.rate.decrease.factor:0.5}") double decreaseFactor,
+            @Value("${bulk.processor.rate.queue.time.threshold.ms:100}") double queueTimeThresholdMs,
+            @Value("${bulk.processor.rate.buffer.low.water:0.2}") double bufferLowWater,
+            @Value("${bulk.processor.rate.completion.headroom:1.5}") double completionHeadroom,
+            @Value("${bulk.processor.rate.adjust.interval:1s}") Duration adjustInterval,
+            @Value("${bulk.processor.rate.completion.window:60s}") Duration completionWindow
+    ) {
+        this(initialRate, minRate, maxRate, increase, decreaseFactor, queueTimeThresholdMs, bufferLowWater, completionHeadroom,
+                adjustInterval, completionWindow, ProducerMetricsReporter::currentLoad, System::nanoTime);
+        this.meterRegistry = meterRegistry != null ? meterRegistry : Metrics.globalRegistry;
+    }
+
+    AimdSubmitRateController(double initialRate, double minRate, double maxRate, double increase, double decreaseFactor,
+                             double queueTimeThresholdMs, double bufferLowWater, double completionHeadroom,
+                             Duration adjustInterval, Duration completionWindow,
+                             Supplier<ProducerLoad> producerLoad, LongSupplier nanoClock) {
+        if (minRate <= 0 || maxRate < minRate || decreaseFactor <= 0 || decreaseFactor >= 1) {
+            throw new IllegalArgumentException("Rate bounds must be positive and the decrease factor within (0, 1)");
+        }
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.increase = increase;
+        this.decreaseFactor = decreaseFactor;
+        this.queueTimeThresholdMs = queueTimeThresholdMs;
+        this.bufferLowWater = bufferLowWater;
+        this.completionHeadroom = completionHeadroom;
+        this.adjustIntervalNanos = adjustInterval.toNanos();
+        this.completionWindowNanos = completionWindow.toNanos();
+        this.producerLoad = producerLoad;
+        this.nanoClock = nanoClock;
+        this.rate = clamp(initialRate);
+        this.nextSlot = nanoClock.getAsLong();
+        this.lastAdjustment = this.nextSlot;
+    }
+
+    /**
+     * Publishes the rate gauge once the bean is constructed.
+     */
+    @PostConstruct
+    void registerGauge() {
+        if (meterRegistry != null) {
+            Gauge.builder(RATE_GAUGE, this, SubmitRateController::currentRate)
+                    .description("Batches per second the submit pipeline is paced to")
+                    .baseUnit("batches/s")
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public Mono<Void> acquire() {
+        long waitNanos = reserve();
+        return waitNanos <= 0 ? Mono.empty() : Mono.delay(Duration.ofNanos(waitNanos)).then();
+    }
+
+    @Override
+    public synchronized void recordCompletedBatches(int count) {
+        if (count > 0) {
+            long now = nanoClock.getAsLong();
+            pruneCompletions(now);
+            if (completions.isEmpty()) {
+                firstCompletion = now;
+            }
+            completions.addLast(new long[]{now, count});
+        }
+    }
+
+    @Override
+    public double currentRate() {
+        return rate;
+    }
+
+    /**
+     * Takes the next submit slot and returns how long to wait for it.
+     */
+    synchronized long reserve() {
+        long now = nanoClock.getAsLong();
+        if (now - lastAdjustment >= adjustIntervalNanos) {
+            adjust(now);
+            lastAdjustment = now;
+        }
+        long slot = Math.max(nextSlot, now);
+        nextSlot = slot + (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        return slot - now;
+    }
+
+    private void adjust(long now) {
+        ProducerLoad load = producerLoad.get();
+        double ceiling = completionRate(now) * completionHeadroom;
+        double previous = rate;
+        if (load.recordQueueTimeMs() > queueTimeThresholdMs || load.bufferAvailableRatio() < bufferLowWater) {
+            rate = clamp(rate * decreaseFactor);
+        } else if (!Double.isNaN(ceiling) && rate > ceiling) {
+            rate = clamp(Math.max(rate * decreaseFactor, ceiling));
+        } else {
+            rate = clamp(Double.isNaN(ceiling) ? rate + increase : Math.min(rate + increase, ceiling));
+        }
+        if (rate != previous) {
+            logger.debug("Submit rate {} -> {} batches/s (queue time {} ms, free buffer {}, completion ceiling {})",
+                    previous, rate, load.recordQueueTimeMs(), load.bufferAvailableRatio(), ceiling);
+        }
+    }
+
+    /**
+     * Batches per second that reached {@code COMPLETED} within the completion window, or {@code NaN} when none were
+     * reported in it or completions have been reported for less than a window, since those would be averaged over time
+     * in which nothing could have completed yet.
+     */
+    private double completionRate(long now) {
+        pruneCompletions(now);
+        if (completions.isEmpty() || now - firstCompletion < completionWindowNanos) {
+            return Double.NaN;
+        }
+        long completed = completions.stream().mapToLong(completion -> completion[1]).sum();
+        return completed / (completionWindowNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private void pruneCompletions(long now) {
+        while (!completions.isEmpty() && now - completions.peekFirst()[0] > completionWindowNanos) {
+            completions.pollFirst();
+        }
+    }
+
+    private double clamp(double value) {
+        return Math.max(minRate, Math.min(maxRate, value));
+    }
+}
@@ -0,0 +1,149 @@
+package com.arun.temporal.worker.throttle;
+
+import com.arun.temporal.worker.exception.BulkProcessorException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Nullable;
+import jakarta.annotation.PostConstruct;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.time.Duration;
+
+/**
+ * Worker-wide budget of bytes held in memory by all activities of the worker. Data entering the worker (S3 range
+ * reads and batch result fetches) waits in {@link #acquire} until enough of the budget is free; buffers only ever
+ * filled from data already admitted (upload parts) are charged with {@link #charge} without waiting, since holding
+ * them back could keep that data from ever draining. A request larger than the whole budget is admitted once nothing
+ * else is held. Usage is published as the {@code bulk.memory.budget.used} and {@code bulk.memory.budget.utilization}
+ * gauges.
+ */
+@Singleton
+public class MemoryBudget {
+
+    static final String USED_GAUGE = "bulk.memory.budget.used";
+    static final String UTILIZATION_GAUGE = "bulk.memory.budget.utilization";
+
+    private final long capacity;
+    private final MeterRegistry meterRegistry;
+    private long used;
+
+    @Inject
+    public MemoryBudget(@Nullable MeterRegistry meterRegistry,
+                        @Value("${bulk.processor.memory.budget:1073741824}") long capacity) {
+        this(capacity, meterRegistry != null ? meterRegistry : Metrics.globalRegistry);
+    }
+
+    public MemoryBudget(long capacity) {
+        this(capacity, null);
+    }
+
+    private MemoryBudget(long capacity, MeterRegistry meterRegistry) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Publishes the usage gauges once the bean is constructed; budgets created without a registry publish none.
+     */
+    @PostConstruct
+    void registerGauges() {
+        if (meterRegistry == null) {
+            return;
+        }
+        Gauge.builder(USED_GAUGE, this, MemoryBudget::used)
+                .description("Bytes of S3 reads, batch results and upload parts held by the worker")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder(UTILIZATION_GAUGE, this, MemoryBudget::utilization)
+                .description("Share of the worker memory budget in use")
+                .register(meterRegistry);
+    }
+
+    /**
+     * A budget that never waits, for callers without one.
+     */
+    public static MemoryBudget unbounded() {
+        return new MemoryBudget(Long.MAX_VALUE);
+    }
+
+    /**
+     * Waits until {@code bytes} fit in the budget and takes them.
+     */
+    public synchronized void acquire(long bytes) {
+        try {
+            while (!fits(bytes)) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BulkProcessorException("Interrupted while waiting for memory budget", e);
+        }
+        used += bytes;
+    }
+
+    /**
+     * Takes {@code bytes} if they fit within {@code timeout}.
+     */
+    public synchronized boolean tryAcquire(long bytes, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            while (!fits(bytes)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(Math.max(1, remaining / 1_000_000));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BulkProcessorException("Interrupted while waiting for memory budget", e);
+        }
+        used += bytes;
+        return true;
+    }
+
+    /**
+     * Takes {@code bytes} if they fit right now.
+     */
+    public synchronized boolean tryAcquire(long bytes) {
+        if (!fits(bytes)) {
+            return false;
+        }
+        used += bytes;
+        return true;
+    }
+
+    /**
+     * Takes {@code bytes} even when that exceeds the budget.
+     */
+    public synchronized void charge(long bytes) {
+        used += bytes;
+    }
+
+    public synchronized void release(long bytes) {
+        used = Math.max(0, used - bytes);
+        notifyAll();
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    public synchronized long used() {
+        return used;
+    }
+
+    public double utilization() {
+        return (double) used() / capacity;
+    }
+
+    private boolean fits(long bytes) {
+        return used == 0 || bytes <= capacity - used;
+    }
+}
@@ -0,0 +1,10 @@
+package com.arun.temporal.worker.throttle;
+
+/**
+ * Latest producer metrics: the average time records wait in the accumulator and the share of {@code buffer.memory}
+ * that is still free. Either value is {@code NaN} while the producer has not reported it.
+ */
+public record ProducerLoad(double recordQueueTimeMs, double bufferAvailableRatio) {
+
+    public static final ProducerLoad UNKNOWN = new ProducerLoad(Double.NaN, Double.NaN);
+}
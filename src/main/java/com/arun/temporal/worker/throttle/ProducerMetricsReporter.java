@@ -0,0 +1,94 @@
+package com.arun.temporal.worker.throttle;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.KafkaMetric;
+import org.apache.kafka.common.metrics.MetricsReporter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Kafka {@code metric.reporters} plugin that keeps hold of the producer metrics the submit rate is driven by. Kafka
+ * creates the reporter itself, outside of the bean context, so the metrics are kept in a static registry that
+ * {@link #currentLoad()} reads.
+ */
+public class ProducerMetricsReporter implements MetricsReporter {
+
+    static final String GROUP = "producer-metrics";
+    static final String RECORD_QUEUE_TIME_AVG = "record-queue-time-avg";
+    static final String BUFFER_AVAILABLE_BYTES = "buffer-available-bytes";
+    static final String BUFFER_TOTAL_BYTES = "buffer-total-bytes";
+    private static final Set<String> TRACKED = Set.of(RECORD_QUEUE_TIME_AVG, BUFFER_AVAILABLE_BYTES, BUFFER_TOTAL_BYTES);
+    private static final Map<MetricName, KafkaMetric> METRICS = new ConcurrentHashMap<>();
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        // nothing to configure
+    }
+
+    @Override
+    public void init(List<KafkaMetric> metrics) {
+        metrics.forEach(this::metricChange);
+    }
+
+    @Override
+    public void metricChange(KafkaMetric metric) {
+        if (isTracked(metric.metricName())) {
+            METRICS.put(metric.metricName(), metric);
+        }
+    }
+
+    @Override
+    public void metricRemoval(KafkaMetric metric) {
+        METRICS.remove(metric.metricName());
+    }
+
+    @Override
+    public void close() {
+        // metrics are removed one by one through metricRemoval when the producer closes
+    }
+
+    /**
+     * Worst load over all producers of the worker: the highest queue time and the lowest free buffer share.
+     */
+    public static ProducerLoad currentLoad() {
+        double queueTime = Double.NaN;
+        Map<String, double[]> buffers = new HashMap<>();
+        for (KafkaMetric metric : METRICS.values()) {
+            double value = valueOf(metric);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            String name = metric.metricName().name();
+            if (RECORD_QUEUE_TIME_AVG.equals(name)) {
+                queueTime = Double.isNaN(queueTime) ? value : Math.max(queueTime, value);
+            } else {
+                double[] buffer = buffers.computeIfAbsent(metric.metricName().tags().get("client-id"), id -> new double[]{Double.NaN, Double.NaN});
+                buffer[BUFFER_AVAILABLE_BYTES.equals(name) ? 0 : 1] = value;
+            }
+        }
+        double availableRatio = Double.NaN;
+        for (double[] buffer : buffers.values()) {
+            if (buffer[1] > 0) {
+                double ratio = buffer[0] / buffer[1];
+                availableRatio = Double.isNaN(availableRatio) ? ratio : Math.min(availableRatio, ratio);
+            }
+        }
+        return new ProducerLoad(queueTime, availableRatio);
+    }
+
+    static void clear() {
+        METRICS.clear();
+    }
+
+    private static boolean isTracked(MetricName name) {
+        return GROUP.equals(name.group()) && TRACKED.contains(name.name());
+    }
+
+    private static double valueOf(KafkaMetric metric) {
+        return metric.metricValue() instanceof Number number ? number.doubleValue() : Double.NaN;
+    }
+}
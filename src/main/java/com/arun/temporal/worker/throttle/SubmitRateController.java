@@ -0,0 +1,26 @@
+package com.arun.temporal.worker.throttle;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Paces the batches {@code uploadChunk} submits to Kafka. One instance is shared by every chunk running on the worker,
+ * so the rate is a per-worker rate.
+ */
+public interface SubmitRateController {
+
+    /**
+     * Completes when the next batch may be submitted.
+     */
+    Mono<Void> acquire();
+
+    /**
+     * Reports batches that were seen moving to {@code COMPLETED} by an aggregation on this worker, whichever worker
+     * submitted them.
+     */
+    void recordCompletedBatches(int count);
+
+    /**
+     * Current submit rate in batches per second.
+     */
+    double currentRate();
+}
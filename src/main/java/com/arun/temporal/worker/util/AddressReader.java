@@ -25,34 +25,17 @@ public class AddressReader {
     }
 
     public static InputRequest convertToRequest(String[] header, String line, String delimiter, AtomicInteger totalRecordCount) {
-        totalRecordCount.incrementAndGet();
-        String[] values;
-        if (hasBalancedQuotes(line)) {
-            values = line.split(delimiter.concat("(?=(?:(?:[^\"]*\"){2})*[^\"]*$)"), -1);
-            if (values.length != header.length) {
-                values = line.split(delimiter, -1);
-            }
-        } else {
-            values = line.split(delimiter, -1);
-        }
-        Map<String, String> fieldMap = new HashMap<>();
-        for (int i = 0; i < header.length && i < values.length; i++) {
-            fieldMap.put(header[i], cleanValue(values[i]));
-        }
-        return new InputRequest(fieldMap.get("input1"),fieldMap.get("input2"),fieldMap.get("input2"));
+        return convertToRequest(new CsvFieldTokenizer(header, delimiter), line, totalRecordCount);
     }
 
-    private static String cleanValue(String value) {
-        if (value == null || value.isEmpty()) return "";
-        value = value.replace("\"", " ").trim();
-        if (value.startsWith("'")) value = value.substring(1);
-        if (value.endsWith("'")) value = value.substring(0, value.length() - 1);
-        return value.trim();
+    public static InputRequest convertToRequest(CsvFieldTokenizer tokenizer, String line, AtomicInteger totalRecordCount) {
+        totalRecordCount.incrementAndGet();
+        return tokenizer.tokenize(line);
     }
 
-    private static boolean hasBalancedQuotes(String line) {
-        long count = line.chars().filter(ch -> ch == '"').count();
-        return count % 2 == 0;
+    public static InputRequest convertToRequest(CsvFieldTokenizer tokenizer, LineView line, AtomicInteger totalRecordCount) {
+        totalRecordCount.incrementAndGet();
+        return tokenizer.tokenize(line);
     }
 
     public static String getRowValueForOutputCsv(ResponseWithInputRequest response, String delimiter, ReportData reportData) {
@@ -0,0 +1,237 @@
+package com.arun.temporal.worker.util;
+
+import com.arun.temporal.worker.exception.BulkProcessorException;
+import com.arun.temporal.worker.model.ReportData;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Streams the {@code responses} of a batch result object straight into UTF-8 encoded output CSV rows, without binding
+ * a {@code BulkResponse} or building a string per row.
+ * <p>
+ * Field values are copied from the parser's character buffer into one per-row scratch buffer, since the JSON field
+ * order need not match the column order; the row is encoded into a reusable byte buffer and written to the output
+ * in one call once its object ends. Rows are the same as {@link AddressReader#getRowValueForOutputCsv}:
+ * {@code name, email, phone, address, input1, input2, input3, error}, missing values empty and phone/address quoted
+ * when they contain the delimiter. Unknown fields are skipped and trailing commas are accepted. Every row is
+ * terminated by {@code \n}.
+ * <p>
+ * Instances keep per-row scratch state and are not thread-safe.
+ */
+public final class BulkResponseCsvWriter {
+
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .enable(JsonReadFeature.ALLOW_TRAILING_COMMA)
+            .build();
+
+    private static final int NAME = 0;
+    private static final int EMAIL = 1;
+    private static final int PHONE = 2;
+    private static final int ADDRESS = 3;
+    private static final int INPUT1 = 4;
+    private static final int INPUT2 = 5;
+    private static final int INPUT3 = 6;
+    private static final int ERROR = 7;
+    private static final int COLUMNS = 8;
+
+    private final char[] delimiter;
+    private final int[] valueStart = new int[COLUMNS];
+    private final int[] valueLength = new int[COLUMNS];
+    private char[] scratch = new char[512];
+    private int scratchLength;
+    private byte[] row = new byte[1024];
+    private int rowLength;
+
+    public BulkResponseCsvWriter(String delimiter) {
+        if (delimiter == null || delimiter.isEmpty()) {
+            throw new BulkProcessorException("Unsupported delimiter: " + delimiter);
+        }
+        this.delimiter = delimiter.toCharArray();
+    }
+
+    /**
+     * Appends one row per element of {@code responses} to {@code out} and counts each in {@code reportData}.
+     *
+     * @return the number of rows written, 0 when the object has no or an empty {@code responses} array
+     */
+    public int writeRows(byte[] json, int offset, int length, ReportData reportData, OutputStream out) {
+        try (JsonParser parser = JSON_FACTORY.createParser(json, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new BulkProcessorException("Batch result is not a JSON object");
+            }
+            int rows = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                boolean responses = "responses".equals(parser.currentName());
+                JsonToken value = parser.nextToken();
+                if (responses && value == JsonToken.START_ARRAY) {
+                    rows += writeResponses(parser, reportData, out);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return rows;
+        } catch (IOException e) {
+            throw new BulkProcessorException(e.getMessage(), e);
+        }
+    }
+
+    private int writeResponses(JsonParser parser, ReportData reportData, OutputStream out) throws IOException {
+        int rows = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            clearRow();
+            if (token == JsonToken.START_OBJECT) {
+                readResponse(parser);
+            } else if (token != JsonToken.VALUE_NULL) {
+                throw new BulkProcessorException("Unexpected " + token + " in responses");
+            }
+            writeRow(out);
+            reportData.addRecs();
+            rows++;
+        }
+        return rows;
+    }
+
+    private void readResponse(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "name" -> readValue(parser, value, NAME);
+                case "email" -> readValue(parser, value, EMAIL);
+                case "phone" -> readValue(parser, value, PHONE);
+                case "address" -> readValue(parser, value, ADDRESS);
+                case "error" -> readValue(parser, value, ERROR);
+                case "inputRequest" -> {
+                    if (value == JsonToken.START_OBJECT) {
+                        readInputRequest(parser);
+                    } else if (value != JsonToken.VALUE_NULL) {
+                        throw new BulkProcessorException("Unexpected " + value + " for inputRequest");
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private void readInputRequest(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "input1" -> readValue(parser, value, INPUT1);
+                case "input2" -> readValue(parser, value, INPUT2);
+                case "input3" -> readValue(parser, value, INPUT3);
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private void readValue(JsonParser parser, JsonToken value, int column) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            valueLength[column] = 0;
+            return;
+        }
+        if (!value.isScalarValue()) {
+            throw new BulkProcessorException("Unexpected " + value + " for " + parser.currentName());
+        }
+        int length = parser.getTextLength();
+        if (scratchLength + length > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, scratchLength + length));
+        }
+        System.arraycopy(parser.getTextCharacters(), parser.getTextOffset(), scratch, scratchLength, length);
+        valueStart[column] = scratchLength;
+        valueLength[column] = length;
+        scratchLength += length;
+    }
+
+    private void clearRow() {
+        Arrays.fill(valueLength, 0);
+        scratchLength = 0;
+    }
+
+    private void writeRow(OutputStream out) throws IOException {
+        rowLength = 0;
+        for (int column = 0; column < COLUMNS; column++) {
+            if (column > 0) {
+                encode(delimiter, 0, delimiter.length);
+            }
+            int start = valueStart[column];
+            int length = valueLength[column];
+            boolean quoted = (column == PHONE || column == ADDRESS) && containsDelimiter(start, length);
+            if (quoted) {
+                ensureRowCapacity(1);
+                row[rowLength++] = '"';
+            }
+            encode(scratch, start, length);
+            if (quoted) {
+                ensureRowCapacity(1);
+                row[rowLength++] = '"';
+            }
+        }
+        ensureRowCapacity(1);
+        row[rowLength++] = '\n';
+        out.write(row, 0, rowLength);
+    }
+
+    /**
+     * UTF-8 encodes {@code chars} into the row buffer; unpaired surrogates become {@code ?} as with
+     * {@link String#getBytes}.
+     */
+    private void encode(char[] chars, int start, int length) {
+        ensureRowCapacity(length * 3);
+        int end = start + length;
+        for (int i = start; i < end; i++) {
+            char c = chars[i];
+            if (c < 0x80) {
+                row[rowLength++] = (byte) c;
+            } else if (c < 0x800) {
+                row[rowLength++] = (byte) (0xC0 | c >> 6);
+                row[rowLength++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars[i + 1])) {
+                int codePoint = Character.toCodePoint(c, chars[++i]);
+                row[rowLength++] = (byte) (0xF0 | codePoint >> 18);
+                row[rowLength++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                row[rowLength++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                row[rowLength++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                row[rowLength++] = '?';
+            } else {
+                row[rowLength++] = (byte) (0xE0 | c >> 12);
+                row[rowLength++] = (byte) (0x80 | c >> 6 & 0x3F);
+                row[rowLength++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    private void ensureRowCapacity(int additional) {
+        if (rowLength + additional > row.length) {
+            row = Arrays.copyOf(row, Math.max(row.length * 2, rowLength + additional));
+        }
+    }
+
+    private boolean containsDelimiter(int start, int length) {
+        int last = start + length - delimiter.length;
+        for (int i = start; i <= last; i++) {
+            if (regionMatchesDelimiter(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean regionMatchesDelimiter(int at) {
+        for (int j = 0; j < delimiter.length; j++) {
+            if (scratch[at + j] != delimiter[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,111 @@
+package com.arun.temporal.worker.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decompressed view of one chunk of a compressed input. Compressed chunks start and end on block/frame boundaries,
+ * which do not line up with lines, so a line belongs to the chunk holding the {@code '\n'} that precedes it: the
+ * bytes up to and including the first {@code '\n'} of the chunk's own data are skipped (for the first chunk that is
+ * the header), and the line following the last {@code '\n'} of the own data is read to its end from {@code tail},
+ * the decompressed data after the chunk, which is opened lazily.
+ */
+public final class CompressedChunkInputStream extends InputStream {
+
+    @FunctionalInterface
+    public interface TailOpener {
+        InputStream open() throws IOException;
+    }
+
+    private enum State { SKIP_FIRST_LINE, OWN, TAIL, DONE }
+
+    private final InputStream own;
+    private final TailOpener tailOpener;
+    private InputStream tail;
+    private State state = State.SKIP_FIRST_LINE;
+
+    public CompressedChunkInputStream(InputStream own, TailOpener tailOpener) {
+        this.own = own;
+        this.tailOpener = tailOpener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (true) {
+            switch (state) {
+                case SKIP_FIRST_LINE -> {
+                    int remaining = skipFirstLine(bytes, offset, length);
+                    if (remaining > 0) {
+                        return remaining;
+                    }
+                }
+                case OWN -> {
+                    int count = own.read(bytes, offset, length);
+                    if (count > 0) {
+                        return count;
+                    }
+                    state = State.TAIL;
+                }
+                case TAIL -> {
+                    if (tail == null) {
+                        tail = tailOpener.open();
+                    }
+                    int count = tail.read(bytes, offset, length);
+                    if (count <= 0) {
+                        state = State.DONE;
+                        continue;
+                    }
+                    int newline = LineScanner.indexOfNewline(bytes, offset, offset + count);
+                    if (newline >= 0) {
+                        state = State.DONE;
+                        return newline - offset + 1;
+                    }
+                    return count;
+                }
+                default -> {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            own.close();
+        } finally {
+            if (tail != null) {
+                tail.close();
+            }
+        }
+    }
+
+    /**
+     * Reads into the caller's buffer until the first {@code '\n'} and returns how many bytes after it were moved to
+     * {@code offset}.
+     */
+    private int skipFirstLine(byte[] bytes, int offset, int length) throws IOException {
+        int count = own.read(bytes, offset, length);
+        if (count == -1) {
+            state = State.DONE;
+            return 0;
+        }
+        int newline = LineScanner.indexOfNewline(bytes, offset, offset + count);
+        if (newline < 0) {
+            return 0;
+        }
+        state = State.OWN;
+        int remaining = offset + count - newline - 1;
+        System.arraycopy(bytes, newline + 1, bytes, offset, remaining);
+        return remaining;
+    }
+}
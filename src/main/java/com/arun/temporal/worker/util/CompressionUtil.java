@@ -0,0 +1,146 @@
+package com.arun.temporal.worker.util;
+
+import com.arun.temporal.worker.model.activity.InputCompression;
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class CompressionUtil {
+
+    /**
+     * Bytes needed to recognise a BGZF block header: the gzip magic with FEXTRA set, XLEN 6 and the {@code BC}
+     * sub-field of length 2.
+     */
+    public static final int BGZF_HEADER_SIZE = 16;
+    public static final int SEEK_TABLE_FOOTER_SIZE = 9;
+    private static final int SEEKABLE_MAGIC = 0x8F92EAB1;
+    private static final int SKIPPABLE_FRAME_HEADER_SIZE = 8;
+
+    private CompressionUtil() {
+    }
+
+    public record SeekTableFooter(int frames, int entrySize) {
+        public long tableSize() {
+            return (long) frames * entrySize;
+        }
+    }
+
+    public static InputCompression detect(byte[] head) {
+        if (head.length >= 4 && (head[0] & 0xFF) == 0x28 && (head[1] & 0xFF) == 0xB5 && (head[2] & 0xFF) == 0x2F && (head[3] & 0xFF) == 0xFD) {
+            return InputCompression.ZSTD;
+        }
+        if (head.length >= 3 && (head[0] & 0xFF) == 0x1F && (head[1] & 0xFF) == 0x8B && head[2] == 8) {
+            return isBgzfHeader(head, 0) ? InputCompression.BGZF : InputCompression.GZIP;
+        }
+        return InputCompression.NONE;
+    }
+
+    public static InputStream decoder(InputStream compressed, InputCompression compression) throws IOException {
+        return switch (compression) {
+            case GZIP, BGZF -> new GzipMemberInputStream(compressed);
+            case ZSTD -> new ZstdInputStream(compressed);
+            case NONE -> compressed;
+        };
+    }
+
+    /**
+     * Decodes as much of a truncated compressed prefix as possible, up to {@code maxBytes}.
+     */
+    public static byte[] decodeSample(byte[] head, InputCompression compression, int maxBytes) {
+        if (compression == InputCompression.NONE) {
+            return head;
+        }
+        ByteArrayOutputStream sample = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = decoder(new ByteArrayInputStream(head), compression)) {
+            int read;
+            while (sample.size() < maxBytes && (read = in.read(buffer, 0, Math.min(buffer.length, maxBytes - sample.size()))) != -1) {
+                sample.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            // the prefix ends mid block/frame; keep what was decoded
+        }
+        return sample.toByteArray();
+    }
+
+    /**
+     * Absolute offset of the first BGZF block header that lies entirely in the probe, or -1.
+     */
+    public static long findBgzfBlockStart(byte[] probe, long probeStart) {
+        for (int i = 0; i + BGZF_HEADER_SIZE <= probe.length; i++) {
+            if (isBgzfHeader(probe, i)) {
+                return probeStart + i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the footer of a zstd seekable-format seek table, or returns {@code null} when the object has none.
+     */
+    public static SeekTableFooter readSeekTableFooter(byte[] footer) {
+        if (footer.length != SEEK_TABLE_FOOTER_SIZE) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(footer).order(ByteOrder.LITTLE_ENDIAN);
+        int frames = buffer.getInt(0);
+        boolean checksums = (footer[4] & 0x80) != 0;
+        if (buffer.getInt(5) != SEEKABLE_MAGIC || frames < 0) {
+            return null;
+        }
+        return new SeekTableFooter(frames, checksums ? 12 : 8);
+    }
+
+    /**
+     * Offset of the first byte of the seek table entries, given the size of the object.
+     */
+    public static long seekTableStart(long fileSize, SeekTableFooter footer) {
+        return fileSize - SEEK_TABLE_FOOTER_SIZE - footer.tableSize();
+    }
+
+    public static boolean hasSeekTable(long fileSize, SeekTableFooter footer) {
+        return footer != null && footer.frames() > 0 && seekTableStart(fileSize, footer) >= SKIPPABLE_FRAME_HEADER_SIZE;
+    }
+
+    /**
+     * Compressed start offsets of every frame listed in the seek table entries.
+     */
+    public static List<Long> frameOffsets(byte[] entries, SeekTableFooter footer) {
+        ByteBuffer buffer = ByteBuffer.wrap(entries).order(ByteOrder.LITTLE_ENDIAN);
+        List<Long> offsets = new ArrayList<>(footer.frames());
+        long offset = 0;
+        for (int frame = 0; frame < footer.frames(); frame++) {
+            offsets.add(offset);
+            offset += Integer.toUnsignedLong(buffer.getInt(frame * footer.entrySize()));
+        }
+        return offsets;
+    }
+
+    /**
+     * Moves every cut point forward to the next frame start; cut points past the last frame map to {@code end}.
+     */
+    public static List<Long> alignToFrames(List<Long> cutPoints, List<Long> frameOffsets, long end) {
+        List<Long> aligned = new ArrayList<>(cutPoints.size());
+        for (Long cutPoint : cutPoints) {
+            int index = Collections.binarySearch(frameOffsets, cutPoint);
+            int next = index >= 0 ? index : -index - 1;
+            aligned.add(next < frameOffsets.size() ? frameOffsets.get(next) : end);
+        }
+        return aligned;
+    }
+
+    private static boolean isBgzfHeader(byte[] bytes, int at) {
+        return at + BGZF_HEADER_SIZE <= bytes.length
+                && (bytes[at] & 0xFF) == 0x1F && (bytes[at + 1] & 0xFF) == 0x8B && bytes[at + 2] == 8 && (bytes[at + 3] & 4) != 0
+                && bytes[at + 10] == 6 && bytes[at + 11] == 0
+                && bytes[at + 12] == 'B' && bytes[at + 13] == 'C' && bytes[at + 14] == 2 && bytes[at + 15] == 0;
+    }
+}
@@ -0,0 +1,144 @@
+package com.arun.temporal.worker.util;
+
+import com.arun.temporal.worker.exception.BulkProcessorException;
+import com.arun.temporal.worker.model.InputRequest;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Single-pass, quote-aware row splitter that only materializes the {@code input1..input3} columns.
+ * <p>
+ * The header-to-column index is computed once per chunk. Each row is walked once while tracking two splits side by
+ * side: one that ignores delimiters inside double quotes and a plain one. The quote-aware split is used when the
+ * row's quotes are balanced and it yields one field per header, otherwise the plain split is used, which is the
+ * same fallback the regex based split had. Rows without non-ASCII bytes skip UTF-8 decoding of their values.
+ * Values are cleaned like before: quotes count as blanks, surrounding blanks and a single leading/trailing
+ * apostrophe are dropped.
+ * <p>
+ * Instances keep per-row scratch state and are not thread-safe.
+ */
+public final class CsvFieldTokenizer {
+
+    private static final String[] PROJECTED_HEADERS = {"input1", "input2", "input3"};
+    private static final byte QUOTE = '"';
+    private static final byte APOSTROPHE = '\'';
+
+    private final byte delimiter;
+    private final int headerCount;
+    private final int[] slotByColumn;
+    private final int[] quotedStart = new int[PROJECTED_HEADERS.length];
+    private final int[] quotedEnd = new int[PROJECTED_HEADERS.length];
+    private final int[] plainStart = new int[PROJECTED_HEADERS.length];
+    private final int[] plainEnd = new int[PROJECTED_HEADERS.length];
+    private byte[] scratch = new byte[256];
+
+    public CsvFieldTokenizer(String[] headers, String delimiter) {
+        if (delimiter == null || delimiter.length() != 1 || delimiter.charAt(0) > 0x7F) {
+            throw new BulkProcessorException("Unsupported delimiter: " + delimiter);
+        }
+        this.delimiter = (byte) delimiter.charAt(0);
+        this.headerCount = headers.length;
+        this.slotByColumn = new int[headers.length];
+        Arrays.fill(slotByColumn, -1);
+        for (int slot = 0; slot < PROJECTED_HEADERS.length; slot++) {
+            int column = lastIndexOf(headers, PROJECTED_HEADERS[slot]);
+            if (column >= 0) {
+                slotByColumn[column] = slot;
+            }
+        }
+    }
+
+    public InputRequest tokenize(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return tokenize(bytes, 0, bytes.length);
+    }
+
+    public InputRequest tokenize(LineView line) {
+        return tokenize(line.buffer(), line.offset(), line.length());
+    }
+
+    public InputRequest tokenize(byte[] buffer, int offset, int length) {
+        Arrays.fill(quotedStart, -1);
+        Arrays.fill(plainStart, -1);
+        int end = offset + length;
+        int quotedField = 0;
+        int plainField = 0;
+        int quotedFieldStart = offset;
+        int plainFieldStart = offset;
+        boolean inQuotes = false;
+        boolean ascii = true;
+        for (int i = offset; i < end; i++) {
+            byte b = buffer[i];
+            ascii &= b >= 0;
+            if (b == QUOTE) {
+                inQuotes = !inQuotes;
+            } else if (b == delimiter) {
+                markField(plainField++, plainFieldStart, i, plainStart, plainEnd);
+                plainFieldStart = i + 1;
+                if (!inQuotes) {
+                    markField(quotedField++, quotedFieldStart, i, quotedStart, quotedEnd);
+                    quotedFieldStart = i + 1;
+                }
+            }
+        }
+        markField(plainField, plainFieldStart, end, plainStart, plainEnd);
+        markField(quotedField, quotedFieldStart, end, quotedStart, quotedEnd);
+        boolean useQuoted = !inQuotes && quotedField + 1 == headerCount;
+        int[] starts = useQuoted ? quotedStart : plainStart;
+        int[] ends = useQuoted ? quotedEnd : plainEnd;
+        Charset charset = ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8;
+        return new InputRequest(value(buffer, starts[0], ends[0], charset), value(buffer, starts[1], ends[1], charset), value(buffer, starts[2], ends[2], charset));
+    }
+
+    private void markField(int column, int start, int end, int[] starts, int[] ends) {
+        if (column < headerCount && slotByColumn[column] >= 0) {
+            starts[slotByColumn[column]] = start;
+            ends[slotByColumn[column]] = end;
+        }
+    }
+
+    private String value(byte[] buffer, int start, int end, Charset charset) {
+        if (start < 0) {
+            return null;
+        }
+        while (start < end && isBlank(buffer[start])) start++;
+        while (end > start && isBlank(buffer[end - 1])) end--;
+        if (start < end && buffer[start] == APOSTROPHE) start++;
+        if (end > start && buffer[end - 1] == APOSTROPHE) end--;
+        while (start < end && isBlank(buffer[start])) start++;
+        while (end > start && isBlank(buffer[end - 1])) end--;
+        int length = end - start;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == QUOTE) {
+                return replaceQuotes(buffer, start, length, charset);
+            }
+        }
+        return new String(buffer, start, length, charset);
+    }
+
+    private String replaceQuotes(byte[] buffer, int start, int length, Charset charset) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = buffer[start + i];
+            scratch[i] = b == QUOTE ? (byte) ' ' : b;
+        }
+        return new String(scratch, 0, length, charset);
+    }
+
+    private static boolean isBlank(byte b) {
+        return (b & 0xFF) <= ' ' || b == QUOTE;
+    }
+
+    private static int lastIndexOf(String[] headers, String header) {
+        for (int i = headers.length - 1; i >= 0; i--) {
+            if (header.equals(headers[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -4,23 +4,36 @@ import com.arun.temporal.worker.model.activity.FileChunk;
 import com.arun.temporal.worker.model.activity.FileChunkListResponse;
 import com.arun.temporal.worker.model.activity.FileHeaderAndTerminator;
 import com.arun.temporal.worker.model.activity.FileMetadata;
+import com.arun.temporal.worker.model.activity.InputCompression;
+import com.arun.temporal.worker.model.activity.SamplingStatistics;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.FluxSink;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 public class FileChunkReader {
 
     private static final String TAB_SEPARATOR = "\t";
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
     private FileChunkReader(){
     }
 
 
     public static FileMetadata getFileMetadata(int sampleLines, long fileSize, String delimiter, InputStream responseStream) throws IOException {
+        return getFileMetadata(sampleLines, fileSize, delimiter, responseStream, InputCompression.NONE);
+    }
+
+    /**
+     * {@code responseStream} holds decompressed text. For compressed input the header is not skipped by offset but
+     * as the first line of the first chunk, so {@code headerLength} is 0.
+     */
+    public static FileMetadata getFileMetadata(int sampleLines, long fileSize, String delimiter, InputStream responseStream, InputCompression compression) throws IOException {
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(responseStream, StandardCharsets.UTF_8))) {
             FileHeaderAndTerminator lineTerminatorSizeAndHeader = detectLineTerminatorSize(responseStream);
             int lineTerminatorSize = lineTerminatorSizeAndHeader.terminatorSize();
@@ -28,36 +41,126 @@ public class FileChunkReader {
                     .limit(sampleLines)
                     .mapToInt(line -> line.getBytes(StandardCharsets.UTF_8).length + lineTerminatorSize)
                     .average().orElse(0));
-            return new FileMetadata(lineTerminatorSize, avgValue, fileSize, fetchCsvHeaders(lineTerminatorSizeAndHeader.header(), delimiter));
+            int headerLength = compression == InputCompression.NONE ? lineTerminatorSizeAndHeader.headerLength() : 0;
+            return new FileMetadata(lineTerminatorSize, avgValue, fileSize, fetchCsvHeaders(lineTerminatorSizeAndHeader.header(), delimiter), headerLength, compression);
+        }
+    }
+
+    /**
+     * Raw cut points every {@code chunkSize} bytes after the header. They are not line aligned; each one has to be
+     * moved to the next line start with {@link #findLineStart(byte[], long)} before the chunks are built.
+     */
+    public static List<Long> getChunkCutPoints(long chunkSize, int totalLines, FileMetadata fileMetadata) {
+        return getChunkCutPoints(chunkSize, Long.MAX_VALUE, totalLines, fileMetadata);
+    }
+
+    /**
+     * Like {@link #getChunkCutPoints(long, int, FileMetadata)}, but each chunk is sized for {@code targetLines}
+     * lines of the line size sampled where it starts, kept within {@code [minChunkSize, maxChunkSize]} bytes.
+     */
+    public static List<Long> getChunkCutPoints(long minChunkSize, long maxChunkSize, int targetLines, FileMetadata fileMetadata) {
+        SamplingStatistics statistics = fileMetadata.samplingStatistics();
+        List<Long> cutPoints = new ArrayList<>();
+        long cutPoint = fileMetadata.headerLength();
+        while (true) {
+            int avgLineSize = statistics == null ? fileMetadata.avgLineSize() : statistics.avgLineSizeAt(cutPoint);
+            cutPoint += Math.max(1, Math.min(Math.max((long) avgLineSize * targetLines, minChunkSize), Math.max(maxChunkSize, minChunkSize)));
+            if (cutPoint >= fileMetadata.fileSize()) {
+                return cutPoints;
+            }
+            cutPoints.add(cutPoint);
         }
     }
 
-    public static FileChunkListResponse getFileChunkList(long chunkSize, int totalLines, FileMetadata fileMetadata) {
-        int avgLineSize = fileMetadata.avgLineSize();
-        int newLineSize = fileMetadata.lineTerminatorSize();
-        long totalBytes = fileMetadata.fileSize();
-        chunkSize = Math.max((long) avgLineSize * totalLines, chunkSize);
+    /**
+     * Sizes (terminator included) of the complete lines in a region read from an arbitrary offset: the bytes up to
+     * the first {@code '\n'} may be the tail of a line and are skipped, as is a last line without terminator.
+     */
+    public static int[] sampleLineSizes(byte[] region) {
+        int[] sizes = new int[16];
+        int count = 0;
+        int lineStart = LineScanner.indexOfNewline(region, 0, region.length) + 1;
+        if (lineStart == 0) {
+            return new int[0];
+        }
+        int newline;
+        while ((newline = LineScanner.indexOfNewline(region, lineStart, region.length)) >= 0) {
+            if (count == sizes.length) {
+                sizes = Arrays.copyOf(sizes, count * 2);
+            }
+            sizes[count++] = newline + 1 - lineStart;
+            lineStart = newline + 1;
+        }
+        return Arrays.copyOf(sizes, count);
+    }
+
+    /**
+     * Regions without a complete line are left out; returns {@code null} when no region has one.
+     */
+    public static SamplingStatistics buildSamplingStatistics(List<Long> regionOffsets, List<int[]> regionLineSizes) {
+        List<Long> offsets = new ArrayList<>();
+        List<Integer> averages = new ArrayList<>();
+        long totalBytes = 0;
+        int[] all = regionLineSizes.stream().flatMapToInt(Arrays::stream).sorted().toArray();
+        if (all.length == 0) {
+            return null;
+        }
+        for (int i = 0; i < regionOffsets.size(); i++) {
+            int[] sizes = regionLineSizes.get(i);
+            if (sizes.length > 0) {
+                long bytes = Arrays.stream(sizes).asLongStream().sum();
+                totalBytes += bytes;
+                offsets.add(regionOffsets.get(i));
+                averages.add((int) Math.ceil((double) bytes / sizes.length));
+            }
+        }
+        return new SamplingStatistics(offsets.size(), all.length, all[0], all[all.length / 2], all[(int) Math.min(all.length - 1, (long) Math.ceil(all.length * 0.9) - 1)],
+                all[all.length - 1], (int) Math.ceil((double) totalBytes / all.length), offsets, averages);
+    }
+
+    /**
+     * Returns the absolute offset of the byte following the first {@code '\n'} in the probe, or -1 when the probe
+     * holds no line terminator.
+     */
+    public static long findLineStart(byte[] probe, long probeStart) {
+        for (int i = 0; i < probe.length; i++) {
+            if (probe[i] == '\n') {
+                return probeStart + i + 1;
+            }
+        }
+        return -1;
+    }
+
+    public static FileChunkListResponse buildChunkList(List<Long> lineStarts, FileMetadata fileMetadata) {
+        long fileSize = fileMetadata.fileSize();
+        List<Long> starts = new ArrayList<>();
+        starts.add((long) fileMetadata.headerLength());
+        lineStarts.stream().sorted().forEach(lineStart -> {
+            if (lineStart < fileSize && lineStart > starts.get(starts.size() - 1)) {
+                starts.add(lineStart);
+            }
+        });
         List<FileChunk> chunks = new ArrayList<>();
-        long startPosition = newLineSize;
-        int chunkId = 1;
-        while (startPosition < totalBytes) {
-            long endPosition = Math.min(startPosition + chunkSize, totalBytes);
-            FileChunk chunk = new FileChunk(
-                    chunkId++,
-                    startPosition,
-                    endPosition,
-                    fileMetadata
-            );
-            chunks.add(chunk);
-            startPosition = endPosition + 1;
+        for (int i = 0; i < starts.size(); i++) {
+            long endOffset = i + 1 < starts.size() ? starts.get(i + 1) - 1 : fileSize - 1;
+            chunks.add(new FileChunk(i + 1, starts.get(i), endOffset, fileMetadata));
         }
         return new FileChunkListResponse(chunks);
     }
 
     public static Flux<String> readDataFromInputStream(InputStream s3ChunkStream, AtomicLong currentPosition, long endOffset) {
+        return readLinesFromInputStream(s3ChunkStream, currentPosition, endOffset, LineView::asString);
+    }
+
+    /**
+     * Streams the lines of a chunk as {@link LineView}s over the read buffer and emits whatever {@code mapper} builds
+     * from each one, so no per-line {@code String} is created unless the mapper asks for it. The view is reused and
+     * must not escape the mapper; the mapper must not return {@code null}.
+     */
+    public static <T> Flux<T> readLinesFromInputStream(InputStream s3ChunkStream, AtomicLong currentPosition, long endOffset, Function<LineView, T> mapper) {
         return Flux.create(sink -> {
-            try (BufferedInputStream bis = new BufferedInputStream(s3ChunkStream, 1024 * 1024)) {
-                processStreamLines(bis, currentPosition, sink, endOffset);
+            try (InputStream inputStream = s3ChunkStream) {
+                processStreamLines(inputStream, currentPosition, sink, endOffset, mapper);
                 sink.complete();
             } catch (IOException e) {
                 sink.error(e);
@@ -70,37 +173,22 @@ public class FileChunkReader {
         return headerLine.trim().toLowerCase().split(splitter);
     }
 
-    private static void processStreamLines(BufferedInputStream bis, AtomicLong currentPosition, FluxSink<String> sink, long endOffset) throws IOException {
-        ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
-        byte[] buffer = new byte[8192];
-        int read;
-        while ((read = bis.read(buffer)) != -1) {
-            for (int i = 0; i < read; i++) {
-                byte b = buffer[i];
-                lineBuffer.write(b);
-                if (b == '\n') {
-                    emitLine(lineBuffer, currentPosition, sink);
-                    lineBuffer.reset();
-                    if((currentPosition.get() - 1) >= endOffset){
-                        sink.complete();
-                        return;
-                    }
-                }
-            }
-        }
-        if (lineBuffer.size() > 0) {
-            emitLine(lineBuffer, currentPosition, sink);
-        }
+    private static <T> void processStreamLines(InputStream inputStream, AtomicLong currentPosition, FluxSink<T> sink, long endOffset, Function<LineView, T> mapper) throws IOException {
+        LineView view = new LineView();
+        new LineScanner(inputStream, READ_BUFFER_SIZE).scan((buffer, offset, length) -> emitLine(view.set(buffer, offset, lineLength(buffer, offset, length)), length, currentPosition, sink, endOffset, mapper));
+    }
+
+    private static int lineLength(byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        if (end > offset && buffer[end - 1] == '\n') end--;
+        if (end > offset && buffer[end - 1] == '\r') end--;
+        return end - offset;
     }
 
-    private static void emitLine(ByteArrayOutputStream lineBuffer, AtomicLong currentPosition, FluxSink<String> sink) {
-        byte[] lineBytes = lineBuffer.toByteArray();
-        int end = lineBytes.length;
-        if (end >= 1 && lineBytes[end - 1] == '\n') end--;
-        if (end >= 1 && lineBytes[end - 1] == '\r') end--;
-        String line = new String(lineBytes, 0, end, StandardCharsets.UTF_8);
-        currentPosition.addAndGet(lineBytes.length);
-        sink.next(line);
+    private static <T> boolean emitLine(LineView view, int rawLength, AtomicLong currentPosition, FluxSink<T> sink, long endOffset, Function<LineView, T> mapper) {
+        currentPosition.addAndGet(rawLength);
+        sink.next(mapper.apply(view));
+        return (currentPosition.get() - 1) < endOffset;
     }
 
     public static FileHeaderAndTerminator detectLineTerminatorSize(InputStream input) throws IOException {
@@ -108,7 +196,9 @@ public class FileChunkReader {
         int curr;
         StringBuilder header = new StringBuilder();
         int lineTerminatorSize = 0;
+        int headerLength = 0;
         while ((curr = input.read()) != -1) {
+            headerLength++;
             if (curr == '\n') {
                 lineTerminatorSize = (prev == '\r') ? 2 : 1;
                 break;
@@ -117,6 +207,6 @@ public class FileChunkReader {
             }
             prev = curr;
         }
-        return new FileHeaderAndTerminator(header.toString(), lineTerminatorSize);
+        return new FileHeaderAndTerminator(header.toString(), lineTerminatorSize, headerLength);
     }
 }
@@ -0,0 +1,168 @@
+package com.arun.temporal.worker.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decodes a sequence of gzip members (plain gzip, multi-member gzip and BGZF). Unlike {@link java.util.zip.GZIPInputStream}
+ * it decides whether another member follows by reading, not by {@code available()}, so members are not dropped when
+ * the source is a network stream that happens to have no buffered bytes at a member boundary.
+ */
+public final class GzipMemberInputStream extends InputStream {
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final InputStream in;
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] input = new byte[64 * 1024];
+    private int inputPosition;
+    private int inputLimit;
+    private boolean inMember;
+    private boolean eof;
+
+    public GzipMemberInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (!eof) {
+            if (!inMember) {
+                if (!readHeader()) {
+                    eof = true;
+                    break;
+                }
+                continue;
+            }
+            int count = inflate(bytes, offset, length);
+            if (count > 0) {
+                crc.update(bytes, offset, count);
+                return count;
+            }
+            if (inflater.finished()) {
+                readTrailer();
+            } else if (inflater.needsInput()) {
+                if (fill() == -1) {
+                    throw new EOFException("Unexpected end of gzip member");
+                }
+                inflater.setInput(input, 0, inputLimit);
+            } else if (inflater.needsDictionary()) {
+                throw new ZipException("Unsupported preset dictionary in gzip member");
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    private int inflate(byte[] bytes, int offset, int length) throws ZipException {
+        try {
+            return inflater.inflate(bytes, offset, length);
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
+
+    private boolean readHeader() throws IOException {
+        int first = readUnsignedByte();
+        if (first == -1) {
+            return false;
+        }
+        if (first != 0x1F || readRequiredByte() != 0x8B || readRequiredByte() != 8) {
+            throw new ZipException("Not in GZIP format");
+        }
+        int flags = readRequiredByte();
+        skipBytes(6);
+        if ((flags & FEXTRA) != 0) {
+            skipBytes(readRequiredByte() | readRequiredByte() << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            skipZeroTerminated();
+        }
+        if ((flags & FCOMMENT) != 0) {
+            skipZeroTerminated();
+        }
+        if ((flags & FHCRC) != 0) {
+            skipBytes(2);
+        }
+        inflater.reset();
+        crc.reset();
+        inflater.setInput(input, inputPosition, inputLimit - inputPosition);
+        inMember = true;
+        return true;
+    }
+
+    private void readTrailer() throws IOException {
+        inputPosition = inputLimit - inflater.getRemaining();
+        long expectedCrc = readIntLittleEndian();
+        long expectedSize = readIntLittleEndian();
+        if (expectedCrc != crc.getValue() || expectedSize != (inflater.getBytesWritten() & 0xFFFFFFFFL)) {
+            throw new ZipException("Corrupt gzip trailer");
+        }
+        inMember = false;
+    }
+
+    private long readIntLittleEndian() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            value |= (long) readRequiredByte() << shift;
+        }
+        return value;
+    }
+
+    private void skipZeroTerminated() throws IOException {
+        while (readRequiredByte() != 0) {
+            // skip
+        }
+    }
+
+    private void skipBytes(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            readRequiredByte();
+        }
+    }
+
+    private int readRequiredByte() throws IOException {
+        int value = readUnsignedByte();
+        if (value == -1) {
+            throw new EOFException("Unexpected end of gzip header");
+        }
+        return value;
+    }
+
+    private int readUnsignedByte() throws IOException {
+        if (inputPosition == inputLimit && fill() == -1) {
+            return -1;
+        }
+        return input[inputPosition++] & 0xFF;
+    }
+
+    private int fill() throws IOException {
+        int read = in.read(input, 0, input.length);
+        inputPosition = 0;
+        inputLimit = Math.max(read, 0);
+        return read;
+    }
+}
@@ -0,0 +1,94 @@
+package com.arun.temporal.worker.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Splits a stream into lines without copying bytes one at a time. Data is read straight into a reusable buffer and
+ * the newline search looks at 8 bytes per step (SWAR over {@code long} words). Lines are handed out as
+ * {@code (buffer, offset, length)} slices including their terminator; a slice is only valid until the handler
+ * returns.
+ */
+public final class LineScanner {
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private final InputStream input;
+    private byte[] buffer;
+
+    @FunctionalInterface
+    public interface LineHandler {
+        /**
+         * @return {@code false} to stop scanning
+         */
+        boolean onLine(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    public LineScanner(InputStream input, int bufferSize) {
+        this.input = input;
+        this.buffer = new byte[Math.max(Long.BYTES, bufferSize)];
+    }
+
+    public void scan(LineHandler handler) throws IOException {
+        int lineStart = 0;
+        int scanFrom = 0;
+        int limit = 0;
+        while (true) {
+            int newline = indexOfNewline(buffer, scanFrom, limit);
+            if (newline >= 0) {
+                int next = newline + 1;
+                if (!handler.onLine(buffer, lineStart, next - lineStart)) {
+                    return;
+                }
+                lineStart = next;
+                scanFrom = next;
+                continue;
+            }
+            if (lineStart > 0) {
+                System.arraycopy(buffer, lineStart, buffer, 0, limit - lineStart);
+                limit -= lineStart;
+                lineStart = 0;
+            }
+            scanFrom = limit;
+            if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = input.read(buffer, limit, buffer.length - limit);
+            if (read == -1) {
+                break;
+            }
+            limit += read;
+        }
+        if (limit > lineStart) {
+            handler.onLine(buffer, lineStart, limit - lineStart);
+        }
+    }
+
+    /**
+     * Index of the first {@code '\n'} in {@code [from, to)}, or -1. A word XOR-ed with all-newline bytes has a zero
+     * byte exactly where a newline was; {@code (x - 0x01..) & ~x & 0x80..} flags the lowest such byte.
+     */
+    static int indexOfNewline(byte[] bytes, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = (long) LONG_VIEW.get(bytes, i) ^ NEWLINES;
+            long found = (word - LOW_BITS) & ~word & HIGH_BITS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,59 @@
+package com.arun.temporal.worker.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable window over one line of the read buffer, without its {@code \n} / {@code \r\n} terminator. The same
+ * instance is repositioned for every line, so it is only valid inside the callback that received it; copy out what
+ * has to outlive it.
+ */
+public final class LineView {
+
+    private byte[] buffer;
+    private int offset;
+    private int length;
+
+    LineView set(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean isAscii() {
+        return isAscii(buffer, offset, length);
+    }
+
+    /**
+     * Decodes the line. Pure ASCII lines are decoded as ISO-8859-1, which is a plain copy into a compact string.
+     */
+    public String asString() {
+        return new String(buffer, offset, length, isAscii() ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return asString();
+    }
+
+    static boolean isAscii(byte[] bytes, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (bytes[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
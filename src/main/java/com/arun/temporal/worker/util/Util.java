@@ -2,6 +2,8 @@ package com.arun.temporal.worker.util;
 
 import org.slf4j.MDC;
 
+import static com.arun.temporal.worker.constant.Constants.BATCH_TOTAL_PREFIX;
+
 public class Util {
 
     private Util() {
@@ -23,4 +25,34 @@ public class Util {
         return chunkId + "_" + batchCount;
     }
 
+    /**
+     * Batch number of a {@code queryId-chunk_batch} id.
+     */
+    public static int getBatchNumber(String queryBatchId) {
+        return Integer.parseInt(queryBatchId.substring(queryBatchId.lastIndexOf('_') + 1));
+    }
+
+    /**
+     * Entry the worker appends to a chunk's completed list once all batches of the chunk were submitted, carrying
+     * their count.
+     */
+    public static String getBatchTotalEntry(int totalBatches) {
+        return BATCH_TOTAL_PREFIX + totalBatches;
+    }
+
+    /**
+     * Batch count of a {@link #getBatchTotalEntry} entry, -1 for any other completed list entry.
+     */
+    public static int getBatchTotal(String completedEntry) {
+        return completedEntry.startsWith(BATCH_TOTAL_PREFIX) ? Integer.parseInt(completedEntry.substring(BATCH_TOTAL_PREFIX.length())) : -1;
+    }
+
+    public static String getChunkStatusKey(String queryId, int chunkId) {
+        return queryId + ":" + chunkId;
+    }
+
+    public static String getChunkCompletedKey(String queryId, int chunkId) {
+        return getChunkStatusKey(queryId, chunkId) + ":completed";
+    }
+
 }
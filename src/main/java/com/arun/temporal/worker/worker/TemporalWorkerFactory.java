@@ -10,6 +10,8 @@ import lombok.Getter;
 
 import java.time.Duration;
 
+import static com.arun.temporal.worker.constant.Constants.AGGREGATION_QUEUE_SUFFIX;
+
 @Singleton
 public class TemporalWorkerFactory {
 
@@ -19,8 +21,11 @@ public class TemporalWorkerFactory {
     @Value("${temporal.queue}")
     String queueName;
 
+    @Value("${temporal.aggregation.max.concurrent.activities:4}")
+    int maxConcurrentAggregations;
+
     public void startWorkerFactory(WorkflowClient workflowClient,
-                                   Class<?> workflowClass,
+                                   Class<?>[] workflowClasses,
                                    Object activities) {
         WorkerOptions options = WorkerOptions.newBuilder()
                 .setMaxConcurrentWorkflowTaskPollers(2)
@@ -32,8 +37,15 @@ public class TemporalWorkerFactory {
                 .build();
         workerFactory = WorkerFactory.newInstance(workflowClient);
         Worker worker = workerFactory.newWorker(queueName, options);
-        worker.registerWorkflowImplementationTypes(workflowClass);
+        worker.registerWorkflowImplementationTypes(workflowClasses);
         worker.registerActivitiesImplementations(activities);
+        // Chunk aggregations wait on batch results for most of their run, so they get their own queue and slots
+        // and can never take the slots the submissions feeding them need.
+        WorkerOptions aggregationOptions = WorkerOptions.newBuilder(options)
+                .setMaxConcurrentActivityExecutionSize(maxConcurrentAggregations)
+                .build();
+        Worker aggregationWorker = workerFactory.newWorker(queueName + AGGREGATION_QUEUE_SUFFIX, aggregationOptions);
+        aggregationWorker.registerActivitiesImplementations(activities);
         workerFactory.start();
     }
 }
@@ -2,6 +2,7 @@ package com.arun.temporal.worker.workflow;
 
 import com.arun.temporal.worker.model.BulkApiRequest;
 import com.arun.temporal.worker.model.BulkWorkflowResponse;
+import com.arun.temporal.worker.model.BulkWorkflowState;
 import io.temporal.workflow.WorkflowInterface;
 import io.temporal.workflow.WorkflowMethod;
 
@@ -14,8 +15,10 @@ public interface BulkWorkflow {
      * Executes the bulk file processing workflow.
      *
      * @param input the input request containing file and processing metadata
+     * @param state progress carried over when a large job continues as new; null (or omitted by the caller) for a
+     *              new job
      * @return a result message with total records processed
      */
     @WorkflowMethod
-    BulkWorkflowResponse executeWorkflow(BulkApiRequest input);
+    BulkWorkflowResponse executeWorkflow(BulkApiRequest input, BulkWorkflowState state);
 }
@@ -4,11 +4,14 @@ import com.arun.temporal.worker.model.activity.*;
 import com.arun.temporal.worker.activities.BulkActivities;
 import com.arun.temporal.worker.model.BulkApiRequest;
 import com.arun.temporal.worker.model.BulkWorkflowResponse;
+import com.arun.temporal.worker.model.BulkWorkflowState;
+import com.arun.temporal.worker.model.ChunkGroupRequest;
+import com.arun.temporal.worker.model.ChunkGroupResult;
 import com.arun.temporal.worker.model.ReportData;
 import com.arun.temporal.worker.util.S3Util;
-import io.temporal.activity.ActivityOptions;
-import io.temporal.common.RetryOptions;
+import io.temporal.activity.LocalActivityOptions;
 import io.temporal.workflow.Async;
+import io.temporal.workflow.ChildWorkflowOptions;
 import io.temporal.workflow.Promise;
 import io.temporal.workflow.Workflow;
 import org.slf4j.Logger;
@@ -16,10 +19,7 @@ import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.arun.temporal.worker.constant.Constants.*;
@@ -28,56 +28,122 @@ import static com.arun.temporal.worker.util.Util.*;
 
 public class BulkWorkflowImpl implements BulkWorkflow {
     private static final Logger logger = LoggerFactory.getLogger(BulkWorkflowImpl.class);
+
+    /**
+     * Workflow version change id of continuing as new once the history is long; runs started before it never do.
+     */
+    static final String CONTINUE_AS_NEW_CHANGE = "continue-as-new";
+
+    /**
+     * Workflow version change id of spreading a job over shard child workflows; runs started before it never do.
+     */
+    static final String CHUNK_SHARDS_CHANGE = "chunk-shards";
+
+    /**
+     * Workflow version change id of running the control-plane steps as local activities; runs started before it keep
+     * running them on the task queue.
+     */
+    static final String LOCAL_CONTROL_ACTIVITIES_CHANGE = "local-control-activities";
+
+    /**
+     * Options of the control-plane steps: reading the worker settings, creating uploads and completing the output
+     * upload are single short calls, so they run as local activities on the worker executing the workflow task,
+     * without a task-queue round trip each.
+     */
+    static final LocalActivityOptions LOCAL_ACTIVITY_OPTIONS = LocalActivityOptions.newBuilder()
+            .setStartToCloseTimeout(Duration.ofMinutes(5))
+            .setScheduleToCloseTimeout(Duration.ofMinutes(15))
+            .setRetryOptions(ChunkRunner.ACTIVITY_OPTIONS.getRetryOptions())
+            .build();
+
     private final BulkActivities bulkActivities;
+    private final BulkActivities aggregationActivities;
+    private final BulkActivities localActivities;
 
     public BulkWorkflowImpl() {
-        ActivityOptions options = ActivityOptions.newBuilder()
-                .setStartToCloseTimeout(Duration.ofMinutes(MAX_ACTIVITY_RUN_TIME_OUT))
-                .setHeartbeatTimeout(Duration.ofMinutes(5))
-                .setRetryOptions(RetryOptions.newBuilder()
-                        .setInitialInterval(Duration.ofSeconds(1))
-                        .setMaximumInterval(Duration.ofMinutes(1))
-                        .setBackoffCoefficient(2.0)
-                        .setMaximumAttempts(3)
-                        .build())
-                .build();
-        this.bulkActivities = Workflow.newActivityStub(BulkActivities.class, options);
+        this(true);
+    }
+
+    /**
+     * @param localControlActivities whether {@code getMaxParallelChunks}, {@code generateUploadId} and
+     *                               {@code finalizeFileUpload} run as local activities rather than on the task queue
+     */
+    BulkWorkflowImpl(boolean localControlActivities) {
+        this.bulkActivities = Workflow.newActivityStub(BulkActivities.class, ChunkRunner.ACTIVITY_OPTIONS);
+        this.aggregationActivities = ChunkRunner.newAggregationStub();
+        this.localActivities = localControlActivities ? Workflow.newLocalActivityStub(BulkActivities.class, LOCAL_ACTIVITY_OPTIONS) : null;
     }
 
     @Override
-    public BulkWorkflowResponse executeWorkflow(BulkApiRequest input) {
-        AtomicLong successfulRecordCount = new AtomicLong(0);
-        AtomicLong totalRecordCount = new AtomicLong(0);
+    public BulkWorkflowResponse executeWorkflow(BulkApiRequest input, BulkWorkflowState state) {
+        AtomicLong successfulRecordCount = new AtomicLong(state != null ? state.successfulRecordCount() : 0);
+        AtomicLong totalRecordCount = new AtomicLong(state != null ? state.totalRecordCount() : 0);
         String workspaceId = input.getWorkspaceId();
         String email = input.getEmailId();
         String currentQueryId = getCurrentQueryId(input.getApiType(), input.getFileName(), input.getOutputFileId());
         setValueInMDCContext(workspaceId, email, input.getRequestId(), currentQueryId, input.getOutputFileId());
         logger.info(currentQueryId);
+        BulkActivities controlActivities = controlActivities();
         String fileInputObjectKey = S3Util.getFileInputObjectKey(S3Util.generateFileNameWithId(input.getFileName(), input.getFileId()), workspaceId, email);
         String finalOutputFileKey = S3Util.getCsvFileOutputObjectKey(S3Util.generateFileNameWithId(input.getFileName(), input.getFileId()), input.getOutputFileId(), workspaceId, email);
         String finalReportFileKey = S3Util.getReportOutputObjectKey(input.getOutputFileId(), workspaceId, email);
-        GenerateUploadIdResponse uploadIdResponse = bulkActivities.generateUploadId(new GenerateUploadIdRequest(finalOutputFileKey));
-        List<PartDetail> partDetails = new CopyOnWriteArrayList<>();
-        List<FileChunk> listOfChunks = bulkActivities.splitFileIntoChunks(new SplitChunkRequest(fileInputObjectKey, input.getDelimiter())).chunks();
-        logger.info("Total Chunks: {} for query id {}", listOfChunks.size(), currentQueryId);
-        ReportData finalReportData = new ReportData();
+        String uploadId;
+        List<FileChunk> listOfChunks;
+        if (state == null) {
+            uploadId = controlActivities.generateUploadId(new GenerateUploadIdRequest(finalOutputFileKey)).uploadId();
+            listOfChunks = bulkActivities.splitFileIntoChunks(new SplitChunkRequest(fileInputObjectKey, input.getDelimiter())).chunks();
+            logger.info("Total Chunks: {} for query id {}", listOfChunks.size(), currentQueryId);
+        } else {
+            uploadId = state.uploadId();
+            listOfChunks = state.remainingChunks();
+            logger.info("Continuing with {} remaining chunks from chunk {} for query id {}", listOfChunks.size(), state.nextChunkNumber(), currentQueryId);
+        }
+        ReportData finalReportData = state != null && state.reportData() != null ? state.reportData() : new ReportData();
         boolean isRequiredReport = REPORT_HEADER.equalsIgnoreCase(input.getReportRequired());
-        int maxParallelChunks = bulkActivities.getMaxParallelChunks().maxParallelChunks();
-        List<Promise<ChunkProcessingResult>> running = new ArrayList<>();
-        Queue<FileChunk> chunkQueue = new LinkedList<>(listOfChunks);
-        startChunkProcessing(running, chunkQueue, input, maxParallelChunks, uploadIdResponse.uploadId(), totalRecordCount);
-        while (!running.isEmpty()) {
-            Promise.anyOf(running).get();
-            List<Promise<ChunkProcessingResult>> completed = running.stream()
-                    .filter(Promise::isCompleted)
-                    .toList();
-            processCompleted(completed, successfulRecordCount, finalReportData, isRequiredReport, partDetails);
-            running.removeAll(completed);
-            startChunkProcessing(running, chunkQueue, input, maxParallelChunks, uploadIdResponse.uploadId(), totalRecordCount);
+        MaxParallelChunkResponse parallelChunkResponse = controlActivities.getMaxParallelChunks();
+        int maxParallelChunks = parallelChunkResponse.maxParallelChunks();
+        int maxParallelSubmissions = Math.max(1, parallelChunkResponse.maxParallelSubmissions());
+        ChunkOutputPlan outputPlan;
+        if (state == null) {
+            outputPlan = new ChunkOutputPlan(finalOutputFileKey, uploadId, listOfChunks.size(), parallelChunkResponse.directUpload());
+            if (outputPlan.groupCount() > 1) {
+                logger.info("Composing {} chunks through {} intermediate objects for query id {}", listOfChunks.size(), outputPlan.groupCount(), currentQueryId);
+                for (int group = 0; group < outputPlan.groupCount(); group++) {
+                    outputPlan.addGroupUpload(controlActivities.generateUploadId(new GenerateUploadIdRequest(outputPlan.groupKey(group))).uploadId());
+                }
+            }
+        } else {
+            outputPlan = new ChunkOutputPlan(finalOutputFileKey, uploadId, state.outputPlan(), parallelChunkResponse.directUpload());
+        }
+        int maxHistoryLength = parallelChunkResponse.maxHistoryLength();
+        List<Promise<ComposeUploadResponse>> composing = new ArrayList<>();
+        int shardCount = state == null ? shardCount(parallelChunkResponse, listOfChunks) : 1;
+        if (shardCount > 1 && Workflow.getVersion(CHUNK_SHARDS_CHANGE, Workflow.DEFAULT_VERSION, 1) == Workflow.DEFAULT_VERSION) {
+            shardCount = 1;
+        }
+        List<FileChunk> remainingChunks;
+        if (shardCount > 1) {
+            logger.info("Processing {} chunks in {} child workflows for query id {}", listOfChunks.size(), shardCount, currentQueryId);
+            processShards(input, uploadId, listOfChunks, shardCount, parallelChunkResponse, outputPlan, totalRecordCount,
+                    successfulRecordCount, finalReportData, isRequiredReport, composing);
+            remainingChunks = List.of();
+        } else {
+            ChunkRunner runner = new ChunkRunner(bulkActivities, aggregationActivities, input, outputPlan, listOfChunks, maxParallelChunks, maxParallelSubmissions,
+                    ChunkRunner.isPipelined());
+            boolean continuesAsNew = Workflow.getVersion(CONTINUE_AS_NEW_CHANGE, Workflow.DEFAULT_VERSION, 1) != Workflow.DEFAULT_VERSION;
+            remainingChunks = runner.run(result -> processCompleted(result, successfulRecordCount, finalReportData, isRequiredReport, outputPlan, composing),
+                    totalRecordCount, () -> continuesAsNew && ChunkRunner.isHistoryFull(maxHistoryLength));
+        }
+        composing.forEach(composed -> outputPlan.addFinalParts(composed.get().parts()));
+        if (!remainingChunks.isEmpty()) {
+            logger.info("History has {} events, continuing as new with {} chunks left for query id {}", Workflow.getInfo().getHistoryLength(), remainingChunks.size(), currentQueryId);
+            BulkWorkflow next = Workflow.newContinueAsNewStub(BulkWorkflow.class);
+            return next.executeWorkflow(input, BulkWorkflowState.of(uploadId, remainingChunks, outputPlan.state(),
+                    totalRecordCount.get(), successfulRecordCount.get(), finalReportData));
         }
         logger.info("Total records Submit: {}", totalRecordCount.get());
         logger.info("Total records Processed: {}", successfulRecordCount.get());
-        bulkActivities.finalizeFileUpload(new CompleteMultipartUploadRequest(finalOutputFileKey, uploadIdResponse.uploadId(), partDetails));
+        controlActivities.finalizeFileUpload(new CompleteMultipartUploadRequest(finalOutputFileKey, uploadId, outputPlan.finalParts()));
         if (REPORT_HEADER.equalsIgnoreCase(input.getReportRequired())) {
             logger.info("generating cass report");
             bulkActivities.createAndUploadReport(new CreateReportRequest(finalReportFileKey + REPORT_NAME, finalReportData, input.getReportDetail(), "CASS"));
@@ -86,33 +152,72 @@ public class BulkWorkflowImpl implements BulkWorkflow {
         return BulkWorkflowResponse.builder().apiType(input.getApiType()).header(input.getReportRequired()).emailId(input.getEmailId()).workspaceId(input.getWorkspaceId()).fileId(input.getFileId()).fileName(input.getFileName()).outputFileId(input.getOutputFileId()).build();
     }
 
-    private void startChunkProcessing(List<Promise<ChunkProcessingResult>> running, Queue<FileChunk> chunkQueue, BulkApiRequest input,
-                                      int maxParallelChunk, String uploadId, AtomicLong totalRecordCount) {
-        while (running.size() < maxParallelChunk && !chunkQueue.isEmpty()) {
-            FileChunk next = chunkQueue.poll();
-            ChunkSubmitResult totalBatch = bulkActivities.uploadChunk(next, input);
-			logger.info("Submitted chunk {} Completed with {} records and {} batches.", next.chunkNumber(), totalBatch.totalRecords(), totalBatch.totalBatches());
-            totalRecordCount.addAndGet(totalBatch.totalRecords());
-            running.add(startChunkAsync(next, input, uploadId, totalBatch.totalBatches()));
+    /**
+     * The stub of the control-plane steps; records the version on first use, so call it before the first of them.
+     */
+    private BulkActivities controlActivities() {
+        if (localActivities != null
+                && Workflow.getVersion(LOCAL_CONTROL_ACTIVITIES_CHANGE, Workflow.DEFAULT_VERSION, 1) != Workflow.DEFAULT_VERSION) {
+            return localActivities;
         }
+        return bulkActivities;
     }
 
-
-    private void processCompleted(List<Promise<ChunkProcessingResult>> completed, AtomicLong successfulRecordCount, ReportData finalReportData, boolean isRequiredReport, List<PartDetail> partDetails) {
-        completed.forEach(promise -> {
-            ChunkProcessingResult result = promise.get();
-            logger.info("chunk completed {} total batch in chunk {} total record in chunk {}", result.id(), result.totalBatchCount(), result.totalRecordCount());
-            successfulRecordCount.addAndGet(result.totalRecordCount());
+    /**
+     * Splits the chunks into {@code shardCount} contiguous shards, each processed by a child workflow with the full
+     * per-worker parallelism, so a huge file is spread over as many workers as there are shards. The parts of each
+     * shard are recorded in the job's plan here, as a group of chunks may span two shards.
+     */
+    private void processShards(BulkApiRequest input, String uploadId, List<FileChunk> chunks, int shardCount, MaxParallelChunkResponse parallelChunkResponse,
+                               ChunkOutputPlan outputPlan, AtomicLong totalRecordCount, AtomicLong successfulRecordCount, ReportData finalReportData,
+                               boolean isRequiredReport, List<Promise<ComposeUploadResponse>> composing) {
+        String workflowId = Workflow.getInfo().getWorkflowId();
+        int shardSize = Math.ceilDiv(chunks.size(), shardCount);
+        List<Promise<ChunkGroupResult>> shards = new ArrayList<>(shardCount);
+        for (int from = 0; from < chunks.size(); from += shardSize) {
+            List<FileChunk> shard = chunks.subList(from, Math.min(chunks.size(), from + shardSize));
+            ChunkGroupRequest request = ChunkGroupRequest.of(input, uploadId, shard, outputPlan.reserve(shard.stream().map(FileChunk::chunkNumber).toList()),
+                    parallelChunkResponse.directUpload(), parallelChunkResponse.maxParallelChunks(), parallelChunkResponse.maxParallelSubmissions(),
+                    parallelChunkResponse.maxHistoryLength());
+            ChunkGroupWorkflow child = Workflow.newChildWorkflowStub(ChunkGroupWorkflow.class, ChildWorkflowOptions.newBuilder()
+                    .setWorkflowId(workflowId + "-shard-" + shards.size())
+                    .build());
+            shards.add(Async.function(child::processChunkGroup, request));
+        }
+        for (Promise<ChunkGroupResult> shard : shards) {
+            ChunkGroupResult result = shard.get();
+            totalRecordCount.addAndGet(result.totalRecordCount());
+            successfulRecordCount.addAndGet(result.successfulRecordCount());
             finalReportData.addReportData(result.reportData(), isRequiredReport);
-            partDetails.add(new PartDetail(result.id(), result.uploadTagId()));
-        });
+            result.chunks().forEach(chunk -> compose(outputPlan.addChunkParts(chunk.chunkNumber(), chunk.parts()), composing));
+        }
+    }
+
+    /**
+     * The number of child workflows to spread the job over: one per {@code shardSize} bytes of input, at most
+     * {@code maxShards} and never more than there are chunks.
+     */
+    static int shardCount(MaxParallelChunkResponse parallelChunkResponse, List<FileChunk> chunks) {
+        if (parallelChunkResponse.maxShards() <= 1 || parallelChunkResponse.shardSize() <= 0 || chunks.size() <= 1) {
+            return 1;
+        }
+        long inputSize = chunks.getLast().endOffset() + 1;
+        long bySize = Math.ceilDiv(inputSize, parallelChunkResponse.shardSize());
+        return (int) Math.min(Math.min(parallelChunkResponse.maxShards(), chunks.size()), bySize);
     }
 
-    private Promise<ChunkProcessingResult> startChunkAsync(
-            FileChunk state,
-            BulkApiRequest input,
-            String uploadId,
-            int totalBatch) {
-        return Async.function(() -> bulkActivities.processChunk(new ProcessChunkRequest(state.chunkNumber(), uploadId, totalBatch, input)));
+    private void processCompleted(ChunkProcessingResult result, AtomicLong successfulRecordCount, ReportData finalReportData, boolean isRequiredReport,
+                                  ChunkOutputPlan outputPlan, List<Promise<ComposeUploadResponse>> composing) {
+        logger.info("chunk completed {} total batch in chunk {} total record in chunk {}", result.id(), result.totalBatchCount(), result.totalRecordCount());
+        successfulRecordCount.addAndGet(result.totalRecordCount());
+        finalReportData.addReportData(result.reportData(), isRequiredReport);
+        List<PartDetail> parts = result.parts() != null ? result.parts() : List.of(new PartDetail(result.id(), result.uploadTagId()));
+        compose(outputPlan.addChunkParts(result.id(), parts), composing);
+    }
+
+    private void compose(ComposeUploadRequest composeRequest, List<Promise<ComposeUploadResponse>> composing) {
+        if (composeRequest != null) {
+            composing.add(Async.function(bulkActivities::composeUpload, composeRequest));
+        }
     }
 }
@@ -0,0 +1,23 @@
+package com.arun.temporal.worker.workflow;
+
+import com.arun.temporal.worker.model.ChunkGroupRequest;
+import com.arun.temporal.worker.model.ChunkGroupResult;
+import io.temporal.workflow.WorkflowInterface;
+import io.temporal.workflow.WorkflowMethod;
+
+/**
+ * Child workflow processing one shard of a job's chunks, started by {@link BulkWorkflow} for files large enough to be
+ * spread over several workers. Like the job workflow, it continues as new once its history is long, so a shard of any
+ * size stays within the history limit.
+ */
+@WorkflowInterface
+public interface ChunkGroupWorkflow {
+    /**
+     * Submits and aggregates the chunks of the shard.
+     *
+     * @param request the shard's chunks and its position in the job's part allocation
+     * @return the parts of each chunk, for the parent to compose and finalize, and the shard's totals
+     */
+    @WorkflowMethod
+    ChunkGroupResult processChunkGroup(ChunkGroupRequest request);
+}
@@ -0,0 +1,64 @@
+package com.arun.temporal.worker.workflow;
+
+import com.arun.temporal.worker.activities.BulkActivities;
+import com.arun.temporal.worker.model.BulkApiRequest;
+import com.arun.temporal.worker.model.ChunkGroupRequest;
+import com.arun.temporal.worker.model.ChunkGroupResult;
+import com.arun.temporal.worker.model.ReportData;
+import com.arun.temporal.worker.model.activity.FileChunk;
+import com.arun.temporal.worker.model.activity.PartDetail;
+import com.arun.temporal.worker.util.S3Util;
+import io.temporal.workflow.Workflow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.arun.temporal.worker.constant.Constants.REPORT_HEADER;
+import static com.arun.temporal.worker.util.Util.*;
+
+public class ChunkGroupWorkflowImpl implements ChunkGroupWorkflow {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkGroupWorkflowImpl.class);
+    private final BulkActivities bulkActivities;
+    private final BulkActivities aggregationActivities;
+
+    public ChunkGroupWorkflowImpl() {
+        this.bulkActivities = Workflow.newActivityStub(BulkActivities.class, ChunkRunner.ACTIVITY_OPTIONS);
+        this.aggregationActivities = ChunkRunner.newAggregationStub();
+    }
+
+    @Override
+    public ChunkGroupResult processChunkGroup(ChunkGroupRequest request) {
+        BulkApiRequest input = request.input();
+        String currentQueryId = getCurrentQueryId(input.getApiType(), input.getFileName(), input.getOutputFileId());
+        setValueInMDCContext(input.getWorkspaceId(), input.getEmailId(), input.getRequestId(), currentQueryId, input.getOutputFileId());
+        logger.info("Processing {} chunks from chunk {} for query id {}", request.chunkStarts().size(), request.firstChunkNumber(), currentQueryId);
+        String finalOutputFileKey = S3Util.getCsvFileOutputObjectKey(S3Util.generateFileNameWithId(input.getFileName(), input.getFileId()),
+                input.getOutputFileId(), input.getWorkspaceId(), input.getEmailId());
+        ChunkOutputPlan outputPlan = new ChunkOutputPlan(finalOutputFileKey, request.uploadId(), request.outputPlan(), request.directUpload());
+        boolean isRequiredReport = REPORT_HEADER.equalsIgnoreCase(input.getReportRequired());
+        ChunkGroupResult progress = request.progress();
+        AtomicLong totalRecordCount = new AtomicLong(progress != null ? progress.totalRecordCount() : 0);
+        AtomicLong successfulRecordCount = new AtomicLong(progress != null ? progress.successfulRecordCount() : 0);
+        ReportData reportData = progress != null && progress.reportData() != null ? progress.reportData() : new ReportData();
+        List<ChunkGroupResult.ChunkParts> chunkParts = new ArrayList<>(progress != null ? progress.chunks() : List.of());
+        ChunkRunner runner = new ChunkRunner(bulkActivities, aggregationActivities, input, outputPlan, request.chunks(),
+                request.maxParallelChunks(), request.maxParallelSubmissions(), true);
+        List<FileChunk> remainingChunks = runner.run(result -> {
+            logger.info("chunk completed {} total batch in chunk {} total record in chunk {}", result.id(), result.totalBatchCount(), result.totalRecordCount());
+            successfulRecordCount.addAndGet(result.totalRecordCount());
+            reportData.addReportData(result.reportData(), isRequiredReport);
+            List<PartDetail> parts = result.parts() != null ? result.parts() : List.of(new PartDetail(result.id(), result.uploadTagId()));
+            chunkParts.add(new ChunkGroupResult.ChunkParts(result.id(), parts));
+        }, totalRecordCount, () -> ChunkRunner.isHistoryFull(request.maxHistoryLength()));
+        ChunkGroupResult result = new ChunkGroupResult(chunkParts, totalRecordCount.get(), successfulRecordCount.get(), reportData);
+        if (!remainingChunks.isEmpty()) {
+            logger.info("History has {} events, continuing as new with {} chunks left for query id {}", Workflow.getInfo().getHistoryLength(), remainingChunks.size(), currentQueryId);
+            ChunkGroupWorkflow next = Workflow.newContinueAsNewStub(ChunkGroupWorkflow.class);
+            return next.processChunkGroup(request.continueWith(remainingChunks, outputPlan.state(), result));
+        }
+        return result;
+    }
+}
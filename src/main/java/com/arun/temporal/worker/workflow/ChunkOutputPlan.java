@@ -0,0 +1,163 @@
+package com.arun.temporal.worker.workflow;
+
+import com.arun.temporal.worker.model.BulkApiRequest;
+import com.arun.temporal.worker.model.OutputPlanState;
+import com.arun.temporal.worker.model.activity.ComposeUploadRequest;
+import com.arun.temporal.worker.model.activity.PartDetail;
+import com.arun.temporal.worker.model.activity.ProcessChunkRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.arun.temporal.worker.constant.Constants.MAX_UPLOAD_PARTS;
+
+/**
+ * Allocates the output parts of a job's chunks by their position in the chunk list, independent of
+ * {@code FileChunk.chunkNumber}.
+ * <p>
+ * Up to {@value com.arun.temporal.worker.constant.Constants#MAX_UPLOAD_PARTS} chunks are written into the final
+ * upload, each into an equal range of its part numbers. Larger jobs are split into consecutive groups of chunks; each
+ * group is assembled in an intermediate upload of its own, with its chunks sharing that upload's part numbers, and is
+ * copied into an equal range of the final upload once all its chunks are done.
+ * <p>
+ * Workflow state only: it makes no activity calls and must stay deterministic.
+ */
+final class ChunkOutputPlan {
+
+    private final String finalKey;
+    private final String finalUploadId;
+    private final boolean directUpload;
+    private final int chunkCount;
+    private final int chunksPerGroup;
+    private final int partsPerChunk;
+    private final int partsPerGroup;
+    private final List<String> groupUploadIds;
+    private final List<List<PartDetail>> groupParts;
+    private final int[] pendingChunks;
+    private final Map<Integer, Integer> chunkIndexByNumber = new HashMap<>();
+    private final List<PartDetail> finalParts = new ArrayList<>();
+    private int nextChunkIndex;
+
+    ChunkOutputPlan(String finalKey, String finalUploadId, int chunkCount, boolean directUpload) {
+        this.finalKey = finalKey;
+        this.finalUploadId = finalUploadId;
+        this.directUpload = directUpload;
+        chunkCount = Math.max(1, chunkCount);
+        this.chunkCount = chunkCount;
+        int groupCount = Math.ceilDiv(chunkCount, MAX_UPLOAD_PARTS);
+        this.chunksPerGroup = Math.ceilDiv(chunkCount, groupCount);
+        this.partsPerChunk = MAX_UPLOAD_PARTS / chunksPerGroup;
+        this.partsPerGroup = MAX_UPLOAD_PARTS / groupCount;
+        this.groupUploadIds = new ArrayList<>(groupCount);
+        this.groupParts = new ArrayList<>(groupCount);
+        this.pendingChunks = new int[groupCount];
+        for (int group = 0; group < groupCount; group++) {
+            groupParts.add(new ArrayList<>());
+            pendingChunks[group] = Math.min(chunksPerGroup, chunkCount - group * chunksPerGroup);
+        }
+    }
+
+    /**
+     * The plan of a previous run, continued where {@link #state()} left it.
+     */
+    ChunkOutputPlan(String finalKey, String finalUploadId, OutputPlanState state, boolean directUpload) {
+        this(finalKey, finalUploadId, state.chunkCount(), directUpload);
+        groupUploadIds.addAll(state.groupUploadIds());
+        for (int group = 0; group < groupCount(); group++) {
+            groupParts.get(group).addAll(state.groupParts().get(group));
+            pendingChunks[group] = state.pendingChunks().get(group);
+        }
+        finalParts.addAll(state.finalParts());
+        nextChunkIndex = state.nextChunkIndex();
+    }
+
+    /**
+     * The plan to carry into a new run; only complete while no chunk is running and no group is being composed.
+     */
+    OutputPlanState state() {
+        return new OutputPlanState(chunkCount, nextChunkIndex, List.copyOf(groupUploadIds),
+                groupParts.stream().map(List::copyOf).toList(), Arrays.stream(pendingChunks).boxed().toList(), List.copyOf(finalParts));
+    }
+
+    /**
+     * Allocates the next chunks, in order, to a shard processed by a child workflow. The returned state starts a plan
+     * at the first of them for the child to build their requests from; their parts are recorded here with
+     * {@link #addChunkParts} once the shard is done.
+     */
+    OutputPlanState reserve(List<Integer> chunkNumbers) {
+        OutputPlanState shard = new OutputPlanState(chunkCount, nextChunkIndex, List.copyOf(groupUploadIds),
+                groupParts.stream().map(parts -> List.<PartDetail>of()).toList(), Arrays.stream(pendingChunks).boxed().toList(), List.of());
+        chunkNumbers.forEach(chunkNumber -> chunkIndexByNumber.put(chunkNumber, nextChunkIndex++));
+        return shard;
+    }
+
+    int groupCount() {
+        return pendingChunks.length;
+    }
+
+    int partsPerChunk() {
+        return partsPerChunk;
+    }
+
+    /**
+     * The intermediate object of {@code group}; only used when there is more than one group.
+     */
+    String groupKey(int group) {
+        return finalKey + "group" + group;
+    }
+
+    /**
+     * Sets the upload the chunks of {@code group} are written into; groups are registered in order.
+     */
+    void addGroupUpload(String uploadId) {
+        groupUploadIds.add(uploadId);
+    }
+
+    /**
+     * The request for the next chunk; chunks must be started in the order of the chunk list.
+     */
+    ProcessChunkRequest requestFor(int chunkNumber, int totalBatch, BulkApiRequest input) {
+        int chunkIndex = nextChunkIndex++;
+        chunkIndexByNumber.put(chunkNumber, chunkIndex);
+        int firstPartNumber = chunkIndex % chunksPerGroup * partsPerChunk + 1;
+        if (groupCount() == 1) {
+            return new ProcessChunkRequest(chunkNumber, finalUploadId, totalBatch, input, firstPartNumber, partsPerChunk, directUpload);
+        }
+        int group = chunkIndex / chunksPerGroup;
+        return new ProcessChunkRequest(chunkNumber, groupUploadIds.get(group), totalBatch, input, firstPartNumber, partsPerChunk, directUpload,
+                groupKey(group));
+    }
+
+    /**
+     * Records the parts a chunk produced.
+     *
+     * @return the request composing the chunk's group into the final upload once this was the group's last chunk,
+     * otherwise null
+     */
+    ComposeUploadRequest addChunkParts(int chunkNumber, List<PartDetail> parts) {
+        if (groupCount() == 1) {
+            finalParts.addAll(parts);
+            return null;
+        }
+        int group = chunkIndexByNumber.get(chunkNumber) / chunksPerGroup;
+        groupParts.get(group).addAll(parts);
+        if (--pendingChunks[group] > 0) {
+            return null;
+        }
+        List<PartDetail> sourceParts = List.copyOf(groupParts.get(group));
+        groupParts.get(group).clear();
+        return new ComposeUploadRequest(groupKey(group), groupUploadIds.get(group), sourceParts,
+                finalKey, finalUploadId, group * partsPerGroup + 1, partsPerGroup);
+    }
+
+    void addFinalParts(List<PartDetail> parts) {
+        finalParts.addAll(parts);
+    }
+
+    List<PartDetail> finalParts() {
+        return finalParts;
+    }
+}
@@ -0,0 +1,209 @@
+package com.arun.temporal.worker.workflow;
+
+import com.arun.temporal.worker.activities.BulkActivities;
+import com.arun.temporal.worker.model.BulkApiRequest;
+import com.arun.temporal.worker.model.activity.ChunkProcessingResult;
+import com.arun.temporal.worker.model.activity.ChunkSubmitResult;
+import com.arun.temporal.worker.model.activity.FileChunk;
+import com.arun.temporal.worker.model.activity.ProcessChunkRequest;
+import io.temporal.activity.ActivityOptions;
+import io.temporal.common.RetryOptions;
+import io.temporal.workflow.Async;
+import io.temporal.workflow.CancellationScope;
+import io.temporal.workflow.Promise;
+import io.temporal.workflow.Workflow;
+import io.temporal.workflow.WorkflowInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static com.arun.temporal.worker.constant.Constants.*;
+
+/**
+ * Runs a list of chunks through {@code uploadChunk} and {@code processChunk}, keeping up to
+ * {@code maxParallelChunks} chunks aggregating, of which up to {@code maxParallelSubmissions} are still being
+ * submitted. Shared by the job workflow and the shard child workflows.
+ * <p>
+ * Without {@code pipelined} the chunks run as they did before the workflow version
+ * {@value #PIPELINED_CHUNKS_CHANGE}: each chunk is submitted on the workflow thread, and its aggregation is started
+ * on the workflow's task queue with the batch total known. Workflows started before that version replay this way.
+ * <p>
+ * Workflow code only: it must stay deterministic.
+ */
+final class ChunkRunner {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkRunner.class);
+
+    /**
+     * Workflow version change id of starting a chunk's aggregation together with its submission.
+     */
+    static final String PIPELINED_CHUNKS_CHANGE = "pipelined-chunks";
+
+    /**
+     * Workflow version change id of cancelling a chunk's aggregation when its submission failed.
+     */
+    static final String CANCEL_ORPHANED_AGGREGATION_CHANGE = "cancel-orphaned-aggregation";
+
+    static final ActivityOptions ACTIVITY_OPTIONS = ActivityOptions.newBuilder()
+            .setStartToCloseTimeout(Duration.ofMinutes(MAX_ACTIVITY_RUN_TIME_OUT))
+            .setHeartbeatTimeout(Duration.ofMinutes(5))
+            .setRetryOptions(RetryOptions.newBuilder()
+                    .setInitialInterval(Duration.ofSeconds(1))
+                    .setMaximumInterval(Duration.ofMinutes(1))
+                    .setBackoffCoefficient(2.0)
+                    .setMaximumAttempts(3)
+                    .build())
+            .build();
+
+    private final BulkActivities bulkActivities;
+    private final BulkActivities aggregationActivities;
+    private final BulkApiRequest input;
+    private final ChunkOutputPlan outputPlan;
+    private final int maxParallelChunks;
+    private final int maxParallelSubmissions;
+    private final boolean pipelined;
+    private final Queue<FileChunk> chunkQueue;
+    private final List<Promise<ChunkProcessingResult>> running = new ArrayList<>();
+    private final Map<Promise<ChunkSubmitResult>, Submission> submitting = new LinkedHashMap<>();
+
+    /**
+     * A chunk being submitted and the scope its aggregation was started in.
+     */
+    private record Submission(FileChunk chunk, CancellationScope aggregation) {
+    }
+
+    ChunkRunner(BulkActivities bulkActivities, BulkActivities aggregationActivities, BulkApiRequest input, ChunkOutputPlan outputPlan,
+                List<FileChunk> chunks, int maxParallelChunks, int maxParallelSubmissions, boolean pipelined) {
+        this.bulkActivities = bulkActivities;
+        this.aggregationActivities = aggregationActivities;
+        this.input = input;
+        this.outputPlan = outputPlan;
+        this.chunkQueue = new LinkedList<>(chunks);
+        this.maxParallelChunks = maxParallelChunks;
+        this.maxParallelSubmissions = Math.max(1, maxParallelSubmissions);
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * Whether this run of the workflow pipelines its chunks; records the version on first use, so call it at the
+     * point the chunks are about to start.
+     */
+    static boolean isPipelined() {
+        return Workflow.getVersion(PIPELINED_CHUNKS_CHANGE, Workflow.DEFAULT_VERSION, 1) != Workflow.DEFAULT_VERSION;
+    }
+
+    /**
+     * The stub {@code processChunk} runs through: the workflow's task queue with the
+     * {@value com.arun.temporal.worker.constant.Constants#AGGREGATION_QUEUE_SUFFIX} suffix.
+     */
+    static BulkActivities newAggregationStub() {
+        return Workflow.newActivityStub(BulkActivities.class, ActivityOptions.newBuilder(ACTIVITY_OPTIONS)
+                .setTaskQueue(Workflow.getInfo().getTaskQueue() + AGGREGATION_QUEUE_SUFFIX)
+                .build());
+    }
+
+    /**
+     * Whether the history is long enough to stop starting chunks; the run then drains the running ones and continues
+     * as new with the rest. Checked only after the first chunks of a run were started, so every run makes progress.
+     */
+    static boolean isHistoryFull(int maxHistoryLength) {
+        WorkflowInfo info = Workflow.getInfo();
+        return (maxHistoryLength > 0 && info.getHistoryLength() >= maxHistoryLength) || info.isContinueAsNewSuggested();
+    }
+
+    /**
+     * Runs the chunks, passing each aggregated chunk to {@code onCompleted} and adding submitted records to
+     * {@code totalRecordCount}. Once {@code stop} holds, checked after the first chunks were started, no further
+     * chunk is started and the running ones are drained.
+     *
+     * @return the chunks that were not started, in order
+     */
+    List<FileChunk> run(Consumer<ChunkProcessingResult> onCompleted, AtomicLong totalRecordCount, BooleanSupplier stop) {
+        startChunkProcessing(totalRecordCount);
+        boolean stopped = false;
+        while (!running.isEmpty() || !submitting.isEmpty()) {
+            List<Promise<?>> pending = new ArrayList<>(submitting.keySet());
+            pending.addAll(running);
+            Promise.anyOf(pending.toArray(Promise[]::new)).get();
+            processSubmitted(totalRecordCount);
+            List<Promise<ChunkProcessingResult>> completed = running.stream()
+                    .filter(Promise::isCompleted)
+                    .toList();
+            completed.forEach(promise -> onCompleted.accept(promise.get()));
+            running.removeAll(completed);
+            stopped = stopped || stop.getAsBoolean();
+            if (!stopped) {
+                startChunkProcessing(totalRecordCount);
+            }
+        }
+        return new ArrayList<>(chunkQueue);
+    }
+
+    /**
+     * Starts the next chunks while both a submission and an aggregation slot are free. The aggregation of a chunk is
+     * started together with its submission, with the batch total still unknown, so it writes results as soon as the
+     * first batches complete instead of waiting for the whole chunk to be submitted. The aggregation runs in its own
+     * cancellation scope, so it can be cancelled when the submission fails for good.
+     */
+    private void startChunkProcessing(AtomicLong totalRecordCount) {
+        if (!pipelined) {
+            startChunkProcessingSerially(totalRecordCount);
+            return;
+        }
+        while (submitting.size() < maxParallelSubmissions && running.size() < maxParallelChunks && !chunkQueue.isEmpty()) {
+            FileChunk next = chunkQueue.poll();
+            Promise<ChunkSubmitResult> submitted = Async.function(() -> bulkActivities.uploadChunk(next, input));
+            CancellationScope aggregation = Workflow.newCancellationScope(
+                    () -> running.add(startChunkAsync(aggregationActivities, outputPlan.requestFor(next.chunkNumber(), UNKNOWN_TOTAL_BATCHES, input))));
+            aggregation.run();
+            submitting.put(submitted, new Submission(next, aggregation));
+        }
+    }
+
+    private void startChunkProcessingSerially(AtomicLong totalRecordCount) {
+        while (running.size() < maxParallelChunks && !chunkQueue.isEmpty()) {
+            FileChunk next = chunkQueue.poll();
+            ChunkSubmitResult totalBatch = bulkActivities.uploadChunk(next, input);
+            logger.info("Submitted chunk {} Completed with {} records and {} batches.", next.chunkNumber(), totalBatch.totalRecords(), totalBatch.totalBatches());
+            totalRecordCount.addAndGet(totalBatch.totalRecords());
+            running.add(startChunkAsync(bulkActivities, outputPlan.requestFor(next.chunkNumber(), totalBatch.totalBatches(), input)));
+        }
+    }
+
+    /**
+     * Records the chunks whose submission completed. A submission that failed after its retries fails the run; its
+     * aggregation, which would otherwise wait on the aggregation queue for batches that never come, is cancelled
+     * first.
+     */
+    private void processSubmitted(AtomicLong totalRecordCount) {
+        Iterator<Map.Entry<Promise<ChunkSubmitResult>, Submission>> iterator = submitting.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Promise<ChunkSubmitResult>, Submission> entry = iterator.next();
+            if (entry.getKey().isCompleted()) {
+                if (entry.getKey().getFailure() != null
+                        && Workflow.getVersion(CANCEL_ORPHANED_AGGREGATION_CHANGE, Workflow.DEFAULT_VERSION, 1) != Workflow.DEFAULT_VERSION) {
+                    logger.warn("Submission of chunk {} failed, cancelling its aggregation", entry.getValue().chunk().chunkNumber());
+                    entry.getValue().aggregation().cancel();
+                }
+                ChunkSubmitResult totalBatch = entry.getKey().get();
+                logger.info("Submitted chunk {} Completed with {} records and {} batches.", entry.getValue().chunk().chunkNumber(), totalBatch.totalRecords(), totalBatch.totalBatches());
+                totalRecordCount.addAndGet(totalBatch.totalRecords());
+                iterator.remove();
+            }
+        }
+    }
+
+    private static Promise<ChunkProcessingResult> startChunkAsync(BulkActivities activities, ProcessChunkRequest request) {
+        return Async.function(() -> activities.processChunk(request));
+    }
+}
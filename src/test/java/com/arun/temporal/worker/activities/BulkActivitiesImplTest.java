@@ -4,16 +4,27 @@ import com.arun.temporal.worker.configuration.RequestConfiguration;
 import com.arun.temporal.worker.model.*;
 import com.arun.temporal.worker.model.activity.*;
 import com.arun.temporal.worker.configuration.AwsConfiguration;
+import com.arun.temporal.worker.kafka.KafkaEventProducer;
+import com.arun.temporal.worker.redis.RedisService;
 import com.arun.temporal.worker.s3.S3CsvConverterAndAggregator;
 import com.arun.temporal.worker.service.S3Service;
+import com.arun.temporal.worker.throttle.SubmitRateController;
 import com.arun.temporal.worker.util.ReportUtil;
 import com.arun.temporal.worker.worker.WorkerStatus;
+import io.temporal.activity.Activity;
+import io.temporal.activity.ActivityExecutionContext;
 import io.temporal.failure.ApplicationFailure;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.quality.Strictness;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.core.ResponseBytes;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
@@ -22,6 +33,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 
@@ -45,11 +57,23 @@ class BulkActivitiesImplTest {
 
     @Mock
     WorkerStatus workerStatus;
+    @Mock
+    RedisService redisService;
+    @Mock
+    KafkaEventProducer kafkaEventProducer;
+    @Mock
+    SubmitRateController submitRateController;
+    @Mock
+    ChunkCompletionEngine chunkCompletionEngine;
+
+    @Mock
+    ActivityExecutionContext activityContext;
 
     @InjectMocks
     BulkActivitiesImpl bulkActivities;
 
     BulkApiRequest request;
+    MockedStatic<Activity> activityStatic;
 
     @BeforeEach
     void setup() {
@@ -57,6 +81,23 @@ class BulkActivitiesImplTest {
         setPrivateField(bulkActivities, "minChunkSize", 500L);
         setPrivateField(bulkActivities, "minLinesPerChunk", 1);
         setPrivateField(bulkActivities, "maxParallelChunk", 4);
+        setPrivateField(bulkActivities, "boundaryProbeSize", 64);
+        setPrivateField(bulkActivities, "maxChunkSize", 1L << 30);
+        setPrivateField(bulkActivities, "sampleRegions", 4);
+        setPrivateField(bulkActivities, "sampleRegionSize", 64);
+        setPrivateField(bulkActivities, "maxInFlightBatches", 4);
+        activityStatic = mockStatic(Activity.class, withSettings().strictness(Strictness.LENIENT));
+        activityStatic.when(Activity::getExecutionContext).thenReturn(activityContext);
+        lenient().when(activityContext.getHeartbeatDetails(ChunkSubmitCheckpoint.class)).thenReturn(Optional.empty());
+        lenient().when(submitRateController.acquire()).thenReturn(Mono.empty());
+        lenient().when(redisService.saveBatchTotal(anyString(), anyInt(), anyInt())).thenReturn(Mono.just(true));
+        lenient().when(redisService.expireBatches(anyString(), anyInt())).thenReturn(Mono.just(true));
+        lenient().when(kafkaEventProducer.sendKafkaEvent(any())).thenReturn(Mono.just(new RecordMetadata(new TopicPartition("spark-events", 0), 0, 0, 0, 0, 0)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        activityStatic.close();
     }
 
     @Test
@@ -96,10 +137,35 @@ class BulkActivitiesImplTest {
         ResponseInputStream<GetObjectResponse> responseInputStream =
                 new ResponseInputStream<>(GetObjectResponse.builder().build(), inputStream);
         when(s3Service.getInputStream(anyString(), anyString(), anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(responseInputStream));
+        when(s3Service.getObjectRange(anyString(), anyString(), anyLong(), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), "est5\n3,test6".getBytes(StandardCharsets.UTF_8))));
 
         List<FileChunk> chunks = bulkActivities.splitFileIntoChunks(new SplitChunkRequest("tempInputKey", ",")).chunks();
         assertFalse(chunks.isEmpty());
         assertEquals(2, chunks.size());
+        assertEquals(21, chunks.get(0).startOffset());
+        assertEquals(524, chunks.get(0).endOffset());
+        assertEquals(525, chunks.get(1).startOffset());
+        assertEquals(999, chunks.get(1).endOffset());
+    }
+
+    @Test
+    void testSplitFileIntoChunks_sizes_chunks_from_sampled_regions() {
+        setPrivateField(bulkActivities, "minLinesPerChunk", 100000);
+        when(s3Service.getInputFileSize(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(4L * 1024 * 1024));
+        InputStream inputStream = new ByteArrayInputStream("input1,input2,input3\n1,test, test3\n2,test4,test5".getBytes(StandardCharsets.UTF_8));
+        when(s3Service.getInputStream(anyString(), anyString(), anyLong(), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(new ResponseInputStream<>(GetObjectResponse.builder().build(), inputStream)));
+        when(s3Service.getObjectRange(anyString(), anyString(), anyLong(), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), "x\na,b,c\na,b,c\n".getBytes(StandardCharsets.UTF_8))));
+
+        List<FileChunk> chunks = bulkActivities.splitFileIntoChunks(new SplitChunkRequest("tempInputKey", ",")).chunks();
+        SamplingStatistics statistics = chunks.get(0).metadata().samplingStatistics();
+        assertEquals(4, statistics.sampledRegions());
+        assertEquals(8, statistics.sampledLines());
+        assertEquals(6, chunks.get(0).metadata().avgLineSize());
+        assertEquals(7, chunks.size());
+        assertEquals(600022, chunks.get(1).startOffset());
     }
 
     @Test
@@ -130,6 +196,8 @@ class BulkActivitiesImplTest {
         ResponseInputStream<GetObjectResponse> responseInputStream =
                 new ResponseInputStream<>(GetObjectResponse.builder().build(), inputStream);
         when(s3Service.getInputStream(anyString(), anyString(), anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(responseInputStream));
+        when(s3Service.getObjectRange(anyString(), anyString(), anyLong(), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), "est5\n3,test6".getBytes(StandardCharsets.UTF_8))));
 
         List<FileChunk> chunks = bulkActivities.splitFileIntoChunks(new SplitChunkRequest("tempInputKey", "\t")).chunks();
         assertFalse(chunks.isEmpty());
@@ -138,24 +206,101 @@ class BulkActivitiesImplTest {
 
     @Test
     void testUploadChunk() {
-        FileMetadata metadata = new FileMetadata(1, 500, 1000, new String[]{"address", "country"});
+        FileMetadata metadata = new FileMetadata(1, 500, 1000, new String[]{"address", "country"}, 21);
         FileChunk chunk = new FileChunk(1, 2, 1000, metadata);
         ChunkSubmitResult expected = new ChunkSubmitResult(1, 2);
-        String content = "input1,input2,input3\n1,test, test3\n2,test4,test5";
+        String content = "1,test, test3\n2,test4,test5";
         InputStream inputStream = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
         when(requestConfiguration.getBatchSize()).thenReturn(4);
-        when(s3Service.getInputStream(anyString(), anyString(), anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(inputStream));
+        when(redisService.saveBatch(anyString(), anyInt(), anyInt(), anyString())).thenReturn(Mono.just(true));
+        when(s3Service.getPrefetchedInputStream(anyString(), anyString(), anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(inputStream));
         ChunkSubmitResult result = bulkActivities.uploadChunk(chunk, request);
         assertEquals(expected, result);
     }
 
+    @Test
+    void testUploadChunk_heartbeats_committed_offset() {
+        FileMetadata metadata = new FileMetadata(1, 500, 1000, new String[]{"input1", "input2", "input3"}, 21);
+        FileChunk chunk = new FileChunk(1, 2, 1000, metadata);
+        InputStream inputStream = new ByteArrayInputStream("1,test, test3\n2,test4,test5".getBytes(StandardCharsets.UTF_8));
+        when(requestConfiguration.getBatchSize()).thenReturn(1);
+        when(redisService.saveBatch(anyString(), anyInt(), anyInt(), anyString())).thenReturn(Mono.just(true));
+        when(s3Service.getPrefetchedInputStream(anyString(), anyString(), anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(inputStream));
+        assertEquals(new ChunkSubmitResult(2, 2), bulkActivities.uploadChunk(chunk, request));
+        InOrder inOrder = inOrder(activityContext);
+        inOrder.verify(activityContext).heartbeat(new ChunkSubmitCheckpoint(16, 1, 1));
+        inOrder.verify(activityContext).heartbeat(new ChunkSubmitCheckpoint(29, 2, 2));
+    }
+
+    @Test
+    void testUploadChunk_resumes_from_checkpoint() {
+        FileMetadata metadata = new FileMetadata(1, 500, 1000, new String[]{"input1", "input2", "input3"}, 21);
+        FileChunk chunk = new FileChunk(1, 2, 1000, metadata);
+        InputStream inputStream = new ByteArrayInputStream("2,test4,test5".getBytes(StandardCharsets.UTF_8));
+        when(activityContext.getHeartbeatDetails(ChunkSubmitCheckpoint.class)).thenReturn(Optional.of(new ChunkSubmitCheckpoint(16, 1, 1)));
+        when(requestConfiguration.getBatchSize()).thenReturn(1);
+        when(redisService.saveBatch(anyString(), anyInt(), anyInt(), anyString())).thenReturn(Mono.just(true));
+        when(s3Service.getPrefetchedInputStream(anyString(), anyString(), eq(16L), eq(1000L))).thenReturn(CompletableFuture.completedFuture(inputStream));
+        assertEquals(new ChunkSubmitResult(2, 2), bulkActivities.uploadChunk(chunk, request));
+        verify(redisService).saveBatch(anyString(), eq(1), eq(2), eq("SUBMITTED"));
+        verify(activityContext).heartbeat(new ChunkSubmitCheckpoint(29, 2, 2));
+        verify(redisService).saveBatchTotal(anyString(), eq(1), eq(2));
+        verify(redisService).expireBatches(anyString(), eq(1));
+    }
+
+    @Test
+    void testUploadChunk_numbers_each_batch_once_while_earlier_sends_are_outstanding() {
+        FileMetadata metadata = new FileMetadata(1, 500, 1000, new String[]{"input1", "input2", "input3"}, 21);
+        FileChunk chunk = new FileChunk(1, 2, 1000, metadata);
+        InputStream inputStream = new ByteArrayInputStream("1,a,b\n2,c,d\n3,e,f\n4,g,h".getBytes(StandardCharsets.UTF_8));
+        when(requestConfiguration.getBatchSize()).thenReturn(1);
+        when(kafkaEventProducer.sendKafkaEvent(any())).thenReturn(Mono.just(new RecordMetadata(new TopicPartition("spark-events", 0), 0, 0, 0, 0, 0))
+                .delayElement(Duration.ofMillis(50)));
+        when(redisService.saveBatch(anyString(), anyInt(), anyInt(), anyString())).thenReturn(Mono.just(true));
+        when(s3Service.getPrefetchedInputStream(anyString(), anyString(), anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(inputStream));
+        assertEquals(new ChunkSubmitResult(4, 4), bulkActivities.uploadChunk(chunk, request));
+        for (int batch = 1; batch <= 4; batch++) {
+            verify(redisService).saveBatch(anyString(), eq(1), eq(batch), eq("SUBMITTED"));
+        }
+    }
+
+    @Test
+    void testUploadChunk_fails_without_marking_batch_when_send_is_not_acknowledged() {
+        FileMetadata metadata = new FileMetadata(1, 500, 1000, new String[]{"input1", "input2", "input3"}, 21);
+        FileChunk chunk = new FileChunk(1, 2, 1000, metadata);
+        InputStream inputStream = new ByteArrayInputStream("1,test, test3\n2,test4,test5".getBytes(StandardCharsets.UTF_8));
+        when(requestConfiguration.getBatchSize()).thenReturn(1);
+        when(kafkaEventProducer.sendKafkaEvent(any()))
+                .thenReturn(Mono.just(new RecordMetadata(new TopicPartition("spark-events", 0), 0, 0, 0, 0, 0)))
+                .thenReturn(Mono.error(new IllegalStateException("broker unavailable")));
+        when(redisService.saveBatch(anyString(), anyInt(), anyInt(), anyString())).thenReturn(Mono.just(true));
+        when(s3Service.getPrefetchedInputStream(anyString(), anyString(), anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(inputStream));
+        assertThrows(ApplicationFailure.class, () -> bulkActivities.uploadChunk(chunk, request));
+        verify(redisService).saveBatch(anyString(), eq(1), eq(1), eq("SUBMITTED"));
+        verify(redisService, never()).saveBatch(anyString(), anyInt(), eq(2), anyString());
+        verify(activityContext).heartbeat(new ChunkSubmitCheckpoint(16, 1, 1));
+        verify(activityContext, never()).heartbeat(new ChunkSubmitCheckpoint(29, 2, 2));
+        verify(redisService, never()).expireBatches(anyString(), anyInt());
+    }
+
+    @Test
+    void testUploadChunk_skips_read_when_checkpoint_covers_chunk() {
+        FileMetadata metadata = new FileMetadata(1, 500, 1000, new String[]{"input1", "input2", "input3"}, 21);
+        FileChunk chunk = new FileChunk(1, 2, 1000, metadata);
+        when(activityContext.getHeartbeatDetails(ChunkSubmitCheckpoint.class)).thenReturn(Optional.of(new ChunkSubmitCheckpoint(1001, 5, 40)));
+        assertEquals(new ChunkSubmitResult(5, 40), bulkActivities.uploadChunk(chunk, request));
+        verifyNoInteractions(s3Service);
+        verify(redisService).saveBatchTotal(anyString(), eq(1), eq(5));
+        verify(redisService).expireBatches(anyString(), eq(1));
+    }
+
     @Test
     void testUploadChunk_valid_failure() {
-        FileMetadata metadata = new FileMetadata(1, 500, 1000, new String[]{"address", "country"});
+        FileMetadata metadata = new FileMetadata(1, 500, 1000, new String[]{"address", "country"}, 21);
         FileChunk chunk = new FileChunk(1, 2, 1000, metadata);
         when(awsConfiguration.getEnv()).thenReturn("test");
         when(awsConfiguration.getRegion()).thenReturn("test");
-        when(s3Service.getInputStream(anyString(), anyString(), anyLong(), anyLong()))
+        when(s3Service.getPrefetchedInputStream(anyString(), anyString(), anyLong(), anyLong()))
                 .thenThrow(new RuntimeException("S3 error", NoSuchKeyException.builder().build()));
         ApplicationFailure ex = assertThrows(ApplicationFailure.class, () -> bulkActivities.uploadChunk(chunk, request));
         assertTrue(ex.getMessage().contains("S3 file missing "));
@@ -163,11 +308,11 @@ class BulkActivitiesImplTest {
 
     @Test
     void testUploadChunk_failure() {
-        FileMetadata metadata = new FileMetadata(1, 500, 1000, new String[]{"address", "country"});
+        FileMetadata metadata = new FileMetadata(1, 500, 1000, new String[]{"address", "country"}, 21);
         FileChunk chunk = new FileChunk(1, 2, 1000, metadata);
         when(awsConfiguration.getEnv()).thenReturn("test");
         when(awsConfiguration.getRegion()).thenReturn("test");
-        when(s3Service.getInputStream(anyString(), anyString(), anyLong(), anyLong()))
+        when(s3Service.getPrefetchedInputStream(anyString(), anyString(), anyLong(), anyLong()))
                 .thenThrow(new RuntimeException("S3 error", new IOException("IO")));
         ApplicationFailure ex = assertThrows(ApplicationFailure.class, () -> bulkActivities.uploadChunk(chunk, request));
         assertTrue(ex.getMessage().contains("S3 error"));
@@ -176,13 +321,14 @@ class BulkActivitiesImplTest {
     @Test
     void testUploadChunk_with_tab_and_cass() throws Exception {
         BulkApiRequest request2 = new BulkApiRequest("GEOCODE", "file.csv", "fileId", "outputId", "wsId", "user@domain.com", "sample", "with_report", "\t", "apiKey", null);
-        FileMetadata metadata = new FileMetadata(1, 500, 1000, new String[]{"address", "country"});
+        FileMetadata metadata = new FileMetadata(1, 500, 1000, new String[]{"address", "country"}, 21);
         FileChunk chunk = new FileChunk(1, 2, 1000, metadata);
         ChunkSubmitResult expected = new ChunkSubmitResult(1, 2);
-        String content = "input1,input2,input3\n1,test, test3\n2,test4,test5";
+        String content = "1,test, test3\n2,test4,test5";
         InputStream inputStream = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
         when(requestConfiguration.getBatchSize()).thenReturn(4);
-        when(s3Service.getInputStream(anyString(), anyString(), anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(inputStream));
+        when(redisService.saveBatch(anyString(), anyInt(), anyInt(), anyString())).thenReturn(Mono.just(true));
+        when(s3Service.getPrefetchedInputStream(anyString(), anyString(), anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(inputStream));
         ChunkSubmitResult result = bulkActivities.uploadChunk(chunk, request2);
         assertEquals(expected, result);
     }
@@ -190,13 +336,14 @@ class BulkActivitiesImplTest {
     @Test
     void testUploadChunk_with_tab_and_with_empty_header() throws Exception {
         BulkApiRequest request2 = new BulkApiRequest("GEOCODE", "file.csv", "fileId", "outputId", "wsId", "user@domain.com", "sample", null, "\t", "apiKey", null);
-        FileMetadata metadata = new FileMetadata(1, 500, 1000, new String[]{"input1","input2","input3"});
+        FileMetadata metadata = new FileMetadata(1, 500, 1000, new String[]{"input1","input2","input3"}, 21);
         FileChunk chunk = new FileChunk(1, 2, 1000, metadata);
         ChunkSubmitResult expected = new ChunkSubmitResult(1, 2);
-        String content = "input1,input2,input3\n1,test, test3\n2,test4,test5";
+        String content = "1,test, test3\n2,test4,test5";
         InputStream inputStream = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
         when(requestConfiguration.getBatchSize()).thenReturn(4);
-        when(s3Service.getInputStream(anyString(), anyString(), anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(inputStream));
+        when(redisService.saveBatch(anyString(), anyInt(), anyInt(), anyString())).thenReturn(Mono.just(true));
+        when(s3Service.getPrefetchedInputStream(anyString(), anyString(), anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(inputStream));
         ChunkSubmitResult result = bulkActivities.uploadChunk(chunk, request2);
         assertEquals(expected, result);
     }
@@ -204,11 +351,23 @@ class BulkActivitiesImplTest {
     @Test
     void testProcessChunk() {
         ProcessChunkRequest req = new ProcessChunkRequest(1, "test1",2,  request);
-        when(s3CsvConverterAndAggregator.startUploadingProcess(anyInt(), anyString(), anyInt(), any(), anyString())).thenReturn(ChunkProcessingResult.builder().id(1).uploadTagId("tag1").totalBatchCount(2).build());
+        when(s3CsvConverterAndAggregator.startUploadingProcess(any(ProcessChunkRequest.class), anyString())).thenReturn(ChunkProcessingResult.builder().id(1).uploadTagId("tag1").totalBatchCount(2).build());
         ChunkProcessingResult result = bulkActivities.processChunk(req);
         assertNotNull(result);
     }
 
+    @Test
+    void testProcessChunk_async_completion() {
+        setPrivateField(bulkActivities, "asyncCompletion", true);
+        byte[] taskToken = "token".getBytes(StandardCharsets.UTF_8);
+        when(activityContext.getTaskToken()).thenReturn(taskToken);
+        ProcessChunkRequest req = new ProcessChunkRequest(1, "test1", 2, request);
+        assertNull(bulkActivities.processChunk(req));
+        verify(chunkCompletionEngine).track(eq(taskToken), eq(req), anyString());
+        verify(activityContext).doNotCompleteOnReturn();
+        verify(s3CsvConverterAndAggregator, never()).startUploadingProcess(any(ProcessChunkRequest.class), anyString());
+    }
+
     @Test
     void testProcessChunk_failure() {
         ProcessChunkRequest req = mock(ProcessChunkRequest.class);
@@ -216,7 +375,7 @@ class BulkActivitiesImplTest {
         when(req.chunkNumber()).thenReturn(1);
         when(req.uploadId()).thenReturn("uploadId");
         when(req.totalBatch()).thenReturn(1);
-        when(s3CsvConverterAndAggregator.startUploadingProcess(anyInt(), anyString(), anyInt(), any(), anyString()))
+        when(s3CsvConverterAndAggregator.startUploadingProcess(any(ProcessChunkRequest.class), anyString()))
                 .thenThrow(new RuntimeException("Process error"));
         ApplicationFailure ex = assertThrows(ApplicationFailure.class, () -> bulkActivities.processChunk(req));
         assertTrue(ex.getMessage().contains("Error in processing chunk"));
@@ -230,6 +389,29 @@ class BulkActivitiesImplTest {
         verify(s3Service).completeMultiPartUpload(anyString(), eq("fileKey"), eq("uploadId"), anyList());
     }
 
+    @Test
+    void testFinalizeFileUpload_mergesSmallStagedPartsIntoTheNextOne() {
+        CompleteMultipartUploadRequest req = new CompleteMultipartUploadRequest("fileKey", "uploadId", List.of(
+                new PartDetail(4, "etag4"),
+                PartDetail.staged(3, "staged3", 6 * 1024 * 1024),
+                PartDetail.staged(1, "staged1", 1024),
+                PartDetail.staged(5, "staged5", 1024)));
+        when(s3Service.uploadMergedPart(anyString(), eq("fileKey"), eq("uploadId"), eq(1), eq(List.of("staged1", "staged3"))))
+                .thenReturn(CompletableFuture.completedFuture("etag1"));
+        when(s3Service.uploadChunkFilePart(anyString(), eq("fileKey"), eq("uploadId"), eq(5), eq("staged5")))
+                .thenReturn(CompletableFuture.completedFuture("etag5"));
+        when(s3Service.completeMultiPartUpload(anyString(), anyString(), anyString(), anyList())).thenReturn(CompletableFuture.completedFuture(true));
+        when(s3Service.deleteChunkData(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(true));
+
+        bulkActivities.finalizeFileUpload(req);
+
+        verify(s3Service).completeMultiPartUpload(anyString(), eq("fileKey"), eq("uploadId"), argThat(parts -> parts.stream()
+                .map(part -> part.partNumber() + ":" + part.eTag()).toList().equals(List.of("1:etag1", "4:etag4", "5:etag5"))));
+        verify(s3Service).deleteChunkData(anyString(), eq("staged1"));
+        verify(s3Service).deleteChunkData(anyString(), eq("staged3"));
+        verify(s3Service).deleteChunkData(anyString(), eq("staged5"));
+    }
+
     @Test
     void testFinalizeFileUpload_failure() {
         CompleteMultipartUploadRequest req = new CompleteMultipartUploadRequest("fileKey", "uploadId", List.of(new PartDetail(1, "etag")));
@@ -0,0 +1,85 @@
+package com.arun.temporal.worker.activities;
+
+import com.arun.temporal.worker.model.BulkApiRequest;
+import com.arun.temporal.worker.model.activity.ChunkProcessingResult;
+import com.arun.temporal.worker.model.activity.ProcessChunkRequest;
+import com.arun.temporal.worker.s3.S3CsvConverterAndAggregator;
+import com.arun.temporal.worker.worker.WorkerStatus;
+import io.temporal.client.ActivityCompletionClient;
+import io.temporal.failure.ApplicationFailure;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChunkCompletionEngineTest {
+
+    private static final byte[] TASK_TOKEN = "token".getBytes(StandardCharsets.UTF_8);
+
+    @Mock
+    S3CsvConverterAndAggregator aggregator;
+    @Mock
+    ActivityCompletionClient completionClient;
+
+    WorkerStatus workerStatus = new WorkerStatus();
+    ChunkCompletionEngine engine;
+    ProcessChunkRequest request;
+
+    @BeforeEach
+    void setUp() {
+        engine = new ChunkCompletionEngine(aggregator, completionClient, workerStatus);
+        BulkApiRequest bulkApiRequest = new BulkApiRequest("TEST", "file.csv", "fileId", "outputId", "wsId", "user@domain.com", "sample", "header", ",", "apiKey", null);
+        request = new ProcessChunkRequest(1, "uploadId", 2, bulkApiRequest);
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    void should_complete_activity_when_chunk_is_aggregated() {
+        CompletableFuture<ChunkProcessingResult> aggregation = new CompletableFuture<>();
+        when(aggregator.aggregateChunkAsync(request, "queryId")).thenReturn(aggregation);
+
+        engine.track(TASK_TOKEN, request, "queryId");
+        assertEquals(1, engine.trackedChunks());
+        assertEquals(1, workerStatus.runningActivity());
+        verifyNoInteractions(completionClient);
+
+        ChunkProcessingResult result = ChunkProcessingResult.builder().id(1).totalBatchCount(2).build();
+        aggregation.complete(result);
+        verify(completionClient).complete(TASK_TOKEN, result);
+        assertEquals(0, engine.trackedChunks());
+        assertEquals(0, workerStatus.runningActivity());
+    }
+
+    @Test
+    void should_fail_activity_when_aggregation_fails() {
+        when(aggregator.aggregateChunkAsync(request, "queryId")).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("boom")));
+
+        engine.track(TASK_TOKEN, request, "queryId");
+        verify(completionClient).completeExceptionally(eq(TASK_TOKEN), argThat(failure ->
+                failure instanceof ApplicationFailure applicationFailure && "ProcessChunkException".equals(applicationFailure.getType())));
+        assertEquals(0, engine.trackedChunks());
+    }
+
+    @Test
+    void should_not_track_chunk_that_fails_to_open() {
+        when(aggregator.aggregateChunkAsync(request, "queryId")).thenThrow(new IllegalStateException("no upload id"));
+
+        assertThrows(IllegalStateException.class, () -> engine.track(TASK_TOKEN, request, "queryId"));
+        assertEquals(0, engine.trackedChunks());
+        assertEquals(0, workerStatus.runningActivity());
+    }
+}
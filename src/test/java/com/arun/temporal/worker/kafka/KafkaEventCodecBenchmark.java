@@ -0,0 +1,74 @@
+package com.arun.temporal.worker.kafka;
+
+import com.arun.temporal.worker.model.InputRequest;
+import com.arun.temporal.worker.model.KafkaEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.github.luben.zstd.Zstd;
+import net.jpountz.lz4.LZ4Factory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.arun.temporal.worker.kafka.KafkaEventProducer.KAFKA_OBJECT_MAPPER;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Serialization cost per row of one {@value #ROWS}-row batch for the previous JSON String path and both codecs. The
+ * encoded and compressed sizes of the batch are printed once per fork. Run with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.arun.temporal.worker.kafka.KafkaEventCodecBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(KafkaEventCodecBenchmark.ROWS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KafkaEventCodecBenchmark {
+
+    static final int ROWS = 1000;
+
+    private final JsonKafkaEventCodec jsonCodec = new JsonKafkaEventCodec();
+    private final ProtobufKafkaEventCodec protobufCodec = new ProtobufKafkaEventCodec();
+    private KafkaEvent event;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<InputRequest> requests = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            requests.add(new InputRequest(i + " Commercial Street Apt " + (i % 97), "San Francisco", "CA 941" + (i % 100)));
+        }
+        event = new KafkaEvent("BULK-address-file.csv-output", "BULK-address-file.csv-output-1_0", ROWS, requests);
+        printSizes("json", jsonCodec.encode(event));
+        printSizes("protobuf", protobufCodec.encode(event));
+    }
+
+    @Benchmark
+    public byte[] jsonString() throws JsonProcessingException {
+        return KAFKA_OBJECT_MAPPER.writeValueAsString(event).getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public byte[] jsonCodec() {
+        return jsonCodec.encode(event);
+    }
+
+    @Benchmark
+    public byte[] protobufCodec() {
+        return protobufCodec.encode(event);
+    }
+
+    private static void printSizes(String codec, byte[] encoded) {
+        System.out.printf("%s: %d bytes per batch, %d with zstd, %d with lz4%n", codec, encoded.length,
+                Zstd.compress(encoded).length, LZ4Factory.fastestInstance().fastCompressor().compress(encoded).length);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(KafkaEventCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
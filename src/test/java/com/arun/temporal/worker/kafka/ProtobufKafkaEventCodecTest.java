@@ -0,0 +1,105 @@
+package com.arun.temporal.worker.kafka;
+
+import com.arun.temporal.worker.model.InputRequest;
+import com.arun.temporal.worker.model.KafkaEvent;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.arun.temporal.worker.kafka.ProtobufKafkaEventCodec.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProtobufKafkaEventCodecTest {
+
+    private final ProtobufKafkaEventCodec codec = new ProtobufKafkaEventCodec();
+
+    @Test
+    void should_round_trip_event() throws IOException {
+        List<InputRequest> requests = List.of(
+                new InputRequest("1 Main St", "Springfield", "IL"),
+                new InputRequest("Straße 5", null, ""),
+                new InputRequest("\"quoted, value\"", "x", "y"));
+        KafkaEvent event = new KafkaEvent("query", "query-1_0", 3, requests, "query:1:completed");
+
+        KafkaEvent decoded = decode(codec.encode(event));
+
+        assertEquals("query:1:completed", decoded.getCompletionKey());
+        assertEquals("query", decoded.getQueryId());
+        assertEquals("query-1_0", decoded.getBatchId());
+        assertEquals(3, decoded.getPayloadLength());
+        assertEquals(3, decoded.getRequests().size());
+        assertEquals(new InputRequest("1 Main St", "Springfield", "IL"), decoded.getRequests().get(0));
+        assertEquals(new InputRequest("Straße 5", "", ""), decoded.getRequests().get(1));
+        assertEquals(new InputRequest("\"quoted, value\"", "x", "y"), decoded.getRequests().get(2));
+    }
+
+    @Test
+    void should_keep_empty_requests_in_position() throws IOException {
+        KafkaEvent event = new KafkaEvent("query", "batch", 2, Arrays.asList(null, new InputRequest("a", "b", "c")));
+
+        KafkaEvent decoded = decode(codec.encode(event));
+
+        assertEquals(2, decoded.getRequests().size());
+        assertEquals(new InputRequest("", "", ""), decoded.getRequests().get(0));
+        assertEquals(new InputRequest("a", "b", "c"), decoded.getRequests().get(1));
+    }
+
+    @Test
+    void should_encode_empty_event() throws IOException {
+        KafkaEvent decoded = decode(codec.encode(new KafkaEvent(null, null, 0, null)));
+
+        assertEquals("", decoded.getQueryId());
+        assertTrue(decoded.getRequests().isEmpty());
+    }
+
+    @Test
+    void should_be_smaller_than_json() {
+        List<InputRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            requests.add(new InputRequest(i + " Main Street", "Springfield", "IL 6270" + (i % 10)));
+        }
+        KafkaEvent event = new KafkaEvent("query", "query-1_0", requests.size(), requests);
+
+        assertTrue(codec.encode(event).length < new JsonKafkaEventCodec().encode(event).length);
+    }
+
+    static KafkaEvent decode(byte[] bytes) throws IOException {
+        CodedInputStream in = CodedInputStream.newInstance(bytes);
+        KafkaEvent event = new KafkaEvent("", "", 0, new ArrayList<>());
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case EVENT_QUERY_ID -> event.setQueryId(in.readString());
+                case EVENT_BATCH_ID -> event.setBatchId(in.readString());
+                case EVENT_PAYLOAD_LENGTH -> event.setPayloadLength(in.readInt32());
+                case EVENT_COMPLETION_KEY -> event.setCompletionKey(in.readString());
+                case EVENT_REQUESTS -> {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    event.getRequests().add(decodeRequest(in));
+                    in.popLimit(limit);
+                }
+                default -> in.skipField(tag);
+            }
+        }
+        return event;
+    }
+
+    private static InputRequest decodeRequest(CodedInputStream in) throws IOException {
+        InputRequest request = new InputRequest("", "", "");
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case REQUEST_INPUT1 -> request.setInput1(in.readString());
+                case REQUEST_INPUT2 -> request.setInput2(in.readString());
+                case REQUEST_INPUT3 -> request.setInput3(in.readString());
+                default -> in.skipField(tag);
+            }
+        }
+        return request;
+    }
+}
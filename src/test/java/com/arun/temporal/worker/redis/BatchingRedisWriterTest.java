@@ -0,0 +1,103 @@
+package com.arun.temporal.worker.redis;
+
+import io.lettuce.core.api.reactive.RedisReactiveCommands;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BatchingRedisWriterTest {
+
+    @Mock
+    RedisReactiveCommands<String, String> redisReactiveCommands;
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    BatchingRedisWriter writer;
+
+    @AfterEach
+    void tearDown() {
+        writer.close();
+    }
+
+    @Test
+    void should_coalesce_writes_of_a_window_into_one_hset() {
+        writer = new BatchingRedisWriter(redisReactiveCommands, meterRegistry, 3, Duration.ofSeconds(10));
+        when(redisReactiveCommands.hset(eq("query"), anyMap())).thenReturn(Mono.just(3L));
+
+        List<Boolean> results = Mono.zip(writer.hset("query", "query-1_1", "SUBMITTED"),
+                        writer.hset("query", "query-1_2", "SUBMITTED"),
+                        writer.hset("query", "query-1_3", "SUBMITTED"))
+                .map(tuple -> List.of(tuple.getT1(), tuple.getT2(), tuple.getT3()))
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(List.of(true, true, true), results);
+        verify(redisReactiveCommands).hset("query", Map.of("query-1_1", "SUBMITTED", "query-1_2", "SUBMITTED", "query-1_3", "SUBMITTED"));
+        assertEquals(1L, meterRegistry.get(BatchingRedisWriter.FLUSH_SIZE).summary().count());
+        assertEquals(3.0, meterRegistry.get(BatchingRedisWriter.FLUSH_SIZE).summary().totalAmount());
+        assertEquals(1L, meterRegistry.get(BatchingRedisWriter.FLUSH_LATENCY).timer().count());
+    }
+
+    @Test
+    void should_flush_partial_batch_when_window_ends() {
+        writer = new BatchingRedisWriter(redisReactiveCommands, meterRegistry, 100, Duration.ofMillis(20));
+        when(redisReactiveCommands.hset(anyString(), anyMap())).thenReturn(Mono.just(1L));
+
+        assertEquals(Boolean.TRUE, writer.hset("query", "query-1_1", "SUBMITTED").block(Duration.ofSeconds(5)));
+        verify(redisReactiveCommands).hset("query", Map.of("query-1_1", "SUBMITTED"));
+    }
+
+    @Test
+    void should_write_one_hset_per_hash() {
+        writer = new BatchingRedisWriter(redisReactiveCommands, meterRegistry, 2, Duration.ofSeconds(10));
+        when(redisReactiveCommands.hset(anyString(), anyMap())).thenReturn(Mono.just(1L));
+
+        Mono.when(writer.hset("query1", "a", "SUBMITTED"), writer.hset("query2", "b", "SUBMITTED")).block(Duration.ofSeconds(5));
+
+        verify(redisReactiveCommands).hset("query1", Map.of("a", "SUBMITTED"));
+        verify(redisReactiveCommands).hset("query2", Map.of("b", "SUBMITTED"));
+    }
+
+    @Test
+    void should_fail_every_write_of_a_failed_flush() {
+        writer = new BatchingRedisWriter(redisReactiveCommands, meterRegistry, 2, Duration.ofSeconds(10));
+        when(redisReactiveCommands.hset(anyString(), anyMap())).thenReturn(Mono.error(new IllegalStateException("redis down")));
+
+        Mono<Boolean> first = writer.hset("query", "a", "SUBMITTED").cache();
+        Mono<Boolean> second = writer.hset("query", "b", "SUBMITTED").cache();
+        first.onErrorResume(ex -> Mono.empty()).subscribe();
+        second.onErrorResume(ex -> Mono.empty()).subscribe();
+
+        assertThrows(IllegalStateException.class, () -> first.block(Duration.ofSeconds(5)));
+        assertThrows(IllegalStateException.class, () -> second.block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void should_keep_accepting_writes_while_every_flush_slot_is_busy() {
+        writer = new BatchingRedisWriter(redisReactiveCommands, meterRegistry, 256, Duration.ofMillis(5));
+        when(redisReactiveCommands.hset(anyString(), anyMap())).thenAnswer(invocation -> Mono.just(1L).delayElement(Duration.ofMillis(200)));
+
+        // one write every 10ms closes about 20 windows while the first 8 flushes are still waiting for their reply
+        List<Boolean> results = Flux.range(0, 20)
+                .delayElements(Duration.ofMillis(10))
+                .flatMap(batch -> writer.hset("query", "query-1_" + batch, "SUBMITTED"))
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertEquals(20, results.size());
+        assertTrue(results.stream().allMatch(Boolean.TRUE::equals));
+        assertEquals(Boolean.TRUE, writer.hset("query", "query-1_20", "SUBMITTED").block(Duration.ofSeconds(5)));
+    }
+}
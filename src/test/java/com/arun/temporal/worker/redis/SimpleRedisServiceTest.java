@@ -0,0 +1,57 @@
+package com.arun.temporal.worker.redis;
+
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.api.reactive.RedisReactiveCommands;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SimpleRedisServiceTest {
+
+    @Mock
+    RedisReactiveCommands<String, String> redisReactiveCommands;
+    @Mock
+    BatchingRedisWriter batchingRedisWriter;
+    @Mock
+    StatefulRedisPubSubConnection<String, String> pubSubConnection;
+
+    SimpleRedisService redisService;
+
+    @BeforeEach
+    void setUp() {
+        redisService = new SimpleRedisService(redisReactiveCommands, batchingRedisWriter, pubSubConnection);
+    }
+
+    @Test
+    void should_read_completed_batches_of_the_chunk_from_the_legacy_hash() {
+        redisService.legacyCompletionHash = true;
+        when(redisReactiveCommands.hgetall("query")).thenReturn(Flux.just(
+                KeyValue.just("query-1_1", "COMPLETED"),
+                KeyValue.just("query-1_2", "SUBMITTED"),
+                KeyValue.just("query-12_3", "COMPLETED"),
+                KeyValue.just("query-1_4", "COMPLETED")));
+
+        List<String> completed = redisService.getLegacyCompletedBatches("query", 1).collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(List.of("query-1_1", "query-1_4"), completed);
+    }
+
+    @Test
+    void should_not_read_the_legacy_hash_by_default() {
+        List<String> completed = redisService.getLegacyCompletedBatches("query", 1).collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(List.of(), completed);
+        verifyNoInteractions(redisReactiveCommands);
+    }
+}
@@ -0,0 +1,213 @@
+package com.arun.temporal.worker.s3;
+
+import com.arun.temporal.worker.configuration.AwsConfiguration;
+import com.arun.temporal.worker.model.BulkApiRequest;
+import com.arun.temporal.worker.model.activity.ChunkProcessingResult;
+import com.arun.temporal.worker.model.activity.ProcessChunkRequest;
+import com.arun.temporal.worker.redis.RedisService;
+import com.arun.temporal.worker.service.S3Service;
+import com.arun.temporal.worker.throttle.MemoryBudget;
+import com.arun.temporal.worker.throttle.SubmitRateController;
+import io.temporal.activity.ActivityExecutionContext;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Time to aggregate {@code chunks} chunks of {@value #BATCHES} completed batches of {@value #ROWS} rows each, all
+ * chunks running at once as concurrent activities would. S3 and Redis are in-memory stubs, so the figure is conversion
+ * and buffering only; with no shared lock it should stay flat until the chunks outnumber the cores. With {@code async}
+ * the chunks are aggregated by {@code aggregateChunkAsync} without a thread per chunk. Run with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.arun.temporal.worker.s3.AggregatorConcurrencyBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregatorConcurrencyBenchmark {
+
+    static final int BATCHES = 200;
+    static final int ROWS = 500;
+
+    @Param({"1", "2", "4", "8"})
+    int chunks;
+
+    @Param({"false", "true"})
+    boolean async;
+
+    private final ActivityExecutionContext ctx = (ActivityExecutionContext) Proxy.newProxyInstance(
+            ActivityExecutionContext.class.getClassLoader(), new Class<?>[]{ActivityExecutionContext.class}, (proxy, method, args) -> null);
+    private final BulkApiRequest request = new BulkApiRequest("TEST", "file.csv", "fileId", "outputId", "wsId", "user@domain.com", "sample", "header", ",", "apiKey", null);
+    private S3CsvConverterAndAggregator aggregator;
+    private ExecutorService activities;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        aggregator = new S3CsvConverterAndAggregator(new StubAwsConfiguration(), new StubS3Service(), new StubRedisService(), new NoopSubmitRateController(),
+                new PartBufferPool(10 * 1024 * 1024, false, 8), MemoryBudget.unbounded());
+        activities = Executors.newFixedThreadPool(chunks);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        activities.shutdown();
+        aggregator.close();
+    }
+
+    @Benchmark
+    public List<ChunkProcessingResult> aggregateChunks() throws Exception {
+        List<Future<ChunkProcessingResult>> results = new ArrayList<>(chunks);
+        for (int chunkId = 1; chunkId <= chunks; chunkId++) {
+            ProcessChunkRequest chunkRequest = new ProcessChunkRequest(chunkId, "uploadId", BATCHES, request);
+            results.add(async
+                    ? aggregator.aggregateChunkAsync(chunkRequest, "queryId")
+                    : activities.submit(() -> aggregator.aggregateChunk(ctx, chunkRequest, "queryId")));
+        }
+        List<ChunkProcessingResult> aggregated = new ArrayList<>(chunks);
+        for (Future<ChunkProcessingResult> result : results) {
+            aggregated.add(result.get());
+        }
+        return aggregated;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AggregatorConcurrencyBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static byte[] batchOutput() {
+        StringBuilder json = new StringBuilder("{\"responses\":[");
+        for (int i = 0; i < ROWS; i++) {
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"name\":\"name").append(i).append("\",\"email\":\"user").append(i).append("@domain.com\",")
+                    .append("\"phone\":\"555").append(i).append("\",\"address\":\"").append(i).append(" Commercial Street, San Francisco\",")
+                    .append("\"inputRequest\":{\"input1\":\"").append(i).append(" Commercial Street\",\"input2\":\"San Francisco\",\"input3\":\"CA 94111\"}}");
+        }
+        return json.append("],\"payloadLength\":").append(ROWS).append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class StubAwsConfiguration implements AwsConfiguration {
+        @Override
+        public String getEnv() {
+            return "bench";
+        }
+
+        @Override
+        public String getRegion() {
+            return "us-east-1";
+        }
+
+        @Override
+        public String getName() {
+            return "aws";
+        }
+    }
+
+    private static class StubS3Service extends S3Service {
+        private final byte[] batchOutput = batchOutput();
+
+        StubS3Service() {
+            super(null, null, null);
+        }
+
+        @Override
+        public CompletableFuture<String> getUploadId(String outputKey, String bucketName) {
+            return CompletableFuture.completedFuture("chunkUploadId");
+        }
+
+        @Override
+        public CompletableFuture<ResponseBytes<GetObjectResponse>> getOutputStream(String bucketName, String inputKey) {
+            return CompletableFuture.completedFuture(ResponseBytes.fromByteArray(
+                    GetObjectResponse.builder().contentLength((long) batchOutput.length).build(), batchOutput));
+        }
+
+        @Override
+        public CompletableFuture<Boolean> uploadFilePart(String bucketName, String key, String uploadId, int partNumber, List<ByteBuffer> data, List<CompletedPart> completedParts) {
+            completedParts.add(CompletedPart.builder().eTag("etag" + partNumber).partNumber(partNumber).build());
+            return CompletableFuture.completedFuture(true);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> completeMultiPartUpload(String bucketName, String outputKey, String uploadId, List<CompletedPart> completedParts) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        @Override
+        public CompletableFuture<String> uploadChunkFilePart(String bucketName, String key, String uploadId, int partNumber, String chunkFileKey) {
+            return CompletableFuture.completedFuture("tagId" + partNumber);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> deleteChunkData(String bucketName, String key) {
+            return CompletableFuture.completedFuture(true);
+        }
+    }
+
+    private static class StubRedisService implements RedisService {
+        @Override
+        public Mono<Boolean> saveBatch(String queryId, int chunkId, int batchNumber, String status) {
+            return Mono.just(true);
+        }
+
+        @Override
+        public Mono<Boolean> saveBatchTotal(String queryId, int chunkId, int totalBatches) {
+            return Mono.just(true);
+        }
+
+        @Override
+        public Mono<Boolean> expireBatches(String queryId, int chunkId) {
+            return Mono.just(true);
+        }
+
+        @Override
+        public Flux<String> getCompletedBatches(String queryId, int chunkId, long cursor) {
+            return Flux.fromStream(IntStream.range((int) cursor, BATCHES).mapToObj(batch -> queryId + "_" + chunkId + "_" + batch));
+        }
+
+        @Override
+        public Flux<String> getLegacyCompletedBatches(String queryId, int chunkId) {
+            return Flux.empty();
+        }
+
+        @Override
+        public Flux<String> subscribeBatchUpdates(String queryId, int chunkId) {
+            return Flux.never();
+        }
+    }
+
+    private static class NoopSubmitRateController implements SubmitRateController {
+        @Override
+        public Mono<Void> acquire() {
+            return Mono.empty();
+        }
+
+        @Override
+        public void recordCompletedBatches(int count) {
+            // not paced in the benchmark
+        }
+
+        @Override
+        public double currentRate() {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.arun.temporal.worker.s3;
+
+import com.arun.temporal.worker.exception.BulkProcessorException;
+import com.arun.temporal.worker.throttle.MemoryBudget;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkPartWriterTest {
+
+    @Test
+    void should_cut_parts_of_exactly_part_size() {
+        PartBufferPool pool = new PartBufferPool(4, false, 2);
+        ChunkPartWriter writer = new ChunkPartWriter(pool, new AtomicInteger(1));
+        byte[] rows = "abcdefghij".getBytes(StandardCharsets.UTF_8);
+        writer.write(rows, 0, rows.length);
+
+        List<ChunkPartWriter.Part> parts = writer.takeFilledParts();
+        assertEquals(2, parts.size());
+        assertEquals(1, parts.get(0).partNumber());
+        assertEquals("abcd", asString(parts.get(0).data()));
+        assertEquals(2, parts.get(1).partNumber());
+        assertEquals("efgh", asString(parts.get(1).data()));
+        assertTrue(writer.takeFilledParts().isEmpty());
+
+        List<ChunkPartWriter.Part> last = writer.finish();
+        assertEquals(1, last.size());
+        assertEquals(3, last.getFirst().partNumber());
+        assertEquals("ij", asString(last.getFirst().data()));
+    }
+
+    @Test
+    void should_return_no_last_part_when_everything_was_cut() {
+        PartBufferPool pool = new PartBufferPool(2, false, 2);
+        ChunkPartWriter writer = new ChunkPartWriter(pool, new AtomicInteger(1));
+        writer.write('a');
+        writer.write('b');
+        assertEquals(1, writer.takeFilledParts().size());
+        assertTrue(writer.finish().isEmpty());
+    }
+
+    @Test
+    void should_fold_tail_below_min_part_size_into_last_full_part() {
+        PartBufferPool pool = new PartBufferPool(4, false, 2);
+        ChunkPartWriter writer = new ChunkPartWriter(pool, new AtomicInteger(11), 13, 3);
+        byte[] rows = "abcdefghij".getBytes(StandardCharsets.UTF_8);
+        writer.write(rows, 0, rows.length);
+
+        List<ChunkPartWriter.Part> filled = writer.takeFilledParts();
+        assertEquals(1, filled.size());
+        assertEquals(11, filled.getFirst().partNumber());
+
+        List<ChunkPartWriter.Part> last = writer.finish();
+        assertEquals(1, last.size());
+        assertEquals(12, last.getFirst().partNumber());
+        assertEquals(6, last.getFirst().size());
+        assertEquals("efghij", asString(last.getFirst().data()));
+    }
+
+    @Test
+    void should_keep_tail_as_own_part_when_large_enough() {
+        PartBufferPool pool = new PartBufferPool(4, false, 2);
+        ChunkPartWriter writer = new ChunkPartWriter(pool, new AtomicInteger(1), 3, 2);
+        byte[] rows = "abcdefghij".getBytes(StandardCharsets.UTF_8);
+        writer.write(rows, 0, rows.length);
+        writer.takeFilledParts();
+
+        List<ChunkPartWriter.Part> last = writer.finish();
+        assertEquals(List.of(2, 3), last.stream().map(ChunkPartWriter.Part::partNumber).toList());
+        assertEquals("ij", asString(last.get(1).data()));
+    }
+
+    @Test
+    void should_refuse_parts_past_reserved_range() {
+        PartBufferPool pool = new PartBufferPool(2, false, 2);
+        ChunkPartWriter writer = new ChunkPartWriter(pool, new AtomicInteger(5), 5, 0);
+        byte[] rows = "abcd".getBytes(StandardCharsets.UTF_8);
+        assertThrows(BulkProcessorException.class, () -> writer.write(rows, 0, rows.length));
+    }
+
+    @Test
+    void should_reuse_released_buffers_up_to_max_idle() {
+        PartBufferPool pool = new PartBufferPool(4, true, 1);
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire();
+        assertTrue(first.isDirect());
+        first.put((byte) 1).flip();
+        pool.release(first);
+        pool.release(second);
+        assertEquals(1, pool.idleBuffers());
+
+        ByteBuffer reused = pool.acquire();
+        assertSame(first, reused);
+        assertEquals(0, reused.position());
+        assertEquals(4, reused.limit());
+        assertEquals(0, pool.idleBuffers());
+    }
+
+    @Test
+    void should_give_back_unsent_buffers_on_abort() {
+        MemoryBudget budget = new MemoryBudget(100);
+        PartBufferPool pool = new PartBufferPool(4, false, 2, budget);
+        ChunkPartWriter writer = new ChunkPartWriter(pool, new AtomicInteger(1), Integer.MAX_VALUE, 4);
+        byte[] rows = "abcdefghij".getBytes(StandardCharsets.UTF_8);
+        writer.write(rows, 0, rows.length);
+        List<ChunkPartWriter.Part> sent = writer.takeFilledParts();
+        assertEquals(12, budget.used());
+
+        writer.abort();
+        assertEquals(4, budget.used());
+        sent.forEach(part -> part.data().forEach(pool::release));
+        assertEquals(0, budget.used());
+        assertThrows(BulkProcessorException.class, () -> writer.write('k'));
+        assertTrue(writer.finish().isEmpty());
+    }
+
+    private static String asString(List<ByteBuffer> data) {
+        StringBuilder text = new StringBuilder();
+        for (ByteBuffer buffer : data) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            text.append(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return text.toString();
+    }
+}
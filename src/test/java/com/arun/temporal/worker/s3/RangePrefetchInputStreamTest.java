@@ -0,0 +1,84 @@
+package com.arun.temporal.worker.s3;
+
+import com.arun.temporal.worker.throttle.MemoryBudget;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RangePrefetchInputStreamTest {
+
+    private static final byte[] DATA = "0123456789abcdefghij".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void should_return_range_in_order() throws IOException {
+        try (RangePrefetchInputStream stream = new RangePrefetchInputStream(
+                (start, end) -> CompletableFuture.completedFuture(Arrays.copyOfRange(DATA, (int) start, (int) end + 1)), 3, 17, 4, 2)) {
+            assertEquals("3456789abcdefgh", new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void should_hold_at_most_window_parts_including_the_current_one() throws IOException {
+        List<long[]> requested = new ArrayList<>();
+        List<CompletableFuture<byte[]>> pending = new ArrayList<>();
+        RangePrefetchInputStream stream = new RangePrefetchInputStream((start, end) -> {
+            requested.add(new long[]{start, end});
+            CompletableFuture<byte[]> part = new CompletableFuture<>();
+            pending.add(part);
+            return part;
+        }, 0, 19, 5, 2);
+        assertEquals(2, requested.size());
+        assertArrayEquals(new long[]{5, 9}, requested.get(1));
+
+        pending.get(0).complete(Arrays.copyOfRange(DATA, 0, 5));
+        assertEquals('0', stream.read());
+        assertEquals(2, requested.size());
+
+        pending.get(1).complete(Arrays.copyOfRange(DATA, 5, 10));
+        assertEquals(4, stream.read(new byte[4], 0, 4));
+        assertEquals('5', stream.read());
+        assertEquals(3, requested.size());
+        assertArrayEquals(new long[]{10, 14}, requested.get(2));
+        stream.close();
+        assertTrue(pending.get(2).isCancelled());
+    }
+
+    @Test
+    void should_read_ahead_only_within_memory_budget() throws IOException {
+        MemoryBudget budget = new MemoryBudget(10);
+        budget.acquire(3);
+        List<long[]> requested = new ArrayList<>();
+        RangePrefetchInputStream stream = new RangePrefetchInputStream((start, end) -> {
+            requested.add(new long[]{start, end});
+            return CompletableFuture.completedFuture(Arrays.copyOfRange(DATA, (int) start, (int) end + 1));
+        }, 0, 19, 5, 3, budget);
+        assertEquals(1, requested.size());
+        assertEquals(8, budget.used());
+
+        budget.release(3);
+        assertEquals('0', stream.read());
+        assertEquals(2, requested.size());
+        assertEquals(10, budget.used());
+
+        assertEquals("123456789abcdefghij", new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+        assertEquals(4, requested.size());
+        stream.close();
+        assertEquals(0, budget.used());
+    }
+
+    @Test
+    void should_surface_part_failure_as_io_exception() {
+        RangePrefetchInputStream stream = new RangePrefetchInputStream(
+                (start, end) -> CompletableFuture.failedFuture(new IllegalStateException("boom")), 0, 9, 5, 2);
+        assertTrue(stream.firstPart().isCompletedExceptionally());
+        IOException ex = assertThrows(IOException.class, stream::read);
+        assertInstanceOf(IllegalStateException.class, ex.getCause());
+    }
+}
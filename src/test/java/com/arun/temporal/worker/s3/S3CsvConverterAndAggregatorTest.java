@@ -1,9 +1,15 @@
 package com.arun.temporal.worker.s3;
 
 import com.arun.temporal.worker.configuration.AwsConfiguration;
+import com.arun.temporal.worker.exception.BulkProcessorException;
 import com.arun.temporal.worker.model.BulkApiRequest;
 import com.arun.temporal.worker.model.activity.ChunkProcessingResult;
+import com.arun.temporal.worker.model.activity.PartDetail;
+import com.arun.temporal.worker.model.activity.ProcessChunkRequest;
+import com.arun.temporal.worker.redis.RedisService;
 import com.arun.temporal.worker.service.S3Service;
+import com.arun.temporal.worker.throttle.MemoryBudget;
+import com.arun.temporal.worker.throttle.SubmitRateController;
 import com.arun.temporal.worker.util.TestData;
 import io.temporal.activity.Activity;
 import io.temporal.activity.ActivityExecutionContext;
@@ -13,14 +19,22 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
+import static com.arun.temporal.worker.constant.Constants.MIN_UPLOAD_PART_SIZE;
+import static com.arun.temporal.worker.constant.Constants.UNKNOWN_TOTAL_BATCHES;
+import static com.arun.temporal.worker.util.Util.getBatchTotalEntry;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
@@ -32,6 +46,14 @@ class S3CsvConverterAndAggregatorTest {
     AwsConfiguration awsConfiguration;
     @Mock
     S3Service s3Service;
+    @Mock
+    RedisService redisService;
+    @Mock
+    SubmitRateController submitRateController;
+    @Spy
+    PartBufferPool partBufferPool = new PartBufferPool(1024 * 1024, false, 2);
+    @Spy
+    MemoryBudget memoryBudget = new MemoryBudget(16 * 1024 * 1024);
 
     @InjectMocks
     S3CsvConverterAndAggregator aggregator;
@@ -54,13 +76,13 @@ class S3CsvConverterAndAggregatorTest {
         var response = mock(GetObjectResponse.class);
         when(mockResponseBytes.response()).thenReturn(response);
         when(response.contentLength()).thenReturn(10L);
-        when(mockResponseBytes.asUtf8String()).thenReturn(TestData.multipleGeocodedOutput);
-        List<String> completedBatchIds = List.of("queryId_1_0", "queryId_1_1");
+        when(mockResponseBytes.asByteArrayUnsafe()).thenReturn(TestData.multipleGeocodedOutput.getBytes(StandardCharsets.UTF_8));
+        stubCompletedBatches(chunkId, "queryId-1_0", "queryId-1_1");
         when(s3Service.getUploadId(Mockito.anyString(), Mockito.anyString())).thenReturn(CompletableFuture.completedFuture("chunkUploadId"));
         when(s3Service.getOutputStream(Mockito.anyString(), Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(mockResponseBytes));
         when(s3Service.uploadFilePart(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.any(), Mockito.any())).thenReturn(CompletableFuture.completedFuture(true));
         when(s3Service.completeMultiPartUpload(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(CompletableFuture.completedFuture(true));
-        when(s3Service.uploadChunkFilePart(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.any())).thenReturn(CompletableFuture.completedFuture("tagId"));
+        when(s3Service.uploadPartCopies(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.anyInt(), Mockito.any(), Mockito.anyLong(), Mockito.anyLong())).thenReturn(CompletableFuture.completedFuture(List.of(CompletedPart.builder().partNumber(1).eTag("tagId").build())));
         when(s3Service.deleteChunkData(Mockito.any(), Mockito.any())).thenReturn(CompletableFuture.completedFuture(true));
         ChunkProcessingResult result = aggregator.startUploadingProcess(chunkId, "queryId", totalBatches, request, "uploadId1");
         assertNotNull(result);
@@ -82,13 +104,13 @@ class S3CsvConverterAndAggregatorTest {
         var response = mock(GetObjectResponse.class);
         when(mockResponseBytes.response()).thenReturn(response);
         when(response.contentLength()).thenReturn(10L);
-        when(mockResponseBytes.asUtf8String()).thenReturn(TestData.multipleGeocodedOutput);
-        List<String> completedBatchIds = List.of("queryId_1_0", "queryId_1_1");
+        when(mockResponseBytes.asByteArrayUnsafe()).thenReturn(TestData.multipleGeocodedOutput.getBytes(StandardCharsets.UTF_8));
+        stubCompletedBatches(chunkId, "queryId-1_0", "queryId-1_1");
         when(s3Service.getUploadId(Mockito.anyString(), Mockito.anyString())).thenReturn(CompletableFuture.completedFuture("chunkUploadId"));
         when(s3Service.getOutputStream(Mockito.anyString(), Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(mockResponseBytes));
         when(s3Service.uploadFilePart(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.any(), Mockito.any())).thenReturn(CompletableFuture.completedFuture(true));
         when(s3Service.completeMultiPartUpload(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(CompletableFuture.completedFuture(true));
-        when(s3Service.uploadChunkFilePart(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.any())).thenReturn(CompletableFuture.completedFuture("tagId"));
+        when(s3Service.uploadPartCopies(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.anyInt(), Mockito.any(), Mockito.anyLong(), Mockito.anyLong())).thenReturn(CompletableFuture.completedFuture(List.of(CompletedPart.builder().partNumber(1).eTag("tagId").build())));
         when(s3Service.deleteChunkData(Mockito.any(), Mockito.any())).thenReturn(CompletableFuture.completedFuture(true));
         ChunkProcessingResult result = aggregator.startUploadingProcess(chunkId, "queryId", totalBatches, request2, "uploadId1");
         assertNotNull(result);
@@ -110,13 +132,13 @@ class S3CsvConverterAndAggregatorTest {
         var response = mock(GetObjectResponse.class);
         when(mockResponseBytes.response()).thenReturn(response);
         when(response.contentLength()).thenReturn(10L);
-        when(mockResponseBytes.asUtf8String()).thenReturn(TestData.multipleGeocodedOutput);
-        List<String> completedBatchIds = List.of("queryId_1_0", "queryId_1_1");
+        when(mockResponseBytes.asByteArrayUnsafe()).thenReturn(TestData.multipleGeocodedOutput.getBytes(StandardCharsets.UTF_8));
+        stubCompletedBatches(chunkId, "queryId-1_0", "queryId-1_1");
         when(s3Service.getUploadId(Mockito.anyString(), Mockito.anyString())).thenReturn(CompletableFuture.completedFuture("chunkUploadId"));
         when(s3Service.getOutputStream(Mockito.anyString(), Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(mockResponseBytes));
         when(s3Service.uploadFilePart(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.any(), Mockito.any())).thenReturn(CompletableFuture.completedFuture(true));
         when(s3Service.completeMultiPartUpload(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(CompletableFuture.completedFuture(true));
-        when(s3Service.uploadChunkFilePart(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.any())).thenReturn(CompletableFuture.completedFuture("tagId"));
+        when(s3Service.uploadPartCopies(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.anyInt(), Mockito.any(), Mockito.anyLong(), Mockito.anyLong())).thenReturn(CompletableFuture.completedFuture(List.of(CompletedPart.builder().partNumber(1).eTag("tagId").build())));
         when(s3Service.deleteChunkData(Mockito.any(), Mockito.any())).thenReturn(CompletableFuture.completedFuture(true));
         ChunkProcessingResult result = aggregator.startUploadingProcess(chunkId, "queryId", totalBatches, request, "uploadId1");
 
@@ -143,20 +165,44 @@ class S3CsvConverterAndAggregatorTest {
         var response = mock(GetObjectResponse.class);
         when(mockResponseBytes.response()).thenReturn(response);
         when(response.contentLength()).thenReturn(10L);
-        when(mockResponseBytes.asUtf8String()).thenReturn(TestData.multipleGeocodedOutput);
+        when(mockResponseBytes.asByteArrayUnsafe()).thenReturn(TestData.multipleGeocodedOutput.getBytes(StandardCharsets.UTF_8));
+        setPrivateField(aggregator, "completionPollInterval", Duration.ofMillis(10));
+        setPrivateField(aggregator, "completionMinPollInterval", Duration.ZERO);
+        when(redisService.subscribeBatchUpdates("queryId", chunkId)).thenReturn(Flux.never());
+        when(redisService.getCompletedBatches(eq("queryId"), eq(chunkId), anyLong())).thenReturn(Flux.empty(), Flux.just("queryId-1_0"));
+        when(redisService.getLegacyCompletedBatches("queryId", chunkId)).thenReturn(Flux.empty());
+        when(redisService.expireBatches("queryId", chunkId)).thenReturn(Mono.just(true));
         when(s3Service.getUploadId(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture("chunkUploadId"));
         when(s3Service.getOutputStream(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(mockResponseBytes));
         when(s3Service.uploadFilePart(any(), any(), any(), anyInt(), any(), any())).thenReturn(CompletableFuture.completedFuture(true));
         when(s3Service.completeMultiPartUpload(any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(true));
-        when(s3Service.uploadChunkFilePart(any(), any(), any(), anyInt(), any())).thenReturn(CompletableFuture.completedFuture("tagId"));
+        when(s3Service.uploadPartCopies(any(), any(), any(), anyInt(), anyInt(), any(), anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(List.of(CompletedPart.builder().partNumber(1).eTag("tagId").build())));
         when(s3Service.deleteChunkData(any(), any())).thenReturn(CompletableFuture.completedFuture(true));
 
         ChunkProcessingResult result = aggregator.startUploadingProcess(chunkId, "queryId", totalBatches, request, "uploadId1");
         assertNotNull(result);
         assertEquals(chunkId, result.id());
+        verify(redisService, times(2)).getCompletedBatches(eq("queryId"), eq(chunkId), anyLong());
         mockedStatic.close();
     }
 
+    @Test
+    void aggregateChunk_shouldReadAgainOnNotificationAfterEmptyRead() {
+        stubUploads();
+        setPrivateField(aggregator, "completionPollInterval", Duration.ofHours(1));
+        setPrivateField(aggregator, "completionMinPollInterval", Duration.ZERO);
+        when(redisService.subscribeBatchUpdates("queryId", 1)).thenReturn(Flux.just("rpush").delayElements(Duration.ofMillis(50)));
+        when(redisService.getCompletedBatches("queryId", 1, 0L)).thenReturn(Flux.empty(), Flux.just("queryId-1_1"));
+        when(redisService.getLegacyCompletedBatches("queryId", 1)).thenReturn(Flux.empty());
+        when(redisService.expireBatches("queryId", 1)).thenReturn(Mono.just(true));
+
+        ChunkProcessingResult result = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> aggregator.aggregateChunk(mock(ActivityExecutionContext.class), new ProcessChunkRequest(1, "uploadId1", 1, request), "queryId"));
+
+        assertEquals(1, result.totalBatchCount());
+        verify(redisService, times(2)).getCompletedBatches("queryId", 1, 0L);
+    }
+
     @Test
     void startUploadingProcess_shouldFilterBatchIdsCorrectly() throws Exception{
         int chunkId = 2;
@@ -175,20 +221,166 @@ class S3CsvConverterAndAggregatorTest {
         var response = mock(GetObjectResponse.class);
         when(mockResponseBytes.response()).thenReturn(response);
         when(response.contentLength()).thenReturn(10L);
-        when(mockResponseBytes.asUtf8String()).thenReturn(fileContent);
+        when(mockResponseBytes.asByteArrayUnsafe()).thenReturn(fileContent.getBytes(StandardCharsets.UTF_8));
+        stubCompletedBatches(chunkId, "queryId-2_1", "queryId-2_2", "queryId-2_2", "queryId-2_3", "queryId-2_4", "queryId-2_5");
         when(s3Service.getUploadId(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture("chunkUploadId"));
         when(s3Service.getOutputStream(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(mockResponseBytes));
         when(s3Service.uploadFilePart(any(), any(), any(), anyInt(), any(), any())).thenReturn(CompletableFuture.completedFuture(true));
         when(s3Service.completeMultiPartUpload(any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(true));
-        when(s3Service.uploadChunkFilePart(any(), any(), any(), anyInt(), any())).thenReturn(CompletableFuture.completedFuture("tagId"));
+        when(s3Service.uploadPartCopies(any(), any(), any(), anyInt(), anyInt(), any(), anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(List.of(CompletedPart.builder().partNumber(1).eTag("tagId").build())));
         when(s3Service.deleteChunkData(any(), any())).thenReturn(CompletableFuture.completedFuture(true));
 
         ChunkProcessingResult result = aggregator.startUploadingProcess(chunkId, "queryId", totalBatches, request, "uploadId1");
         assertNotNull(result);
         assertEquals(chunkId, result.id());
+        assertEquals(totalBatches, result.totalBatchCount());
+        verify(s3Service, times(totalBatches)).getOutputStream(anyString(), anyString());
         mockedStatic.close();
     }
 
+    @Test
+    void aggregateChunk_shouldReadCompletedListFromTheCursorItReached() {
+        stubUploads();
+        when(redisService.subscribeBatchUpdates("queryId", 1)).thenReturn(Flux.never());
+        when(redisService.getCompletedBatches("queryId", 1, 0L)).thenReturn(Flux.just("queryId-1_1", "queryId-1_2"));
+        when(redisService.getCompletedBatches("queryId", 1, 2L)).thenReturn(Flux.just("queryId-1_3"));
+        when(redisService.getLegacyCompletedBatches("queryId", 1)).thenReturn(Flux.empty());
+        when(redisService.expireBatches("queryId", 1)).thenReturn(Mono.just(true));
+
+        ChunkProcessingResult result = aggregator.aggregateChunk(mock(ActivityExecutionContext.class), new ProcessChunkRequest(1, "uploadId1", 3, request), "queryId");
+
+        assertEquals(3, result.totalBatchCount());
+        verify(redisService).getCompletedBatches("queryId", 1, 0L);
+        verify(redisService).getCompletedBatches("queryId", 1, 2L);
+        verify(s3Service, times(3)).getOutputStream(anyString(), anyString());
+    }
+
+    @Test
+    void aggregateChunk_shouldFetchRedeliveredBatchOnce() {
+        stubUploads();
+        stubCompletedBatches(1, "queryId-1_1", "queryId-1_1", "queryId-1_2", "queryId-1_1");
+
+        ChunkProcessingResult result = aggregator.aggregateChunk(mock(ActivityExecutionContext.class), new ProcessChunkRequest(1, "uploadId1", 2, request), "queryId");
+
+        assertEquals(2, result.totalBatchCount());
+        verify(s3Service, times(2)).getOutputStream(anyString(), anyString());
+        verify(submitRateController).recordCompletedBatches(2);
+    }
+
+    @Test
+    void aggregateChunk_shouldRunUntilBatchTotalAppendedToCompletedList() {
+        stubUploads();
+        when(redisService.subscribeBatchUpdates("queryId", 1)).thenReturn(Flux.never());
+        when(redisService.getCompletedBatches("queryId", 1, 0L)).thenReturn(Flux.just("queryId-1_1", getBatchTotalEntry(2)));
+        when(redisService.getCompletedBatches("queryId", 1, 2L)).thenReturn(Flux.just("queryId-1_2"));
+        when(redisService.getLegacyCompletedBatches("queryId", 1)).thenReturn(Flux.empty());
+        when(redisService.expireBatches("queryId", 1)).thenReturn(Mono.just(true));
+
+        ChunkProcessingResult result = aggregator.aggregateChunk(mock(ActivityExecutionContext.class), new ProcessChunkRequest(1, "uploadId1", UNKNOWN_TOTAL_BATCHES, request), "queryId");
+
+        assertEquals(2, result.totalBatchCount());
+        verify(redisService).getCompletedBatches("queryId", 1, 2L);
+        verify(s3Service, times(2)).getOutputStream(anyString(), anyString());
+    }
+
+    @Test
+    void aggregateChunk_shouldCountBatchesCompletedInLegacyHash() {
+        stubUploads();
+        when(redisService.subscribeBatchUpdates("queryId", 1)).thenReturn(Flux.never());
+        when(redisService.getCompletedBatches("queryId", 1, 0L)).thenReturn(Flux.just("queryId-1_1"));
+        when(redisService.getLegacyCompletedBatches("queryId", 1)).thenReturn(Flux.just("queryId-1_1", "queryId-1_2"));
+        when(redisService.expireBatches("queryId", 1)).thenReturn(Mono.just(true));
+
+        ChunkProcessingResult result = aggregator.aggregateChunk(mock(ActivityExecutionContext.class), new ProcessChunkRequest(1, "uploadId1", 2, request), "queryId");
+
+        assertEquals(2, result.totalBatchCount());
+        verify(s3Service, times(2)).getOutputStream(anyString(), anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void aggregateChunk_shouldGiveBackPartBuffersWhenBatchReadFails() {
+        MemoryBudget budget = new MemoryBudget(16 * 1024 * 1024);
+        S3CsvConverterAndAggregator budgeted = new S3CsvConverterAndAggregator(awsConfiguration, s3Service, redisService, submitRateController,
+                new PartBufferPool(1024 * 1024, false, 2, budget), budget);
+        ResponseBytes<GetObjectResponse> responseBytes = mock(ResponseBytes.class);
+        GetObjectResponse response = mock(GetObjectResponse.class);
+        when(responseBytes.response()).thenReturn(response);
+        when(response.contentLength()).thenReturn(10L);
+        when(responseBytes.asByteArrayUnsafe()).thenReturn(TestData.multipleGeocodedOutput.getBytes(StandardCharsets.UTF_8));
+        when(s3Service.getUploadId(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture("chunkUploadId"));
+        when(s3Service.getOutputStream(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(responseBytes),
+                CompletableFuture.failedFuture(new IllegalStateException("s3 down")));
+        when(redisService.subscribeBatchUpdates("queryId", 1)).thenReturn(Flux.never());
+        when(redisService.getCompletedBatches(eq("queryId"), eq(1), anyLong())).thenReturn(Flux.just("queryId-1_1", "queryId-1_2"));
+        when(redisService.getLegacyCompletedBatches("queryId", 1)).thenReturn(Flux.empty());
+
+        assertThrows(BulkProcessorException.class, () -> budgeted.aggregateChunk(mock(ActivityExecutionContext.class),
+                new ProcessChunkRequest(1, "uploadId1", 2, request), "queryId"));
+
+        assertEquals(0, budget.used());
+        budgeted.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void aggregateChunk_shouldStageTheFirstPartOfADirectChunk() {
+        S3CsvConverterAndAggregator direct = new S3CsvConverterAndAggregator(awsConfiguration, s3Service, redisService, submitRateController,
+                new PartBufferPool(5 * 1024 * 1024, false, 2), MemoryBudget.unbounded());
+        ResponseBytes<GetObjectResponse> responseBytes = mock(ResponseBytes.class);
+        GetObjectResponse response = mock(GetObjectResponse.class);
+        when(responseBytes.response()).thenReturn(response);
+        when(response.contentLength()).thenReturn(10L);
+        when(responseBytes.asByteArrayUnsafe()).thenReturn(TestData.multipleGeocodedOutput.getBytes(StandardCharsets.UTF_8));
+        when(s3Service.getOutputStream(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(responseBytes));
+        when(s3Service.putObject(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(true));
+        stubCompletedBatches(2, "queryId-2_1");
+
+        ChunkProcessingResult result = direct.aggregateChunk(mock(ActivityExecutionContext.class),
+                new ProcessChunkRequest(2, "uploadId1", 1, request, 3, 2, true), "queryId");
+
+        assertEquals(1, result.parts().size());
+        PartDetail part = result.parts().getFirst();
+        assertEquals(3, part.partNumber());
+        assertNotNull(part.sourceKey());
+        assertTrue(part.size() > 0 && part.size() < MIN_UPLOAD_PART_SIZE);
+        verify(s3Service).putObject(any(), eq(part.sourceKey()), any());
+        verify(s3Service, never()).uploadFilePart(any(), any(), any(), anyInt(), any(), any());
+        direct.close();
+    }
+
+    private void stubCompletedBatches(int chunkId, String... batchIds) {
+        when(redisService.subscribeBatchUpdates("queryId", chunkId)).thenReturn(Flux.never());
+        when(redisService.getCompletedBatches(eq("queryId"), eq(chunkId), anyLong())).thenReturn(Flux.just(batchIds));
+        when(redisService.getLegacyCompletedBatches("queryId", chunkId)).thenReturn(Flux.empty());
+        when(redisService.expireBatches("queryId", chunkId)).thenReturn(Mono.just(true));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubUploads() {
+        ResponseBytes<GetObjectResponse> responseBytes = mock(ResponseBytes.class);
+        GetObjectResponse response = mock(GetObjectResponse.class);
+        when(responseBytes.response()).thenReturn(response);
+        when(response.contentLength()).thenReturn(10L);
+        when(responseBytes.asByteArrayUnsafe()).thenReturn(TestData.multipleGeocodedOutput.getBytes(StandardCharsets.UTF_8));
+        when(s3Service.getUploadId(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture("chunkUploadId"));
+        when(s3Service.getOutputStream(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(responseBytes));
+        when(s3Service.uploadFilePart(any(), any(), any(), anyInt(), any(), any())).thenReturn(CompletableFuture.completedFuture(true));
+        when(s3Service.completeMultiPartUpload(any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(true));
+        when(s3Service.uploadPartCopies(any(), any(), any(), anyInt(), anyInt(), any(), anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(List.of(CompletedPart.builder().partNumber(1).eTag("tagId").build())));
+        when(s3Service.deleteChunkData(any(), any())).thenReturn(CompletableFuture.completedFuture(true));
+    }
+
+    private void setPrivateField(Object obj, String fieldName, Object value) {
+        try {
+            var field = obj.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(obj, value);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private Object getPrivateField(Object obj, String fieldName) {
         try {
             var field = obj.getClass().getDeclaredField(fieldName);
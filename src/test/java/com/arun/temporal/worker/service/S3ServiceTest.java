@@ -1,10 +1,12 @@
 package com.arun.temporal.worker.service;
 
 import com.arun.temporal.worker.exception.BulkProcessorException;
+import com.arun.temporal.worker.throttle.MemoryBudget;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import software.amazon.awssdk.core.ResponseBytes;
 import software.amazon.awssdk.core.ResponseInputStream;
@@ -14,6 +16,7 @@ import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.model.*;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -29,6 +32,9 @@ class S3ServiceTest {
     @Mock
     private S3AsyncClient s3AsyncClient;
 
+    @Spy
+    private MemoryBudget memoryBudget = new MemoryBudget(1024 * 1024);
+
     @InjectMocks
     private S3Service s3Service;
 
@@ -106,7 +112,7 @@ class S3ServiceTest {
         when(s3AsyncClient.uploadPart(any(UploadPartRequest.class), any(AsyncRequestBody.class))).thenReturn(future);
 
         List<CompletedPart> completedParts = new java.util.ArrayList<>();
-        CompletableFuture<Boolean> result = s3Service.uploadFilePart("bucket", "key", "uploadId", 1, new StringBuilder("data"), completedParts);
+        CompletableFuture<Boolean> result = s3Service.uploadFilePart("bucket", "key", "uploadId", 1, List.of(ByteBuffer.wrap("data".getBytes())), completedParts);
         assertTrue(result.join());
         assertEquals("etag123", completedParts.getFirst().eTag());
     }
@@ -122,6 +128,27 @@ class S3ServiceTest {
         assertEquals("etag456", result.join());
     }
 
+    @Test
+    void testUploadPartCopies_copiesRanges() {
+        when(s3AsyncClient.uploadPartCopy(any(UploadPartCopyRequest.class))).thenAnswer(invocation -> {
+            UploadPartCopyRequest request = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(UploadPartCopyResponse.builder()
+                    .copyPartResult(CopyPartResult.builder().eTag(request.copySourceRange()).build()).build());
+        });
+
+        List<CompletedPart> parts = s3Service.uploadPartCopies("bucket", "key", "uploadId", 11, 3, "groupKey", 25, 10).join();
+        assertEquals(List.of(11, 12, 13), parts.stream().map(CompletedPart::partNumber).toList());
+        assertEquals(List.of("bytes=0-9", "bytes=10-19", "bytes=20-24"), parts.stream().map(CompletedPart::eTag).toList());
+    }
+
+    @Test
+    void testUploadPartCopies_failsBeyondReservedParts() {
+        CompletableFuture<List<CompletedPart>> result = s3Service.uploadPartCopies("bucket", "key", "uploadId", 1, 2, "groupKey", 25, 10);
+        CompletionException exception = assertThrows(CompletionException.class, result::join);
+        assertInstanceOf(BulkProcessorException.class, exception.getCause());
+        verify(s3AsyncClient, never()).uploadPartCopy(any(UploadPartCopyRequest.class));
+    }
+
     @Test
     void testDeleteChunkData() {
         DeleteObjectResponse response = DeleteObjectResponse.builder().build();
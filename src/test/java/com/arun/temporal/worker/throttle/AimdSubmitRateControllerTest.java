@@ -0,0 +1,132 @@
+package com.arun.temporal.worker.throttle;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AimdSubmitRateControllerTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    AtomicLong clock;
+    AtomicReference<ProducerLoad> load;
+    AimdSubmitRateController controller;
+
+    @BeforeEach
+    void setup() {
+        clock = new AtomicLong(0);
+        load = new AtomicReference<>(ProducerLoad.UNKNOWN);
+        controller = new AimdSubmitRateController(10, 1, 40, 2, 0.5, 100, 0.2, 1.5,
+                Duration.ofSeconds(1), Duration.ofSeconds(10), load::get, clock::get);
+    }
+
+    @Test
+    void should_space_batches_by_the_current_rate() {
+        assertEquals(0L, controller.reserve());
+        assertEquals(SECOND / 10, controller.reserve());
+        assertEquals(2 * SECOND / 10, controller.reserve());
+    }
+
+    @Test
+    void should_increase_additively_without_congestion() {
+        tick();
+        assertEquals(12.0, controller.currentRate());
+        tick();
+        assertEquals(14.0, controller.currentRate());
+    }
+
+    @Test
+    void should_not_exceed_max_rate() {
+        for (int i = 0; i < 30; i++) {
+            tick();
+        }
+        assertEquals(40.0, controller.currentRate());
+    }
+
+    @Test
+    void should_halve_when_records_queue_too_long() {
+        load.set(new ProducerLoad(250, 0.9));
+        tick();
+        assertEquals(5.0, controller.currentRate());
+        tick();
+        tick();
+        tick();
+        assertEquals(1.0, controller.currentRate());
+    }
+
+    @Test
+    void should_halve_when_producer_buffer_runs_low() {
+        load.set(new ProducerLoad(5, 0.1));
+        tick();
+        assertEquals(5.0, controller.currentRate());
+    }
+
+    @Test
+    void should_fall_back_to_completion_ceiling_when_downstream_lags() {
+        // 4 batches/s over the 10s window: ceiling 6 batches/s
+        for (int i = 0; i < 15; i++) {
+            controller.recordCompletedBatches(4);
+            tick();
+        }
+        assertEquals(6.0, controller.currentRate());
+        controller.recordCompletedBatches(4);
+        tick();
+        assertEquals(6.0, controller.currentRate());
+    }
+
+    @Test
+    void should_not_cap_rate_before_completions_span_a_window() {
+        // averaged over the whole 10s window the first second would read as 1 batch/s
+        controller.recordCompletedBatches(10);
+        tick();
+        assertEquals(12.0, controller.currentRate());
+        for (int i = 0; i < 8; i++) {
+            tick();
+        }
+        assertEquals(28.0, controller.currentRate());
+    }
+
+    @Test
+    void should_drop_completion_ceiling_once_window_has_passed() {
+        controller.recordCompletedBatches(40);
+        clock.addAndGet(10 * SECOND);
+        controller.reserve();
+        assertEquals(6.0, controller.currentRate());
+        clock.addAndGet(11 * SECOND);
+        controller.reserve();
+        assertEquals(8.0, controller.currentRate());
+        // completions after an idle window start a new warm-up
+        controller.recordCompletedBatches(4);
+        tick();
+        assertEquals(10.0, controller.currentRate());
+    }
+
+    @Test
+    void should_adjust_once_per_interval() {
+        clock.addAndGet(SECOND);
+        controller.reserve();
+        controller.reserve();
+        clock.addAndGet(SECOND / 2);
+        controller.reserve();
+        assertEquals(12.0, controller.currentRate());
+    }
+
+    @Test
+    void should_reject_invalid_bounds() {
+        assertThrows(IllegalArgumentException.class, () -> new AimdSubmitRateController(10, 0, 40, 2, 0.5, 100, 0.2, 1.5,
+                Duration.ofSeconds(1), Duration.ofSeconds(10), load::get, clock::get));
+        assertThrows(IllegalArgumentException.class, () -> new AimdSubmitRateController(10, 1, 40, 2, 1.0, 100, 0.2, 1.5,
+                Duration.ofSeconds(1), Duration.ofSeconds(10), load::get, clock::get));
+    }
+
+    private void tick() {
+        clock.addAndGet(SECOND);
+        controller.reserve();
+    }
+}
@@ -0,0 +1,64 @@
+package com.arun.temporal.worker.throttle;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryBudgetTest {
+
+    @Test
+    void should_block_acquire_until_enough_is_released() throws Exception {
+        MemoryBudget budget = new MemoryBudget(100);
+        budget.acquire(80);
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> budget.acquire(30));
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+
+        budget.release(5);
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+
+        budget.release(20);
+        waiting.get(5, TimeUnit.SECONDS);
+        assertEquals(85, budget.used());
+    }
+
+    @Test
+    void should_time_out_try_acquire_without_taking_budget() {
+        MemoryBudget budget = new MemoryBudget(100);
+        assertTrue(budget.tryAcquire(60));
+        assertFalse(budget.tryAcquire(50));
+        assertFalse(budget.tryAcquire(50, Duration.ofMillis(20)));
+        assertEquals(60, budget.used());
+    }
+
+    @Test
+    void should_admit_oversized_request_when_nothing_is_held() {
+        MemoryBudget budget = new MemoryBudget(100);
+        assertTrue(budget.tryAcquire(250));
+        assertFalse(budget.tryAcquire(1));
+        budget.release(250);
+        assertEquals(0, budget.used());
+    }
+
+    @Test
+    void should_charge_beyond_capacity_and_publish_utilization() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MemoryBudget budget = new MemoryBudget(registry, 100);
+        budget.registerGauges();
+        budget.acquire(50);
+        budget.charge(100);
+        assertEquals(150, budget.used());
+        assertEquals(1.5, registry.get(MemoryBudget.UTILIZATION_GAUGE).gauge().value());
+        assertEquals(150, registry.get(MemoryBudget.USED_GAUGE).gauge().value());
+        assertFalse(budget.tryAcquire(1));
+
+        budget.release(120);
+        assertTrue(budget.tryAcquire(70));
+    }
+}
@@ -0,0 +1,82 @@
+package com.arun.temporal.worker.util;
+
+import com.arun.temporal.worker.exception.BulkProcessorException;
+import com.arun.temporal.worker.model.BulkResponse;
+import com.arun.temporal.worker.model.ReportData;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkResponseCsvWriterTest {
+
+    @Test
+    void should_write_same_rows_as_bound_response() throws Exception {
+        byte[] json = TestData.multipleGeocodedOutput.getBytes(StandardCharsets.UTF_8);
+        BulkResponse bound = JsonMapper.builder().enable(JsonReadFeature.ALLOW_TRAILING_COMMA).build().readValue(json, BulkResponse.class);
+        StringBuilder expected = new StringBuilder();
+        bound.getResponses().forEach(response -> expected.append(AddressReader.getRowValueForOutputCsv(response, ",", new ReportData())).append('\n'));
+
+        ReportData reportData = new ReportData();
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        int count = new BulkResponseCsvWriter(",").writeRows(json, 0, json.length, reportData, rows);
+
+        assertEquals(4, count);
+        assertEquals(4, reportData.getRecords().get());
+        assertEquals(expected.toString(), rows.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void should_quote_phone_and_address_containing_delimiter_only() {
+        String json = """
+                {"payloadLength": 1, "responses": [{"inputRequest": {"input3": "3", "input1": "a, b"}, "error": "none",
+                "address": "kbc road, delhi", "extra": {"nested": [1, 2]}, "phone": 12345, "name": null}]}""";
+        String rows = write(json, ",");
+        assertEquals(",,12345,\"kbc road, delhi\",a, b,,3,none\n", rows);
+    }
+
+    @Test
+    void should_support_multi_character_delimiter() {
+        String rows = write("{\"responses\": [{\"name\": \"n\", \"address\": \"x||y\", \"phone\": \"x|y\"}]}", "||");
+        assertEquals("n||||x|y||\"x||y\"||||||||\n", rows);
+    }
+
+    @Test
+    void should_write_empty_row_for_null_response() {
+        ReportData reportData = new ReportData();
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        byte[] json = "{\"responses\": [null]}".getBytes(StandardCharsets.UTF_8);
+        assertEquals(1, new BulkResponseCsvWriter("|").writeRows(json, 0, json.length, reportData, rows));
+        assertEquals("|||||||\n", rows.toString(StandardCharsets.UTF_8));
+        assertEquals(1, reportData.getRecords().get());
+    }
+
+    @Test
+    void should_write_nothing_without_responses() {
+        assertEquals("", write("{\"payloadLength\": 0}", ","));
+        assertEquals("", write("{\"responses\": []}", ","));
+        assertEquals("", write("{\"responses\": null}", ","));
+    }
+
+    @Test
+    void should_fail_on_malformed_json() {
+        assertThrows(BulkProcessorException.class, () -> write("{\"responses\": [{\"name\": ", ","));
+        assertThrows(BulkProcessorException.class, () -> write("[]", ","));
+    }
+
+    @Test
+    void should_encode_non_ascii_values_as_utf8() {
+        assertEquals("Zürich ☃ \uD83D\uDE00 ?,,,,,,,\n", write("{\"responses\": [{\"name\": \"Zürich \\u2603 \\uD83D\\uDE00 \\uD83D\"}]}", ","));
+    }
+
+    private static String write(String json, String delimiter) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        new BulkResponseCsvWriter(delimiter).writeRows(bytes, 0, bytes.length, new ReportData(), rows);
+        return rows.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,93 @@
+package com.arun.temporal.worker.util;
+
+import com.arun.temporal.worker.model.activity.InputCompression;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedChunkInputStreamTest {
+
+    private static final String CSV = "input1,input2,input3\na,b,c\nd,e,f\ng,h,i\nj,k,l\n";
+
+    @Test
+    void should_assign_every_line_to_exactly_one_chunk() throws IOException {
+        List<Long> blockStarts = new ArrayList<>();
+        byte[] compressed = bgzf(CSV.getBytes(StandardCharsets.UTF_8), 7, blockStarts);
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < blockStarts.size(); i += 2) {
+            long start = blockStarts.get(i);
+            long end = i + 2 < blockStarts.size() ? blockStarts.get(i + 2) - 1 : compressed.length - 1;
+            lines.append(readChunk(compressed, start, end, InputCompression.BGZF));
+        }
+        assertEquals("a,b,c\nd,e,f\ng,h,i\nj,k,l\n", lines.toString());
+    }
+
+    @Test
+    void should_read_plain_gzip_as_single_chunk_without_header() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(CSV.getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] compressed = out.toByteArray();
+        assertEquals(InputCompression.GZIP, CompressionUtil.detect(compressed));
+        assertEquals("a,b,c\nd,e,f\ng,h,i\nj,k,l\n", readChunk(compressed, 0, compressed.length - 1, InputCompression.GZIP));
+    }
+
+    @Test
+    void should_return_nothing_when_chunk_has_no_line_start() throws IOException {
+        InputStream stream = new CompressedChunkInputStream(new ByteArrayInputStream("middle-of-a-line".getBytes(StandardCharsets.UTF_8)),
+                () -> new ByteArrayInputStream("rest\nnext\n".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0, stream.readAllBytes().length);
+    }
+
+    @Test
+    void should_complete_last_line_from_tail() throws IOException {
+        InputStream stream = new CompressedChunkInputStream(new ByteArrayInputStream("tail of previous\nx,y".getBytes(StandardCharsets.UTF_8)),
+                () -> new ByteArrayInputStream(",z\nnot mine\n".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("x,y,z\n", new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    private static String readChunk(byte[] compressed, long start, long end, InputCompression compression) throws IOException {
+        InputStream own = CompressionUtil.decoder(new ByteArrayInputStream(compressed, (int) start, (int) (end - start + 1)), compression);
+        try (InputStream stream = new CompressedChunkInputStream(own,
+                () -> CompressionUtil.decoder(new ByteArrayInputStream(compressed, (int) end + 1, (int) (compressed.length - end - 1)), compression))) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    static byte[] bgzf(byte[] data, int blockSize, List<Long> blockStarts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int offset = 0; offset < data.length; offset += blockSize) {
+            int length = Math.min(blockSize, data.length - offset);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            byte[] deflated = new byte[length + 64];
+            int deflatedLength = deflater.deflate(deflated);
+            deflater.end();
+            CRC32 crc = new CRC32();
+            crc.update(data, offset, length);
+            int blockLength = 18 + deflatedLength + 8;
+            ByteBuffer block = ByteBuffer.allocate(blockLength).order(ByteOrder.LITTLE_ENDIAN)
+                    .put((byte) 0x1F).put((byte) 0x8B).put((byte) 8).put((byte) 4).putInt(0).put((byte) 0).put((byte) 0xFF)
+                    .putShort((short) 6).put((byte) 'B').put((byte) 'C').putShort((short) 2).putShort((short) (blockLength - 1))
+                    .put(deflated, 0, deflatedLength).putInt((int) crc.getValue()).putInt(length);
+            blockStarts.add((long) out.size());
+            out.writeBytes(block.array());
+        }
+        return out.toByteArray();
+    }
+}
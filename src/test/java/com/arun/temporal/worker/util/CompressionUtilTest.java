@@ -0,0 +1,61 @@
+package com.arun.temporal.worker.util;
+
+import com.arun.temporal.worker.model.activity.InputCompression;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionUtilTest {
+
+    @Test
+    void should_detect_compression_from_magic_bytes() {
+        assertEquals(InputCompression.NONE, CompressionUtil.detect("input1,input2".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(InputCompression.ZSTD, CompressionUtil.detect(new byte[]{0x28, (byte) 0xB5, 0x2F, (byte) 0xFD, 0}));
+        byte[] bgzf = CompressedChunkInputStreamTest.bgzf("a\n".getBytes(StandardCharsets.UTF_8), 10, new ArrayList<>());
+        assertEquals(InputCompression.BGZF, CompressionUtil.detect(bgzf));
+    }
+
+    @Test
+    void should_find_next_bgzf_block_start() {
+        List<Long> blockStarts = new ArrayList<>();
+        byte[] bgzf = CompressedChunkInputStreamTest.bgzf("input1,input2\nx,y\nz,w\n".getBytes(StandardCharsets.UTF_8), 5, blockStarts);
+        long probeStart = blockStarts.get(1) + 1;
+        byte[] probe = Arrays.copyOfRange(bgzf, (int) probeStart, bgzf.length);
+        assertEquals(blockStarts.get(2).longValue(), CompressionUtil.findBgzfBlockStart(probe, probeStart));
+        assertEquals(-1, CompressionUtil.findBgzfBlockStart(Arrays.copyOf(probe, 10), probeStart));
+    }
+
+    @Test
+    void should_read_seek_table_frame_offsets() {
+        ByteBuffer table = ByteBuffer.allocate(3 * 12 + CompressionUtil.SEEK_TABLE_FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        table.putInt(100).putInt(400).putInt(0).putInt(120).putInt(400).putInt(0).putInt(80).putInt(300).putInt(0);
+        table.putInt(3).put((byte) 0x80).putInt(0x8F92EAB1);
+        byte[] bytes = table.array();
+        CompressionUtil.SeekTableFooter footer = CompressionUtil.readSeekTableFooter(Arrays.copyOfRange(bytes, 36, bytes.length));
+        assertEquals(new CompressionUtil.SeekTableFooter(3, 12), footer);
+        assertEquals(List.of(0L, 100L, 220L), CompressionUtil.frameOffsets(Arrays.copyOf(bytes, 36), footer));
+        assertTrue(CompressionUtil.hasSeekTable(353, footer));
+        assertNull(CompressionUtil.readSeekTableFooter(new byte[CompressionUtil.SEEK_TABLE_FOOTER_SIZE]));
+    }
+
+    @Test
+    void should_align_cut_points_to_next_frame() {
+        assertEquals(List.of(100L, 220L, 353L), CompressionUtil.alignToFrames(List.of(50L, 101L, 250L), List.of(0L, 100L, 220L), 353));
+    }
+
+    @Test
+    void should_decode_truncated_sample() {
+        List<Long> blockStarts = new ArrayList<>();
+        byte[] bgzf = CompressedChunkInputStreamTest.bgzf("input1,input2\nx,y\nz,w\n".getBytes(StandardCharsets.UTF_8), 14, blockStarts);
+        byte[] truncated = Arrays.copyOf(bgzf, blockStarts.get(1).intValue() + 4);
+        String sample = new String(CompressionUtil.decodeSample(truncated, InputCompression.BGZF, 1024), StandardCharsets.UTF_8);
+        assertTrue(sample.startsWith("input1,input2\n"));
+    }
+}
@@ -0,0 +1,58 @@
+package com.arun.temporal.worker.util;
+
+import com.arun.temporal.worker.exception.BulkProcessorException;
+import com.arun.temporal.worker.model.InputRequest;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvFieldTokenizerTest {
+
+    private static final String[] HEADERS = {"id", "input1", "input2", "input3"};
+
+    @Test
+    void should_extract_projected_columns_only() {
+        InputRequest request = new CsvFieldTokenizer(HEADERS, ",").tokenize("7,kbc road,delhi,110001");
+        assertEquals("kbc road", request.getInput1());
+        assertEquals("delhi", request.getInput2());
+        assertEquals("110001", request.getInput3());
+    }
+
+    @Test
+    void should_keep_delimiter_inside_quotes() {
+        InputRequest request = new CsvFieldTokenizer(HEADERS, ",").tokenize("7,\"12, kbc road\",delhi,'110001'");
+        assertEquals("12, kbc road", request.getInput1());
+        assertEquals("delhi", request.getInput2());
+        assertEquals("110001", request.getInput3());
+    }
+
+    @Test
+    void should_fall_back_to_plain_split_when_quotes_are_unbalanced() {
+        InputRequest request = new CsvFieldTokenizer(HEADERS, "|").tokenize("7|\"kbc road|delhi|110001");
+        assertEquals("kbc road", request.getInput1());
+        assertEquals("delhi", request.getInput2());
+        assertEquals("110001", request.getInput3());
+    }
+
+    @Test
+    void should_return_null_for_missing_columns() {
+        InputRequest request = new CsvFieldTokenizer(HEADERS, "\t").tokenize("7\tkbc road");
+        assertEquals("kbc road", request.getInput1());
+        assertNull(request.getInput2());
+        assertNull(request.getInput3());
+    }
+
+    @Test
+    void should_tokenize_byte_slice() {
+        byte[] bytes = "xx7,a,b,cyy".getBytes();
+        InputRequest request = new CsvFieldTokenizer(HEADERS, ",").tokenize(bytes, 2, 7);
+        assertEquals("a", request.getInput1());
+        assertEquals("b", request.getInput2());
+        assertEquals("c", request.getInput3());
+    }
+
+    @Test
+    void should_reject_multi_character_delimiter() {
+        assertThrows(BulkProcessorException.class, () -> new CsvFieldTokenizer(HEADERS, ";;"));
+    }
+}
@@ -0,0 +1,97 @@
+package com.arun.temporal.worker.util;
+
+import com.arun.temporal.worker.model.activity.FileChunk;
+import com.arun.temporal.worker.model.activity.FileMetadata;
+import com.arun.temporal.worker.model.activity.SamplingStatistics;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileChunkReaderTest {
+
+    private final FileMetadata metadata = new FileMetadata(1, 10, 100, new String[]{"input1", "input2", "input3"}, 21);
+
+    @Test
+    void should_cut_every_chunk_size_after_header() {
+        assertEquals(List.of(51L, 81L), FileChunkReader.getChunkCutPoints(30, 1, metadata));
+    }
+
+    @Test
+    void should_find_line_start_after_first_newline() {
+        byte[] probe = "ab\ncd\n".getBytes(StandardCharsets.UTF_8);
+        assertEquals(53, FileChunkReader.findLineStart(probe, 50));
+        assertEquals(-1, FileChunkReader.findLineStart("abcd".getBytes(StandardCharsets.UTF_8), 50));
+    }
+
+    @Test
+    void should_build_contiguous_chunks_from_line_starts() {
+        List<FileChunk> chunks = FileChunkReader.buildChunkList(List.of(81L, 55L, 55L, 100L), metadata).chunks();
+        assertEquals(3, chunks.size());
+        assertEquals(21, chunks.get(0).startOffset());
+        assertEquals(54, chunks.get(0).endOffset());
+        assertEquals(55, chunks.get(1).startOffset());
+        assertEquals(80, chunks.get(1).endOffset());
+        assertEquals(81, chunks.get(2).startOffset());
+        assertEquals(99, chunks.get(2).endOffset());
+    }
+
+    @Test
+    void should_return_single_empty_chunk_for_header_only_file() {
+        FileMetadata headerOnly = new FileMetadata(1, 0, 21, new String[]{"input1", "input2", "input3"}, 21);
+        List<FileChunk> chunks = FileChunkReader.buildChunkList(List.of(), headerOnly).chunks();
+        assertEquals(1, chunks.size());
+        assertTrue(chunks.get(0).startOffset() > chunks.get(0).endOffset());
+    }
+
+    @Test
+    void should_map_line_views_until_end_offset() {
+        byte[] data = "a,b\r\nc,\u00e9\r\nd,e\r\n".getBytes(StandardCharsets.UTF_8);
+        AtomicLong position = new AtomicLong(100);
+        List<String> lines = FileChunkReader.readLinesFromInputStream(new ByteArrayInputStream(data), position, 105,
+                line -> line.length() + ":" + line.asString()).collectList().block();
+        assertEquals(List.of("3:a,b", "4:c,\u00e9"), lines);
+        assertEquals(111, position.get());
+    }
+
+    @Test
+    void should_keep_string_lines_for_compatibility() {
+        byte[] data = "a,b\nc,d".getBytes(StandardCharsets.UTF_8);
+        List<String> lines = FileChunkReader.readDataFromInputStream(new ByteArrayInputStream(data), new AtomicLong(0), 7).collectList().block();
+        assertEquals(List.of("a,b", "c,d"), lines);
+    }
+
+    @Test
+    void should_sample_complete_lines_after_first_break() {
+        assertArrayEquals(new int[]{4, 2}, FileChunkReader.sampleLineSizes("ail\nabc\nd\nunterminated".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0, FileChunkReader.sampleLineSizes("no break".getBytes(StandardCharsets.UTF_8)).length);
+    }
+
+    @Test
+    void should_summarize_line_size_distribution_per_region() {
+        SamplingStatistics statistics = FileChunkReader.buildSamplingStatistics(List.of(21L, 500L, 900L),
+                List.of(new int[]{10, 10, 10}, new int[0], new int[]{40, 50, 60}));
+        assertEquals(2, statistics.sampledRegions());
+        assertEquals(6, statistics.sampledLines());
+        assertEquals(10, statistics.minLineSize());
+        assertEquals(40, statistics.medianLineSize());
+        assertEquals(60, statistics.p90LineSize());
+        assertEquals(60, statistics.maxLineSize());
+        assertEquals(30, statistics.avgLineSize());
+        assertEquals(List.of(21L, 900L), statistics.regionOffsets());
+        assertEquals(10, statistics.avgLineSizeAt(899));
+        assertEquals(50, statistics.avgLineSizeAt(900));
+        assertNull(FileChunkReader.buildSamplingStatistics(List.of(21L), List.of(new int[0])));
+    }
+
+    @Test
+    void should_size_chunks_by_local_line_size_within_byte_budget() {
+        SamplingStatistics statistics = new SamplingStatistics(2, 10, 10, 10, 50, 50, 30, List.of(21L, 61L), List.of(10, 50));
+        FileMetadata sampled = new FileMetadata(1, 10, 200, new String[]{"input1", "input2", "input3"}, 21).withSamplingStatistics(statistics);
+        assertEquals(List.of(41L, 61L, 91L, 121L, 151L, 181L), FileChunkReader.getChunkCutPoints(15, 30, 2, sampled));
+    }
+}
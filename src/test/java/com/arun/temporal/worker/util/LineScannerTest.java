@@ -0,0 +1,56 @@
+package com.arun.temporal.worker.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineScannerTest {
+
+    @Test
+    void should_find_newline_in_every_word_position() {
+        for (int position = 0; position < 20; position++) {
+            byte[] bytes = new byte[20];
+            bytes[position] = '\n';
+            assertEquals(position, LineScanner.indexOfNewline(bytes, 0, bytes.length));
+        }
+        assertEquals(-1, LineScanner.indexOfNewline(new byte[20], 0, 20));
+    }
+
+    @Test
+    void should_ignore_bytes_with_high_bit_set() {
+        byte[] bytes = "é,ü\n".getBytes(StandardCharsets.UTF_8);
+        assertEquals(bytes.length - 1, LineScanner.indexOfNewline(bytes, 0, bytes.length));
+    }
+
+    @Test
+    void should_emit_lines_longer_than_buffer() throws IOException {
+        String content = "a,b,c\r\nlong line that does not fit the buffer\nlast";
+        List<String> lines = scan(content, 8);
+        assertEquals(List.of("a,b,c\r\n", "long line that does not fit the buffer\n", "last"), lines);
+        assertEquals(content.length(), lines.stream().mapToInt(String::length).sum());
+    }
+
+    @Test
+    void should_stop_when_handler_returns_false() throws IOException {
+        List<String> lines = new ArrayList<>();
+        new LineScanner(new ByteArrayInputStream("1\n2\n3\n".getBytes(StandardCharsets.UTF_8)), 16)
+                .scan((buffer, offset, length) -> {
+                    lines.add(new String(buffer, offset, length, StandardCharsets.UTF_8));
+                    return lines.size() < 2;
+                });
+        assertEquals(List.of("1\n", "2\n"), lines);
+    }
+
+    private List<String> scan(String content, int bufferSize) throws IOException {
+        List<String> lines = new ArrayList<>();
+        new LineScanner(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), bufferSize)
+                .scan((buffer, offset, length) -> lines.add(new String(buffer, offset, length, StandardCharsets.UTF_8)));
+        return lines;
+    }
+}
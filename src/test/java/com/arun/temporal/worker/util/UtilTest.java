@@ -15,4 +15,23 @@ class UtilTest {
         String currentQueryId = Util.getCurrentQueryId(apiType, fileName, outputFileId);
         assertEquals(apiType + "-" + fileName + "-" + outputFileId, currentQueryId);
     }
+
+    @Test
+    void get_batch_number_from_query_batch_id() {
+        assertEquals(12, Util.getBatchNumber("GEOCODE-file_1.csv-out_2-3_12"));
+    }
+
+    @Test
+    void get_batch_total_from_completed_entry() {
+        assertEquals("total:42", Util.getBatchTotalEntry(42));
+        assertEquals(42, Util.getBatchTotal(Util.getBatchTotalEntry(42)));
+        assertEquals(0, Util.getBatchTotal(Util.getBatchTotalEntry(0)));
+        assertEquals(-1, Util.getBatchTotal("GEOCODE-file_1.csv-out_2-3_12"));
+    }
+
+    @Test
+    void get_chunk_keys() {
+        assertEquals("query:3", Util.getChunkStatusKey("query", 3));
+        assertEquals("query:3:completed", Util.getChunkCompletedKey("query", 3));
+    }
 }
@@ -2,11 +2,17 @@ package com.arun.temporal.worker.workflow;
 
 import com.arun.temporal.worker.model.BulkApiRequest;
 import com.arun.temporal.worker.model.BulkWorkflowResponse;
+import com.arun.temporal.worker.model.BulkWorkflowState;
+import com.arun.temporal.worker.model.ChunkGroupRequest;
+import com.arun.temporal.worker.model.ChunkGroupResult;
+import com.arun.temporal.worker.model.OutputPlanState;
 import com.arun.temporal.worker.model.ReportData;
 import com.arun.temporal.worker.model.ReportDetail;
 import com.arun.temporal.worker.model.activity.*;
 import com.arun.temporal.worker.activities.BulkActivities;
+import com.arun.temporal.worker.constant.Constants;
 import io.temporal.activity.ActivityOptions;
+import io.temporal.activity.LocalActivityOptions;
 import io.temporal.workflow.*;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -26,7 +32,7 @@ class BulkWorkflowImplTest {
     @Mock
     BulkActivities bulkActivities;
     @Mock
-    Promise<ChunkProcessingResult> promise;
+    Promise<Object> promise;
     BulkWorkflowImpl workflow;
     private MockedStatic<Workflow> workflowStatic;
     private WorkflowInfo mockWorkflowInfo;
@@ -41,18 +47,39 @@ class BulkWorkflowImplTest {
                         eq(BulkActivities.class),
                         any(ActivityOptions.class)))
                 .thenReturn(bulkActivities);
+        workflowStatic.when(() -> Workflow.newLocalActivityStub(
+                        eq(BulkActivities.class),
+                        any(LocalActivityOptions.class)))
+                .thenReturn(bulkActivities);
         workflowStatic.when(Workflow::getInfo)
                 .thenReturn(mockWorkflowInfo);
+        workflowStatic.when(() -> Workflow.newCancellationScope(any(Runnable.class))).thenAnswer(invocation -> {
+            CancellationScope scope = mock(CancellationScope.class);
+            lenient().doAnswer(run -> {
+                invocation.<Runnable>getArgument(0).run();
+                return null;
+            }).when(scope).run();
+            return scope;
+        });
+        workflowStatic.when(() -> Workflow.getVersion(anyString(), anyInt(), anyInt()))
+                .thenReturn(1);
+
+        when(mockWorkflowInfo.getTaskQueue()).thenReturn("bulk-processing-queue");
 
         workflow = new BulkWorkflowImpl();
         Field field = BulkWorkflowImpl.class.getDeclaredField("bulkActivities");
         field.setAccessible(true);
         field.set(workflow, bulkActivities);
         asyncMock = mockStatic(Async.class);
-        asyncMock.when(() -> Async.function(any(Functions.Func.class))).thenAnswer(invocation -> promise);
+        asyncMock.when(() -> Async.function(any(Functions.Func.class))).thenAnswer(invocation -> {
+            Object value = invocation.<Functions.Func<?>>getArgument(0).apply();
+            Promise<Object> completed = mock(Promise.class);
+            lenient().when(completed.get()).thenReturn(value);
+            lenient().when(completed.isCompleted()).thenReturn(true);
+            return completed;
+        });
         promiseMock = mockStatic(Promise.class);
-        promiseMock.when(() -> Promise.anyOf(any(List.class))).thenAnswer(invocationOnMock -> promise);
-        when(promise.isCompleted()).thenReturn(true);
+        promiseMock.when(() -> Promise.anyOf(any(Promise[].class))).thenAnswer(invocationOnMock -> promise);
     }
 
     @AfterEach
@@ -74,8 +101,8 @@ class BulkWorkflowImplTest {
         when(bulkActivities.uploadChunk(any(), any())).thenReturn(new ChunkSubmitResult(1, 1));
         doNothing().when(bulkActivities).finalizeFileUpload(any());
         ChunkProcessingResult result = new ChunkProcessingResult(1, 2, 1, new ReportData(), "tag1");
-        when(promise.get()).thenReturn(result);
-        BulkWorkflowResponse response = workflow.executeWorkflow(input);
+        when(bulkActivities.processChunk(any())).thenReturn(result);
+        BulkWorkflowResponse response = workflow.executeWorkflow(input, null);
         assertNotNull(response);
         assertEquals("TEST", response.apiType());
         assertEquals("header", response.header());
@@ -99,8 +126,8 @@ class BulkWorkflowImplTest {
         doNothing().when(bulkActivities).createAndUploadReport(any());
         ReportData reportData = new ReportData();
         ChunkProcessingResult result = new ChunkProcessingResult(1, 2, 1, reportData, "tag1");
-        when(promise.get()).thenReturn(result);
-        BulkWorkflowResponse response = workflow.executeWorkflow(input);
+        when(bulkActivities.processChunk(any())).thenReturn(result);
+        BulkWorkflowResponse response = workflow.executeWorkflow(input, null);
         assertNotNull(response);
         assertEquals("TEST", response.apiType());
         assertEquals("with_report", response.header());
@@ -112,5 +139,250 @@ class BulkWorkflowImplTest {
 
         verify(bulkActivities).createAndUploadReport(argThat(req -> req.reportType().equals("CASS")));
     }
-}
 
+    @Test
+    void testExecuteWorkflow_AggregatesWhileSubmitting() {
+        ReportDetail reportDetail = new ReportDetail("TESTING INC.", "TEST", "1", "delhi india");
+        BulkApiRequest input = new BulkApiRequest("TEST", "fileId", "file.csv", "outputId", "wsId", "user@domain.com", "sample", "header", ",", "apiKey", reportDetail);
+        when(bulkActivities.getMaxParallelChunks()).thenReturn(new MaxParallelChunkResponse(4));
+        when(bulkActivities.generateUploadId(any(GenerateUploadIdRequest.class))).thenReturn(new GenerateUploadIdResponse("uploadId"));
+        List<FileChunk> chunks = List.of(new FileChunk(1, 0, 10, mock(FileMetadata.class)));
+        when(bulkActivities.splitFileIntoChunks(any(SplitChunkRequest.class))).thenReturn(new FileChunkListResponse(chunks));
+        when(bulkActivities.uploadChunk(any(), any())).thenReturn(new ChunkSubmitResult(1, 1));
+        when(bulkActivities.processChunk(any())).thenReturn(new ChunkProcessingResult(1, 2, 1, new ReportData(), "tag1"));
+
+        workflow.executeWorkflow(input, null);
+
+        workflowStatic.verify(() -> Workflow.newActivityStub(eq(BulkActivities.class),
+                argThat(options -> "bulk-processing-queue-aggregation".equals(options.getTaskQueue()))));
+        verify(bulkActivities).processChunk(argThat(request -> request.totalBatch() == Constants.UNKNOWN_TOTAL_BATCHES));
+    }
+
+    @Test
+    void testExecuteWorkflow_CancelsAggregationWhenSubmissionFails() {
+        ReportDetail reportDetail = new ReportDetail("TESTING INC.", "TEST", "1", "delhi india");
+        BulkApiRequest input = new BulkApiRequest("TEST", "fileId", "file.csv", "outputId", "wsId", "user@domain.com", "sample", "header", ",", "apiKey", reportDetail);
+        when(bulkActivities.getMaxParallelChunks()).thenReturn(new MaxParallelChunkResponse(4));
+        when(bulkActivities.generateUploadId(any(GenerateUploadIdRequest.class))).thenReturn(new GenerateUploadIdResponse("uploadId"));
+        List<FileChunk> chunks = List.of(new FileChunk(1, 0, 10, mock(FileMetadata.class)));
+        when(bulkActivities.splitFileIntoChunks(any(SplitChunkRequest.class))).thenReturn(new FileChunkListResponse(chunks));
+        RuntimeException submitFailure = new RuntimeException("uploadChunk failed");
+        when(bulkActivities.uploadChunk(any(), any())).thenThrow(submitFailure);
+        when(bulkActivities.processChunk(any())).thenReturn(new ChunkProcessingResult(1, 2, 1, new ReportData(), "tag1"));
+        asyncMock.when(() -> Async.function(any(Functions.Func.class))).thenAnswer(invocation -> {
+            Promise<Object> completed = mock(Promise.class);
+            lenient().when(completed.isCompleted()).thenReturn(true);
+            try {
+                Object value = invocation.<Functions.Func<?>>getArgument(0).apply();
+                lenient().when(completed.get()).thenReturn(value);
+            } catch (RuntimeException e) {
+                lenient().when(completed.getFailure()).thenReturn(e);
+                lenient().when(completed.get()).thenThrow(e);
+            }
+            return completed;
+        });
+        CancellationScope aggregation = mock(CancellationScope.class);
+        workflowStatic.when(() -> Workflow.newCancellationScope(any(Runnable.class))).thenAnswer(invocation -> {
+            doAnswer(run -> {
+                invocation.<Runnable>getArgument(0).run();
+                return null;
+            }).when(aggregation).run();
+            return aggregation;
+        });
+
+        assertSame(submitFailure, assertThrows(RuntimeException.class, () -> workflow.executeWorkflow(input, null)));
+
+        verify(bulkActivities).processChunk(any());
+        verify(aggregation).cancel();
+        verify(bulkActivities, never()).finalizeFileUpload(any());
+    }
+
+    @Test
+    void testExecuteWorkflow_SubmitsChunksSeriallyBeforePipelinedVersion() {
+        ReportDetail reportDetail = new ReportDetail("TESTING INC.", "TEST", "1", "delhi india");
+        BulkApiRequest input = new BulkApiRequest("TEST", "fileId", "file.csv", "outputId", "wsId", "user@domain.com", "sample", "header", ",", "apiKey", reportDetail);
+        workflowStatic.when(() -> Workflow.getVersion(eq(ChunkRunner.PIPELINED_CHUNKS_CHANGE), anyInt(), anyInt()))
+                .thenReturn(Workflow.DEFAULT_VERSION);
+        when(bulkActivities.getMaxParallelChunks()).thenReturn(new MaxParallelChunkResponse(4));
+        when(bulkActivities.generateUploadId(any(GenerateUploadIdRequest.class))).thenReturn(new GenerateUploadIdResponse("uploadId"));
+        List<FileChunk> chunks = List.of(new FileChunk(1, 0, 10, mock(FileMetadata.class)));
+        when(bulkActivities.splitFileIntoChunks(any(SplitChunkRequest.class))).thenReturn(new FileChunkListResponse(chunks));
+        when(bulkActivities.uploadChunk(any(), any())).thenReturn(new ChunkSubmitResult(3, 10));
+        when(bulkActivities.processChunk(any())).thenReturn(new ChunkProcessingResult(1, 10, 3, new ReportData(), "tag1"));
+
+        workflow.executeWorkflow(input, null);
+
+        verify(bulkActivities).processChunk(argThat(request -> request.totalBatch() == 3));
+        asyncMock.verify(() -> Async.function(any(Functions.Func.class)), times(1));
+        verify(bulkActivities).finalizeFileUpload(any());
+    }
+
+    @Test
+    void testExecuteWorkflow_RunsControlStepsAsLocalActivities() {
+        ReportDetail reportDetail = new ReportDetail("TESTING INC.", "TEST", "1", "delhi india");
+        BulkApiRequest input = new BulkApiRequest("TEST", "fileId", "file.csv", "outputId", "wsId", "user@domain.com", "sample", "header", ",", "apiKey", reportDetail);
+        when(bulkActivities.getMaxParallelChunks()).thenReturn(new MaxParallelChunkResponse(4));
+        when(bulkActivities.generateUploadId(any(GenerateUploadIdRequest.class))).thenReturn(new GenerateUploadIdResponse("uploadId"));
+        List<FileChunk> chunks = List.of(new FileChunk(1, 0, 10, mock(FileMetadata.class)));
+        when(bulkActivities.splitFileIntoChunks(any(SplitChunkRequest.class))).thenReturn(new FileChunkListResponse(chunks));
+        when(bulkActivities.uploadChunk(any(), any())).thenReturn(new ChunkSubmitResult(1, 1));
+        when(bulkActivities.processChunk(any())).thenReturn(new ChunkProcessingResult(1, 2, 1, new ReportData(), "tag1"));
+
+        workflow.executeWorkflow(input, null);
+
+        workflowStatic.verify(() -> Workflow.newLocalActivityStub(eq(BulkActivities.class), eq(BulkWorkflowImpl.LOCAL_ACTIVITY_OPTIONS)));
+        verify(bulkActivities).finalizeFileUpload(argThat(request -> "uploadId".equals(request.uploadId())));
+    }
+
+    @Test
+    void testExecuteWorkflow_KeepsControlStepsOnTaskQueueBeforeLocalVersion() throws Exception {
+        ReportDetail reportDetail = new ReportDetail("TESTING INC.", "TEST", "1", "delhi india");
+        BulkApiRequest input = new BulkApiRequest("TEST", "fileId", "file.csv", "outputId", "wsId", "user@domain.com", "sample", "header", ",", "apiKey", reportDetail);
+        workflowStatic.when(() -> Workflow.getVersion(eq(BulkWorkflowImpl.LOCAL_CONTROL_ACTIVITIES_CHANGE), anyInt(), anyInt()))
+                .thenReturn(Workflow.DEFAULT_VERSION);
+        BulkActivities localActivities = mock(BulkActivities.class);
+        Field field = BulkWorkflowImpl.class.getDeclaredField("localActivities");
+        field.setAccessible(true);
+        field.set(workflow, localActivities);
+        when(bulkActivities.getMaxParallelChunks()).thenReturn(new MaxParallelChunkResponse(4));
+        when(bulkActivities.generateUploadId(any(GenerateUploadIdRequest.class))).thenReturn(new GenerateUploadIdResponse("uploadId"));
+        List<FileChunk> chunks = List.of(new FileChunk(1, 0, 10, mock(FileMetadata.class)));
+        when(bulkActivities.splitFileIntoChunks(any(SplitChunkRequest.class))).thenReturn(new FileChunkListResponse(chunks));
+        when(bulkActivities.uploadChunk(any(), any())).thenReturn(new ChunkSubmitResult(1, 1));
+        when(bulkActivities.processChunk(any())).thenReturn(new ChunkProcessingResult(1, 2, 1, new ReportData(), "tag1"));
+
+        workflow.executeWorkflow(input, null);
+
+        verify(bulkActivities).finalizeFileUpload(argThat(request -> "uploadId".equals(request.uploadId())));
+        verifyNoInteractions(localActivities);
+    }
+
+    @Test
+    void testExecuteWorkflow_ContinuesAsNewOnceHistoryIsFull() {
+        ReportDetail reportDetail = new ReportDetail("TESTING INC.", "TEST", "1", "delhi india");
+        BulkApiRequest input = new BulkApiRequest("TEST", "fileId", "file.csv", "outputId", "wsId", "user@domain.com", "sample", "header", ",", "apiKey", reportDetail);
+        when(bulkActivities.getMaxParallelChunks()).thenReturn(new MaxParallelChunkResponse(1, false, 1, 100, 1, 0));
+        when(bulkActivities.generateUploadId(any(GenerateUploadIdRequest.class))).thenReturn(new GenerateUploadIdResponse("uploadId"));
+        FileMetadata metadata = new FileMetadata(1, 10, 30, new String[]{"input1"}, 0);
+        List<FileChunk> chunks = List.of(new FileChunk(1, 0, 9, metadata), new FileChunk(2, 10, 19, metadata), new FileChunk(3, 20, 29, metadata));
+        when(bulkActivities.splitFileIntoChunks(any(SplitChunkRequest.class))).thenReturn(new FileChunkListResponse(chunks));
+        when(bulkActivities.uploadChunk(any(), any())).thenReturn(new ChunkSubmitResult(1, 3));
+        when(bulkActivities.processChunk(any())).thenReturn(new ChunkProcessingResult(1, 3, 1, new ReportData(), "tag1"));
+        when(mockWorkflowInfo.getHistoryLength()).thenReturn(150L);
+        BulkWorkflow next = mock(BulkWorkflow.class);
+        workflowStatic.when(() -> Workflow.newContinueAsNewStub(BulkWorkflow.class)).thenReturn(next);
+
+        workflow.executeWorkflow(input, null);
+
+        ArgumentCaptor<BulkWorkflowState> state = ArgumentCaptor.forClass(BulkWorkflowState.class);
+        verify(next).executeWorkflow(eq(input), state.capture());
+        assertEquals("uploadId", state.getValue().uploadId());
+        assertEquals(2, state.getValue().nextChunkNumber());
+        assertEquals(chunks.subList(1, 3), state.getValue().remainingChunks());
+        assertEquals(3, state.getValue().successfulRecordCount());
+        assertEquals(List.of(new PartDetail(1, "tag1")), state.getValue().outputPlan().finalParts());
+        verify(bulkActivities, times(1)).uploadChunk(any(), any());
+        verify(bulkActivities, never()).finalizeFileUpload(any());
+    }
+
+    @Test
+    void testExecuteWorkflow_NeverContinuesAsNewBeforeItsVersion() {
+        ReportDetail reportDetail = new ReportDetail("TESTING INC.", "TEST", "1", "delhi india");
+        BulkApiRequest input = new BulkApiRequest("TEST", "fileId", "file.csv", "outputId", "wsId", "user@domain.com", "sample", "header", ",", "apiKey", reportDetail);
+        workflowStatic.when(() -> Workflow.getVersion(eq(BulkWorkflowImpl.CONTINUE_AS_NEW_CHANGE), anyInt(), anyInt()))
+                .thenReturn(Workflow.DEFAULT_VERSION);
+        when(bulkActivities.getMaxParallelChunks()).thenReturn(new MaxParallelChunkResponse(1, false, 1, 100, 1, 0));
+        when(bulkActivities.generateUploadId(any(GenerateUploadIdRequest.class))).thenReturn(new GenerateUploadIdResponse("uploadId"));
+        FileMetadata metadata = new FileMetadata(1, 10, 30, new String[]{"input1"}, 0);
+        List<FileChunk> chunks = List.of(new FileChunk(1, 0, 9, metadata), new FileChunk(2, 10, 19, metadata), new FileChunk(3, 20, 29, metadata));
+        when(bulkActivities.splitFileIntoChunks(any(SplitChunkRequest.class))).thenReturn(new FileChunkListResponse(chunks));
+        when(bulkActivities.uploadChunk(any(), any())).thenReturn(new ChunkSubmitResult(1, 3));
+        when(bulkActivities.processChunk(any())).thenReturn(new ChunkProcessingResult(1, 3, 1, new ReportData(), "tag1"));
+        lenient().when(mockWorkflowInfo.getHistoryLength()).thenReturn(150L);
+
+        workflow.executeWorkflow(input, null);
+
+        workflowStatic.verify(() -> Workflow.newContinueAsNewStub(BulkWorkflow.class), never());
+        verify(bulkActivities, times(3)).uploadChunk(any(), any());
+        verify(bulkActivities).finalizeFileUpload(any());
+    }
+
+    @Test
+    void testExecuteWorkflow_ResumesFromCarriedState() {
+        ReportDetail reportDetail = new ReportDetail("TESTING INC.", "TEST", "1", "delhi india");
+        BulkApiRequest input = new BulkApiRequest("TEST", "fileId", "file.csv", "outputId", "wsId", "user@domain.com", "sample", "header", ",", "apiKey", reportDetail);
+        when(bulkActivities.getMaxParallelChunks()).thenReturn(new MaxParallelChunkResponse(4));
+        when(bulkActivities.uploadChunk(any(), any())).thenReturn(new ChunkSubmitResult(1, 3));
+        when(bulkActivities.processChunk(any())).thenReturn(new ChunkProcessingResult(3, 3, 1, new ReportData(), "tag3"));
+        FileMetadata metadata = new FileMetadata(1, 10, 30, new String[]{"input1"}, 0);
+        OutputPlanState outputPlan = new OutputPlanState(3, 2, List.of(), List.of(List.of()), List.of(3), List.of(new PartDetail(1, "tag1"), new PartDetail(3334, "tag2")));
+        BulkWorkflowState state = new BulkWorkflowState("uploadId", metadata, 3, List.of(20L), outputPlan, 6, 6, new ReportData());
+
+        workflow.executeWorkflow(input, state);
+
+        verify(bulkActivities, never()).generateUploadId(any());
+        verify(bulkActivities, never()).splitFileIntoChunks(any());
+        verify(bulkActivities).uploadChunk(eq(new FileChunk(3, 20, 29, metadata)), eq(input));
+        verify(bulkActivities).processChunk(argThat(request -> request.firstPartNumber() == 6667));
+        verify(bulkActivities).finalizeFileUpload(argThat(request -> "uploadId".equals(request.uploadId()) && request.parts().size() == 3));
+    }
+
+    @Test
+    void testExecuteWorkflow_ShardsLargeFilesOverChildWorkflows() {
+        ReportDetail reportDetail = new ReportDetail("TESTING INC.", "TEST", "1", "delhi india");
+        BulkApiRequest input = new BulkApiRequest("TEST", "fileId", "file.csv", "outputId", "wsId", "user@domain.com", "sample", "header", ",", "apiKey", reportDetail);
+        when(bulkActivities.getMaxParallelChunks()).thenReturn(new MaxParallelChunkResponse(2, false, 1, 0, 4, 20));
+        when(bulkActivities.generateUploadId(any(GenerateUploadIdRequest.class))).thenReturn(new GenerateUploadIdResponse("uploadId"));
+        FileMetadata metadata = new FileMetadata(1, 10, 30, new String[]{"input1"}, 0);
+        List<FileChunk> chunks = List.of(new FileChunk(1, 0, 9, metadata), new FileChunk(2, 10, 19, metadata), new FileChunk(3, 20, 29, metadata));
+        when(bulkActivities.splitFileIntoChunks(any(SplitChunkRequest.class))).thenReturn(new FileChunkListResponse(chunks));
+        when(mockWorkflowInfo.getWorkflowId()).thenReturn("job");
+        ChunkGroupWorkflow child = mock(ChunkGroupWorkflow.class);
+        workflowStatic.when(() -> Workflow.newChildWorkflowStub(eq(ChunkGroupWorkflow.class), any(ChildWorkflowOptions.class))).thenReturn(child);
+        when(child.processChunkGroup(any())).thenAnswer(invocation -> {
+            ChunkGroupRequest request = invocation.getArgument(0);
+            List<ChunkGroupResult.ChunkParts> parts = request.chunks().stream()
+                    .map(chunk -> new ChunkGroupResult.ChunkParts(chunk.chunkNumber(), List.of(new PartDetail(chunk.chunkNumber(), "tag" + chunk.chunkNumber()))))
+                    .toList();
+            return new ChunkGroupResult(parts, parts.size(), parts.size(), new ReportData());
+        });
+        asyncMock.when(() -> Async.function(any(Functions.Func1.class), any())).thenAnswer(invocation -> {
+            Object value = invocation.<Functions.Func1<Object, ?>>getArgument(0).apply(invocation.getArgument(1));
+            Promise<Object> completed = mock(Promise.class);
+            lenient().when(completed.get()).thenReturn(value);
+            return completed;
+        });
+
+        workflow.executeWorkflow(input, null);
+
+        ArgumentCaptor<ChunkGroupRequest> shards = ArgumentCaptor.forClass(ChunkGroupRequest.class);
+        verify(child, times(2)).processChunkGroup(shards.capture());
+        assertEquals(chunks.subList(0, 2), shards.getAllValues().get(0).chunks());
+        assertEquals(chunks.subList(2, 3), shards.getAllValues().get(1).chunks());
+        assertEquals(2, shards.getAllValues().get(1).outputPlan().nextChunkIndex());
+        workflowStatic.verify(() -> Workflow.newChildWorkflowStub(eq(ChunkGroupWorkflow.class),
+                argThat(options -> "job-shard-1".equals(options.getWorkflowId()))));
+        verify(bulkActivities, never()).uploadChunk(any(), any());
+        verify(bulkActivities).finalizeFileUpload(argThat(request -> request.parts().size() == 3));
+    }
+
+    @Test
+    void testExecuteWorkflow_NeverShardsBeforeItsVersion() {
+        ReportDetail reportDetail = new ReportDetail("TESTING INC.", "TEST", "1", "delhi india");
+        BulkApiRequest input = new BulkApiRequest("TEST", "fileId", "file.csv", "outputId", "wsId", "user@domain.com", "sample", "header", ",", "apiKey", reportDetail);
+        workflowStatic.when(() -> Workflow.getVersion(eq(BulkWorkflowImpl.CHUNK_SHARDS_CHANGE), anyInt(), anyInt()))
+                .thenReturn(Workflow.DEFAULT_VERSION);
+        when(bulkActivities.getMaxParallelChunks()).thenReturn(new MaxParallelChunkResponse(2, false, 1, 0, 4, 20));
+        when(bulkActivities.generateUploadId(any(GenerateUploadIdRequest.class))).thenReturn(new GenerateUploadIdResponse("uploadId"));
+        FileMetadata metadata = new FileMetadata(1, 10, 30, new String[]{"input1"}, 0);
+        List<FileChunk> chunks = List.of(new FileChunk(1, 0, 9, metadata), new FileChunk(2, 10, 19, metadata), new FileChunk(3, 20, 29, metadata));
+        when(bulkActivities.splitFileIntoChunks(any(SplitChunkRequest.class))).thenReturn(new FileChunkListResponse(chunks));
+        when(bulkActivities.uploadChunk(any(), any())).thenReturn(new ChunkSubmitResult(1, 3));
+        when(bulkActivities.processChunk(any())).thenReturn(new ChunkProcessingResult(1, 3, 1, new ReportData(), "tag1"));
+
+        workflow.executeWorkflow(input, null);
+
+        workflowStatic.verify(() -> Workflow.newChildWorkflowStub(eq(ChunkGroupWorkflow.class), any(ChildWorkflowOptions.class)), never());
+        verify(bulkActivities, times(3)).uploadChunk(any(), any());
+    }
+}
@@ -0,0 +1,119 @@
+package com.arun.temporal.worker.workflow;
+
+import com.arun.temporal.worker.activities.BulkActivities;
+import com.arun.temporal.worker.model.BulkApiRequest;
+import com.arun.temporal.worker.model.ChunkGroupRequest;
+import com.arun.temporal.worker.model.ChunkGroupResult;
+import com.arun.temporal.worker.model.OutputPlanState;
+import com.arun.temporal.worker.model.ReportData;
+import com.arun.temporal.worker.model.activity.*;
+import io.temporal.activity.ActivityOptions;
+import io.temporal.workflow.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.*;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChunkGroupWorkflowImplTest {
+    @Mock
+    BulkActivities bulkActivities;
+    @Mock
+    Promise<Object> promise;
+    ChunkGroupWorkflowImpl workflow;
+    private MockedStatic<Workflow> workflowStatic;
+    private WorkflowInfo mockWorkflowInfo;
+    private MockedStatic<Async> asyncMock;
+    MockedStatic<Promise> promiseMock;
+
+    private final BulkApiRequest input = new BulkApiRequest("TEST", "fileId", "file.csv", "outputId", "wsId", "user@domain.com", "sample", "header", ",", "apiKey", null);
+    private final FileMetadata metadata = new FileMetadata(1, 10, 40, new String[]{"input1"}, 0);
+
+    @BeforeEach
+    void setup() {
+        mockWorkflowInfo = mock(WorkflowInfo.class);
+        workflowStatic = mockStatic(Workflow.class);
+        workflowStatic.when(() -> Workflow.newActivityStub(
+                        eq(BulkActivities.class),
+                        any(ActivityOptions.class)))
+                .thenReturn(bulkActivities);
+        workflowStatic.when(Workflow::getInfo)
+                .thenReturn(mockWorkflowInfo);
+        workflowStatic.when(() -> Workflow.newCancellationScope(any(Runnable.class))).thenAnswer(invocation -> {
+            CancellationScope scope = mock(CancellationScope.class);
+            lenient().doAnswer(run -> {
+                invocation.<Runnable>getArgument(0).run();
+                return null;
+            }).when(scope).run();
+            return scope;
+        });
+        when(mockWorkflowInfo.getTaskQueue()).thenReturn("bulk-processing-queue");
+
+        workflow = new ChunkGroupWorkflowImpl();
+        asyncMock = mockStatic(Async.class);
+        asyncMock.when(() -> Async.function(any(Functions.Func.class))).thenAnswer(invocation -> {
+            Object value = invocation.<Functions.Func<?>>getArgument(0).apply();
+            Promise<Object> completed = mock(Promise.class);
+            lenient().when(completed.get()).thenReturn(value);
+            lenient().when(completed.isCompleted()).thenReturn(true);
+            return completed;
+        });
+        promiseMock = mockStatic(Promise.class);
+        promiseMock.when(() -> Promise.anyOf(any(Promise[].class))).thenAnswer(invocationOnMock -> promise);
+        when(bulkActivities.uploadChunk(any(), any())).thenReturn(new ChunkSubmitResult(1, 3));
+        when(bulkActivities.processChunk(any())).thenAnswer(invocation -> {
+            ProcessChunkRequest request = invocation.getArgument(0);
+            return new ChunkProcessingResult(request.chunkNumber(), 3, 1, new ReportData(), "tag" + request.chunkNumber());
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        workflowStatic.close();
+        asyncMock.close();
+        promiseMock.close();
+    }
+
+    @Test
+    void testProcessChunkGroup_ReturnsPartsOfEveryChunk() {
+        List<FileChunk> chunks = List.of(new FileChunk(2, 10, 19, metadata), new FileChunk(3, 20, 29, metadata));
+        ChunkGroupRequest request = ChunkGroupRequest.of(input, "uploadId", chunks, new OutputPlanState(4, 1, List.of(), List.of(List.of()), List.of(4), List.of()),
+                false, 2, 2, 0);
+
+        ChunkGroupResult result = workflow.processChunkGroup(request);
+
+        assertEquals(List.of(2, 3), result.chunks().stream().map(ChunkGroupResult.ChunkParts::chunkNumber).toList());
+        assertEquals(6, result.totalRecordCount());
+        assertEquals(6, result.successfulRecordCount());
+        verify(bulkActivities).processChunk(argThat(chunk -> chunk.chunkNumber() == 2 && chunk.firstPartNumber() == 2501));
+        workflowStatic.verify(() -> Workflow.newContinueAsNewStub(ChunkGroupWorkflow.class), never());
+    }
+
+    @Test
+    void testProcessChunkGroup_ContinuesAsNewOnceHistoryIsFull() {
+        List<FileChunk> chunks = List.of(new FileChunk(2, 10, 19, metadata), new FileChunk(3, 20, 29, metadata), new FileChunk(4, 30, 39, metadata));
+        ChunkGroupResult progress = new ChunkGroupResult(List.of(new ChunkGroupResult.ChunkParts(1, List.of(new PartDetail(1, "tag1")))), 3, 3, new ReportData());
+        ChunkGroupRequest request = ChunkGroupRequest.of(input, "uploadId", chunks, new OutputPlanState(4, 1, List.of(), List.of(List.of()), List.of(4), List.of()),
+                false, 1, 1, 100).continueWith(chunks, new OutputPlanState(4, 1, List.of(), List.of(List.of()), List.of(4), List.of()), progress);
+        when(mockWorkflowInfo.getHistoryLength()).thenReturn(150L);
+        ChunkGroupWorkflow next = mock(ChunkGroupWorkflow.class);
+        workflowStatic.when(() -> Workflow.newContinueAsNewStub(ChunkGroupWorkflow.class)).thenReturn(next);
+
+        workflow.processChunkGroup(request);
+
+        ArgumentCaptor<ChunkGroupRequest> carried = ArgumentCaptor.forClass(ChunkGroupRequest.class);
+        verify(next).processChunkGroup(carried.capture());
+        assertEquals(chunks.subList(1, 3), carried.getValue().chunks());
+        assertEquals(2, carried.getValue().outputPlan().nextChunkIndex());
+        assertEquals(List.of(1, 2), carried.getValue().progress().chunks().stream().map(ChunkGroupResult.ChunkParts::chunkNumber).toList());
+        assertEquals(6, carried.getValue().progress().successfulRecordCount());
+        verify(bulkActivities, times(1)).uploadChunk(any(), any());
+    }
+}
@@ -0,0 +1,120 @@
+package com.arun.temporal.worker.workflow;
+
+import com.arun.temporal.worker.model.OutputPlanState;
+import com.arun.temporal.worker.model.activity.ComposeUploadRequest;
+import com.arun.temporal.worker.model.activity.PartDetail;
+import com.arun.temporal.worker.model.activity.ProcessChunkRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkOutputPlanTest {
+
+    @Test
+    void should_write_chunks_into_final_upload_up_to_part_limit() {
+        ChunkOutputPlan plan = new ChunkOutputPlan("out.csv", "finalUpload", 4, false);
+        assertEquals(1, plan.groupCount());
+        assertEquals(2500, plan.partsPerChunk());
+
+        plan.requestFor(7, 3, null);
+        ProcessChunkRequest second = plan.requestFor(3, 5, null);
+        assertEquals(3, second.chunkNumber());
+        assertEquals("finalUpload", second.uploadId());
+        assertNull(second.uploadKey());
+        assertEquals(2501, second.firstPartNumber());
+        assertEquals(2500, second.maxParts());
+
+        assertNull(plan.addChunkParts(3, List.of(new PartDetail(2501, "tag"))));
+        assertEquals(List.of(new PartDetail(2501, "tag")), plan.finalParts());
+    }
+
+    @Test
+    void should_compose_groups_beyond_part_limit() {
+        ChunkOutputPlan plan = new ChunkOutputPlan("out.csv", "finalUpload", 15000, true);
+        assertEquals(2, plan.groupCount());
+        assertEquals(1, plan.partsPerChunk());
+        plan.addGroupUpload("groupUpload0");
+        plan.addGroupUpload("groupUpload1");
+
+        for (int chunkNumber = 1; chunkNumber <= 7500; chunkNumber++) {
+            ProcessChunkRequest request = plan.requestFor(chunkNumber, 1, null);
+            assertEquals("groupUpload0", request.uploadId());
+            assertEquals("out.csvgroup0", request.uploadKey());
+            assertEquals(chunkNumber, request.firstPartNumber());
+            assertTrue(request.directUpload());
+        }
+        ProcessChunkRequest firstOfSecondGroup = plan.requestFor(7501, 1, null);
+        assertEquals("groupUpload1", firstOfSecondGroup.uploadId());
+        assertEquals(1, firstOfSecondGroup.firstPartNumber());
+
+        for (int chunkNumber = 1; chunkNumber < 7500; chunkNumber++) {
+            assertNull(plan.addChunkParts(chunkNumber, List.of(new PartDetail(chunkNumber, "tag" + chunkNumber))));
+        }
+        assertNull(plan.addChunkParts(7501, List.of(new PartDetail(1, "other"))));
+        ComposeUploadRequest compose = plan.addChunkParts(7500, List.of(new PartDetail(7500, "tag7500")));
+        assertNotNull(compose);
+        assertEquals("out.csvgroup0", compose.sourceKey());
+        assertEquals("groupUpload0", compose.sourceUploadId());
+        assertEquals(7500, compose.sourceParts().size());
+        assertEquals("out.csv", compose.uploadKey());
+        assertEquals("finalUpload", compose.uploadId());
+        assertEquals(1, compose.firstPartNumber());
+        assertEquals(5000, compose.maxParts());
+        assertTrue(plan.finalParts().isEmpty());
+    }
+
+    @Test
+    void should_continue_allocation_from_carried_state() {
+        ChunkOutputPlan plan = new ChunkOutputPlan("out.csv", "finalUpload", 15000, true);
+        plan.addGroupUpload("groupUpload0");
+        plan.addGroupUpload("groupUpload1");
+        for (int chunkNumber = 1; chunkNumber <= 7499; chunkNumber++) {
+            plan.requestFor(chunkNumber, 1, null);
+            plan.addChunkParts(chunkNumber, List.of(new PartDetail(chunkNumber, "tag" + chunkNumber)));
+        }
+
+        OutputPlanState state = plan.state();
+        assertEquals(7499, state.nextChunkIndex());
+        assertEquals(List.of(1, 7500), state.pendingChunks());
+        ChunkOutputPlan restored = new ChunkOutputPlan("out.csv", "finalUpload", state, true);
+        ProcessChunkRequest request = restored.requestFor(7500, 1, null);
+        assertEquals("groupUpload0", request.uploadId());
+        assertEquals(7500, request.firstPartNumber());
+
+        ComposeUploadRequest compose = restored.addChunkParts(7500, List.of(new PartDetail(7500, "tag7500")));
+        assertNotNull(compose);
+        assertEquals(7500, compose.sourceParts().size());
+        assertTrue(restored.state().groupParts().getFirst().isEmpty());
+        assertEquals("groupUpload1", restored.requestFor(7501, 1, null).uploadId());
+    }
+
+    @Test
+    void should_reserve_chunks_for_a_shard_and_compose_its_parts_here() {
+        ChunkOutputPlan plan = new ChunkOutputPlan("out.csv", "finalUpload", 15000, true);
+        plan.addGroupUpload("groupUpload0");
+        plan.addGroupUpload("groupUpload1");
+        OutputPlanState first = plan.reserve(IntStream.rangeClosed(1, 7000).boxed().toList());
+        OutputPlanState second = plan.reserve(IntStream.rangeClosed(7001, 15000).boxed().toList());
+        assertEquals(0, first.nextChunkIndex());
+        assertEquals(7000, second.nextChunkIndex());
+
+        ChunkOutputPlan shard = new ChunkOutputPlan("out.csv", "finalUpload", second, true);
+        ProcessChunkRequest request = shard.requestFor(7001, 1, null);
+        assertEquals("groupUpload0", request.uploadId());
+        assertEquals(7001, request.firstPartNumber());
+
+        for (int chunkNumber = 7001; chunkNumber <= 7500; chunkNumber++) {
+            assertNull(plan.addChunkParts(chunkNumber, List.of(new PartDetail(chunkNumber, "tag" + chunkNumber))));
+        }
+        for (int chunkNumber = 1; chunkNumber < 7000; chunkNumber++) {
+            assertNull(plan.addChunkParts(chunkNumber, List.of(new PartDetail(chunkNumber, "tag" + chunkNumber))));
+        }
+        ComposeUploadRequest compose = plan.addChunkParts(7000, List.of(new PartDetail(7000, "tag7000")));
+        assertNotNull(compose);
+        assertEquals("groupUpload0", compose.sourceUploadId());
+        assertEquals(7500, compose.sourceParts().size());
+    }
+}
@@ -0,0 +1,124 @@
+package com.arun.temporal.worker.workflow;
+
+import com.arun.temporal.worker.activities.BulkActivities;
+import com.arun.temporal.worker.model.BulkApiRequest;
+import com.arun.temporal.worker.model.BulkWorkflowResponse;
+import com.arun.temporal.worker.model.ReportData;
+import com.arun.temporal.worker.model.activity.*;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static com.arun.temporal.worker.constant.Constants.AGGREGATION_QUEUE_SUFFIX;
+
+/**
+ * End-to-end latency of a job of {@code chunks} chunks on an in-memory Temporal test server, with
+ * {@code getMaxParallelChunks}, {@code generateUploadId} and {@code finalizeFileUpload} run as local activities or
+ * through the task queue. The activities return at once, so the figure is scheduling and round trips only. Run with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.arun.temporal.worker.workflow.ControlActivityLatencyBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ControlActivityLatencyBenchmark {
+
+    private static final String TASK_QUEUE = "bulk-benchmark-queue";
+
+    @Param({"1", "10"})
+    int chunks;
+
+    @Param({"true", "false"})
+    boolean local;
+
+    private final BulkApiRequest request = new BulkApiRequest("TEST", "fileId", "file.csv", "outputId", "wsId", "user@domain.com", "sample", "header", ",", "apiKey", null);
+    private TestWorkflowEnvironment environment;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        environment = TestWorkflowEnvironment.newInstance();
+        StubActivities activities = new StubActivities(chunks);
+        Worker worker = environment.newWorker(TASK_QUEUE);
+        worker.registerWorkflowImplementationFactory(BulkWorkflow.class, () -> new BulkWorkflowImpl(local));
+        worker.registerActivitiesImplementations(activities);
+        environment.newWorker(TASK_QUEUE + AGGREGATION_QUEUE_SUFFIX).registerActivitiesImplementations(activities);
+        environment.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public BulkWorkflowResponse executeWorkflow() {
+        BulkWorkflow workflow = environment.getWorkflowClient().newWorkflowStub(BulkWorkflow.class,
+                WorkflowOptions.newBuilder().setTaskQueue(TASK_QUEUE).build());
+        return workflow.executeWorkflow(request, null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ControlActivityLatencyBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static class StubActivities implements BulkActivities {
+        private final List<FileChunk> chunks;
+
+        StubActivities(int chunkCount) {
+            FileMetadata metadata = new FileMetadata(1, 10, 30, new String[]{"input1"}, 0);
+            this.chunks = IntStream.rangeClosed(1, chunkCount)
+                    .mapToObj(chunkNumber -> new FileChunk(chunkNumber, (chunkNumber - 1) * 10L, chunkNumber * 10L - 1, metadata))
+                    .toList();
+        }
+
+        @Override
+        public MaxParallelChunkResponse getMaxParallelChunks() {
+            return new MaxParallelChunkResponse(4);
+        }
+
+        @Override
+        public GenerateUploadIdResponse generateUploadId(GenerateUploadIdRequest uploadIdRequest) {
+            return new GenerateUploadIdResponse("uploadId");
+        }
+
+        @Override
+        public FileChunkListResponse splitFileIntoChunks(SplitChunkRequest splitChunkRequest) {
+            return new FileChunkListResponse(chunks);
+        }
+
+        @Override
+        public ChunkSubmitResult uploadChunk(FileChunk fileChunk, BulkApiRequest bulkApiRequest) {
+            return new ChunkSubmitResult(1, 10);
+        }
+
+        @Override
+        public ChunkProcessingResult processChunk(ProcessChunkRequest processChunkRequest) {
+            return new ChunkProcessingResult(processChunkRequest.chunkNumber(), 10, 1, new ReportData(), "tag" + processChunkRequest.chunkNumber());
+        }
+
+        @Override
+        public ComposeUploadResponse composeUpload(ComposeUploadRequest composeUploadRequest) {
+            return new ComposeUploadResponse(List.of());
+        }
+
+        @Override
+        public void finalizeFileUpload(CompleteMultipartUploadRequest completeMultipartUploadRequest) {
+            // nothing to complete in the benchmark
+        }
+
+        @Override
+        public void createAndUploadReport(CreateReportRequest createReportRequest) {
+            // no report in the benchmark
+        }
+    }
+}